@@ -20,10 +20,12 @@ import xyz.ezsky.anilink.model.dto.MediaSubtitleDTO;
 import xyz.ezsky.anilink.model.dto.UpdateMediaFileRequest;
 import xyz.ezsky.anilink.model.entity.MediaFile;
 import xyz.ezsky.anilink.model.vo.ApiResponseVO;
+import xyz.ezsky.anilink.model.vo.DuplicateVO;
 import xyz.ezsky.anilink.model.vo.MatchProgressVO;
 import xyz.ezsky.anilink.model.vo.MetadataProgressVO;
 import xyz.ezsky.anilink.model.vo.PageVO;
 import xyz.ezsky.anilink.model.vo.QueueStatusVO;
+import xyz.ezsky.anilink.service.MediaDuplicateIndex;
 import xyz.ezsky.anilink.service.MediaFileService;
 import xyz.ezsky.anilink.service.MediaMetadataQueueManager;
 import xyz.ezsky.anilink.service.MediaSubtitleService;
@@ -53,6 +55,9 @@ public class MediaFileController {
     @Autowired
     private MediaSubtitleService mediaSubtitleService;
 
+    @Autowired
+    private MediaDuplicateIndex mediaDuplicateIndex;
+
     @Operation(summary = "分页查询媒体文件列表", description = "查询媒体文件列表，支持按媒体库过滤")
     @SaCheckRole("super-admin")
     @GetMapping
@@ -174,6 +179,17 @@ public class MediaFileController {
         }
     }
 
+    @Operation(summary = "查询重复文件", description = "按内容哈希与文件大小列出跨媒体库的重复文件分组及可回收空间，按可回收字节数降序")
+    @SaCheckRole("super-admin")
+    @GetMapping("/duplicates")
+    public ApiResponseVO<DuplicateVO.Report> getDuplicates(
+            @Parameter(description = "页码，从0开始", required = false)
+            @RequestParam(defaultValue = "0") int page,
+            @Parameter(description = "每页分组数", required = false)
+            @RequestParam(defaultValue = "20") int pageSize) {
+        return ApiResponseVO.success(mediaDuplicateIndex.getReport(page, pageSize));
+    }
+
     @Operation(summary = "查询队列状态", description = "查询当前元数据提取队列的状态，包括待处理任务数和活跃线程数")
     @SaCheckRole("super-admin")
     @GetMapping("/queue/status")
@@ -10,9 +10,11 @@ import cn.dev33.satoken.annotation.SaCheckRole;
 import xyz.ezsky.anilink.model.dto.MediaLibraryDTO;
 import xyz.ezsky.anilink.model.vo.ApiResponseVO;
 import xyz.ezsky.anilink.model.vo.MediaLibraryVO;
+import xyz.ezsky.anilink.model.vo.PathIndexStatsVO;
 import xyz.ezsky.anilink.model.vo.PathVO;
 import xyz.ezsky.anilink.service.MediaLibraryService;
 import xyz.ezsky.anilink.service.MediaMatchQueueManager;
+import xyz.ezsky.anilink.service.MediaPathIndex;
 
 import java.util.List;
 
@@ -27,6 +29,9 @@ public class MediaLibraryController {
     @Autowired
     private MediaMatchQueueManager mediaMatchQueueManager;
 
+    @Autowired
+    private MediaPathIndex mediaPathIndex;
+
     @Operation(summary = "添加媒体库", description = "添加一个新的媒体库，并立即触发一次扫描")
     @PostMapping
     public ApiResponseVO<MediaLibraryVO> addLibrary(@RequestBody MediaLibraryDTO mediaLibraryDTO) {
@@ -40,6 +45,19 @@ public class MediaLibraryController {
         return ApiResponseVO.success(mediaLibraryService.findAll());
     }
 
+    @Operation(summary = "更新媒体库设置", description = "更新指定媒体库的扫描设置（如扫描并行度）")
+    @SaCheckRole("super-admin")
+    @PutMapping("/{id}")
+    public ApiResponseVO<MediaLibraryVO> updateLibrarySettings(
+            @Parameter(description = "要更新的媒体库ID") @PathVariable Long id,
+            @RequestBody MediaLibraryDTO mediaLibraryDTO) {
+        try {
+            return ApiResponseVO.success(mediaLibraryService.updateLibrarySettings(id, mediaLibraryDTO));
+        } catch (IllegalArgumentException e) {
+            return ApiResponseVO.fail(404, e.getMessage());
+        }
+    }
+
     @Operation(summary = "删除媒体库", description = "根据ID删除指定的媒体库")
     @SaCheckRole("super-admin")
     @DeleteMapping("/{id}")
@@ -72,6 +90,26 @@ public class MediaLibraryController {
         return ApiResponseVO.success(null, "已加入匹配队列: " + enqueued + " 个文件");
     }
 
+    @Operation(summary = "查询路径索引状态", description = "返回各媒体库内存路径索引的文件数与估算内存占用")
+    @SaCheckRole("super-admin")
+    @GetMapping("/path-index")
+    public ApiResponseVO<List<PathIndexStatsVO>> getPathIndexStats() {
+        return ApiResponseVO.success(mediaPathIndex.getStats());
+    }
+
+    @Operation(summary = "重建路径索引", description = "从数据库重建指定媒体库（不传ID时为全部媒体库）的内存路径索引")
+    @SaCheckRole("super-admin")
+    @PostMapping("/path-index/rebuild")
+    public ApiResponseVO<List<PathIndexStatsVO>> rebuildPathIndex(
+            @Parameter(description = "要重建的媒体库ID，为空时重建全部") @RequestParam(required = false) Long libraryId) {
+        if (libraryId != null) {
+            mediaPathIndex.rebuild(libraryId);
+        } else {
+            mediaPathIndex.rebuildAll();
+        }
+        return ApiResponseVO.success(mediaPathIndex.getStats());
+    }
+
     @Operation(summary = "查询服务端路径", description = "查询指定根目录下的所有文件和文件夹路径，支持筛选")
     @SaCheckRole("super-admin")
     @GetMapping("/paths")
@@ -6,6 +6,7 @@ import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.ApplicationListener;
 import org.springframework.stereotype.Component;
 import org.springframework.lang.NonNull;
+import xyz.ezsky.anilink.service.MediaFileStabilityGate;
 import xyz.ezsky.anilink.service.MediaScannerService;
 
 @Component
@@ -15,9 +16,13 @@ public class StartupScanListener implements ApplicationListener<ApplicationReady
     @Autowired
     private MediaScannerService mediaScannerService;
 
+    @Autowired
+    private MediaFileStabilityGate mediaFileStabilityGate;
+
     @Override
     public void onApplicationEvent(@NonNull ApplicationReadyEvent event) {
-        log.info("Application is ready. Starting initial library scan...");
-        mediaScannerService.scanAllLibraries();
+        mediaFileStabilityGate.resumePending();
+        log.info("Application is ready. Starting incremental library scan...");
+        mediaScannerService.scanAllLibraries(false);
     }
 }
@@ -2,6 +2,7 @@ package xyz.ezsky.anilink.model.dto;
 
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Data;
+import xyz.ezsky.anilink.model.entity.MediaLibrary;
 
 @Data
 @Schema(description = "媒体库数据传输对象，用于创建新的媒体库")
@@ -10,4 +11,10 @@ public class MediaLibraryDTO {
     private String name;
     @Schema(description = "媒体库的物理路径", example = "/data/anime")
     private String path;
+    @Schema(description = "扫描并行度，为空或小于等于1时顺序扫描", example = "4")
+    private Integer scanParallelism;
+    @Schema(description = "变更检测方式：NATIVE 使用文件系统事件，POLLING 定期轮询（适用于 SMB/NFS 挂载）", example = "POLLING")
+    private MediaLibrary.WatchMode watchMode;
+    @Schema(description = "轮询间隔（秒），仅 POLLING 模式使用，为空时使用默认值", example = "60")
+    private Integer pollIntervalSeconds;
 }
@@ -0,0 +1,25 @@
+package xyz.ezsky.anilink.model.dto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 单次 FFprobe 探测结果
+ *
+ * 包含 {@code -show_format -show_streams} 的完整 JSON 输出（含视频、音频与字幕流），
+ * 每个文件的元数据提取只探测一次，技术信息解析与内封字幕抽取共用同一份结果。
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MediaProbeResult {
+
+    private boolean success;          // 探测是否成功
+    private JsonNode root;            // FFprobe JSON 输出，失败时为 null
+    private String errorMessage;      // 失败原因
+    private long elapsedMs;           // 探测耗时（毫秒）
+}
@@ -17,7 +17,12 @@ public enum MatchStatus {
     /**
      * 尝试匹配但无匹配项：2
      */
-    NO_MATCH_FOUND(2, "未找到匹配");
+    NO_MATCH_FOUND(2, "未找到匹配"),
+
+    /**
+     * 文件仍在写入，等待大小与修改时间稳定后再进入 hash/匹配/元数据队列：3
+     */
+    PENDING_STABLE(3, "等待文件稳定");
 
     private final int value;
     private final String description;
@@ -0,0 +1,46 @@
+package xyz.ezsky.anilink.model.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.GenericGenerator;
+
+/**
+ * 媒体库目录快照：记录上一次扫描时目录自身的修改时间与直接子项数量，
+ * 用于增量扫描时跳过内容未变化的目录。
+ */
+@Entity
+@Data
+@SuppressWarnings("deprecation")
+@Table(name = "media_directory_snapshot", uniqueConstraints = {
+    @UniqueConstraint(columnNames = {"library_id", "dir_path"})
+})
+public class MediaDirectorySnapshot {
+    @Id
+    @GenericGenerator(name = "snowflakeId", strategy = "xyz.ezsky.anilink.util.SnowflakeIdGenerator")
+    @GeneratedValue(generator = "snowflakeId")
+    private Long id;
+
+    @Column(name = "library_id", nullable = false)
+    private Long libraryId;
+
+    @Column(name = "dir_path", nullable = false, length = 2048)
+    private String dirPath;
+
+    /**
+     * 目录自身的修改时间（毫秒），目录下直接增删/重命名条目时会变化
+     */
+    @Column(name = "dir_mtime", nullable = false)
+    private Long dirMtime;
+
+    /**
+     * 上次列目录时的直接子项数量（文件 + 子目录）
+     */
+    @Column(name = "child_count", nullable = false)
+    private Integer childCount;
+
+    /**
+     * 上次列出该目录内容的时间（毫秒）
+     */
+    @Column(name = "last_scanned_at", nullable = false)
+    private Long lastScannedAt;
+}
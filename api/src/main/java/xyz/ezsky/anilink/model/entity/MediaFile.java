@@ -34,6 +34,10 @@ public class MediaFile {
     @Column(nullable = false)
     private Long size;
 
+    // 文件系统标识（如 inode），用于识别重命名/移动，不支持的文件系统为 null
+    @Column(name = "file_key", length = 128)
+    private String fileKey;
+
     // 外部接口获取的字段（预留方法）
     @Column(name = "episode_id", length = 255)
     private String episodeId;
@@ -93,11 +97,19 @@ public class MediaFile {
     @Column(name = "metadata_fetched", nullable = false)
     private Boolean metadataFetched = false;
 
-    // 匹配状态：0=未匹配, 1=已匹配, -1=尝试匹配但无结果
+    // 匹配状态：0=未匹配, 1=已匹配, 2=尝试匹配但无结果, 3=等待文件稳定
     @Enumerated(EnumType.ORDINAL)
     @Column(name = "match_status", nullable = false)
     private MatchStatus matchStatus = MatchStatus.UNMATCHED;
 
+    // 匹配接口暂时性故障（限流、5xx、网络失败等）的连续重试次数，得到匹配结果后清零
+    @Column(name = "match_attempts", nullable = false)
+    private Integer matchAttempts = 0;
+
+    // 下一次允许自动匹配的时间，为空表示立即可匹配
+    @Column(name = "next_match_attempt_at")
+    private Timestamp nextMatchAttemptAt;
+
     @Column(name = "created_at", nullable = false, updatable = false, insertable = false, columnDefinition = "TIMESTAMP DEFAULT CURRENT_TIMESTAMP")
     private Timestamp createdAt;
 
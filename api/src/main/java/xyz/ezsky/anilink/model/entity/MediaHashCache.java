@@ -0,0 +1,48 @@
+package xyz.ezsky.anilink.model.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.GenericGenerator;
+
+/**
+ * 文件哈希缓存：按文件身份（设备 + inode、大小、修改时间）记录已计算的前 16MB 哈希，
+ * 硬链接、跨媒体库移动和重新扫描入库的文件无需再次读盘。
+ */
+@Entity
+@Data
+@SuppressWarnings("deprecation")
+@Table(name = "media_hash_cache", uniqueConstraints = {
+    @UniqueConstraint(columnNames = {"file_key", "size", "last_modified"})
+}, indexes = {
+    @Index(name = "idx_media_hash_cache_last_used", columnList = "last_used_at")
+})
+public class MediaHashCache {
+    @Id
+    @GenericGenerator(name = "snowflakeId", strategy = "xyz.ezsky.anilink.util.SnowflakeIdGenerator")
+    @GeneratedValue(generator = "snowflakeId")
+    private Long id;
+
+    /**
+     * 文件系统提供的文件标识（Linux 上为 (dev=..,ino=..)），同一文件的所有硬链接相同
+     */
+    @Column(name = "file_key", nullable = false, length = 128)
+    private String fileKey;
+
+    @Column(name = "size", nullable = false)
+    private Long size;
+
+    /**
+     * 文件修改时间（毫秒）
+     */
+    @Column(name = "last_modified", nullable = false)
+    private Long lastModified;
+
+    @Column(name = "hash", nullable = false, length = 32)
+    private String hash;
+
+    /**
+     * 最近一次命中或写入的时间（毫秒），超出容量时按此淘汰
+     */
+    @Column(name = "last_used_at", nullable = false)
+    private Long lastUsedAt;
+}
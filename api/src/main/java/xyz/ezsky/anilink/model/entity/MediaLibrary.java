@@ -27,8 +27,32 @@ public class MediaLibrary {
     @Column(nullable = false, length = 32)
     private Status status = Status.OK;
 
+    /**
+     * 扫描并行度：为空或小于等于 1 时按顺序遍历目录树，大于 1 时使用 fork-join 并行遍历。
+     */
+    @Column(name = "scan_parallelism")
+    private Integer scanParallelism;
+
+    /**
+     * 变更检测方式：NATIVE 使用文件系统事件，POLLING 定期比对目录快照（适用于 SMB/NFS 挂载）。
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "watch_mode", nullable = false, length = 16)
+    private WatchMode watchMode = WatchMode.NATIVE;
+
+    /**
+     * 轮询间隔（秒），仅 POLLING 模式使用；为空时使用全局默认值。
+     */
+    @Column(name = "poll_interval_seconds")
+    private Integer pollIntervalSeconds;
+
     public enum Status {
         OK,
         ERROR
     }
+
+    public enum WatchMode {
+        NATIVE,
+        POLLING
+    }
 }
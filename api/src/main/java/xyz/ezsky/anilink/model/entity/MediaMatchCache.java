@@ -0,0 +1,48 @@
+package xyz.ezsky.anilink.model.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.GenericGenerator;
+
+/**
+ * 匹配结果缓存：按内容（前 16MB 哈希 + 文件大小）记录弹弹已确认的匹配结果，
+ * 重新入库、从备份恢复或在其他媒体库再次出现的文件无需再次请求匹配接口。
+ */
+@Entity
+@Data
+@SuppressWarnings("deprecation")
+@Table(name = "media_match_cache", uniqueConstraints = {
+    @UniqueConstraint(columnNames = {"hash", "size"})
+}, indexes = {
+    @Index(name = "idx_media_match_cache_last_used", columnList = "last_used_at")
+})
+public class MediaMatchCache {
+    @Id
+    @GenericGenerator(name = "snowflakeId", strategy = "xyz.ezsky.anilink.util.SnowflakeIdGenerator")
+    @GeneratedValue(generator = "snowflakeId")
+    private Long id;
+
+    @Column(name = "hash", nullable = false, length = 32)
+    private String hash;
+
+    @Column(name = "size", nullable = false)
+    private Long size;
+
+    @Column(name = "episode_id", nullable = false, length = 255)
+    private String episodeId;
+
+    @Column(name = "anime_id")
+    private Long animeId;
+
+    @Column(name = "anime_title", length = 500)
+    private String animeTitle;
+
+    @Column(name = "episode_title", length = 500)
+    private String episodeTitle;
+
+    /**
+     * 最近一次命中或写入的时间（毫秒），超出容量时按此淘汰
+     */
+    @Column(name = "last_used_at", nullable = false)
+    private Long lastUsedAt;
+}
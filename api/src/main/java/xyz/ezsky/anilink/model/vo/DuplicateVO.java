@@ -0,0 +1,86 @@
+package xyz.ezsky.anilink.model.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 跨媒体库重复文件VO
+ */
+public final class DuplicateVO {
+    private DuplicateVO() {
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Report {
+        @Schema(description = "重复分组数")
+        private long groupCount;
+
+        @Schema(description = "处于重复分组中的文件总数")
+        private long duplicateFiles;
+
+        @Schema(description = "每组只保留一份时可回收的总字节数")
+        private long reclaimableBytes;
+
+        @Schema(description = "按可回收字节数降序的重复分组")
+        private PageVO<Group> groups;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Group {
+        @Schema(description = "内容哈希（前 16MB 的 MD5）")
+        private String hash;
+
+        @Schema(description = "单个文件大小（字节）")
+        private long size;
+
+        @Schema(description = "副本数（文件记录数，含硬链接）")
+        private int copies;
+
+        @Schema(description = "物理副本数（不同 inode 数，硬链接只算一份）")
+        private int physicalCopies;
+
+        @Schema(description = "每个物理副本只保留一份时可回收的字节数")
+        private long reclaimableBytes;
+
+        @Schema(description = "分组内的文件")
+        private List<File> files;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class File {
+        @Schema(description = "媒体文件ID")
+        private Long id;
+
+        @Schema(description = "媒体库ID")
+        private Long libraryId;
+
+        @Schema(description = "文件路径")
+        private String filePath;
+
+        @Schema(description = "文件名")
+        private String fileName;
+
+        @Schema(description = "与分组内其他文件是同一 inode 的硬链接，删除不会释放空间")
+        private boolean hardlinked;
+
+        @Schema(description = "番剧标题")
+        private String animeTitle;
+
+        @Schema(description = "剧集标题")
+        private String episodeTitle;
+    }
+}
@@ -61,7 +61,7 @@ public class EpisodeVO {
     @Schema(description = "是否已获取完整元数据")
     private Boolean metadataFetched;
 
-    @Schema(description = "弹幕匹配状态")
+    @Schema(description = "弹幕匹配状态，PENDING_STABLE 表示文件仍在写入、尚未进入匹配队列")
     private MatchStatus matchStatus;
     
     @Schema(description = "创建时间")
@@ -0,0 +1,23 @@
+package xyz.ezsky.anilink.model.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 单个媒体库的元数据处理进度
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LibraryMetadataProgressVO {
+    private Long libraryId;
+    private int weight;
+    private long pending;
+    private int inFlight;
+    private long processed;
+    private long failed;
+    private double throughputPerMinute;
+}
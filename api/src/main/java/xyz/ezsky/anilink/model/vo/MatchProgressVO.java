@@ -16,12 +16,24 @@ public class MatchProgressVO {
     private long noMatch;
     private long pendingMatch;
     private int queuePending;
+    private int queueInteractive;
+    private int queueWatcher;
+    private int queueBulk;
     private int activeBatches;
+    private int concurrencyLimit;
+    private long batchLatencyP50Ms;
+    private long batchLatencyP90Ms;
+    private long batchLatencyP99Ms;
+    private int hashPending;
+    private long matchCacheHits;
+    private long matchCacheMisses;
+    private double matchCacheHitRatio;
     private int batchSize;
     private int queueIntervalSeconds;
     private long totalEnqueued;
     private long totalProcessed;
     private long totalMatched;
     private long totalNoMatch;
+    private long totalInferred;
     private long failedTasks;
 }
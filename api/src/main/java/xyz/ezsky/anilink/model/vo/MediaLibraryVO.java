@@ -15,4 +15,14 @@ public class MediaLibraryVO {
     private String path;
     @Schema(description = "媒体库当前状态", example = "OK")
     private MediaLibrary.Status status;
+    @Schema(description = "扫描并行度，为空或小于等于1时顺序扫描", example = "4")
+    private Integer scanParallelism;
+    @Schema(description = "变更检测方式：NATIVE 使用文件系统事件，POLLING 定期轮询", example = "NATIVE")
+    private MediaLibrary.WatchMode watchMode;
+    @Schema(description = "轮询间隔（秒），为空时使用默认值", example = "60")
+    private Integer pollIntervalSeconds;
+    @Schema(description = "当前正在监听（或轮询）的目录数，未监听时为0", example = "120")
+    private Integer watchedDirectories;
+    @Schema(description = "文件监听事件溢出的累计次数，每次溢出都会触发补偿扫描", example = "0")
+    private Long watchOverflowCount;
 }
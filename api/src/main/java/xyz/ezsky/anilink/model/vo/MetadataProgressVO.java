@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -20,4 +22,5 @@ public class MetadataProgressVO {
     private long totalSubmitted;
     private long totalProcessed;
     private long failedTasks;
+    private List<LibraryMetadataProgressVO> libraries;
 }
@@ -0,0 +1,28 @@
+package xyz.ezsky.anilink.model.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 媒体库路径索引状态VO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PathIndexStatsVO {
+    @Schema(description = "媒体库ID")
+    private Long libraryId;
+
+    @Schema(description = "索引中的文件数")
+    private int entries;
+
+    @Schema(description = "估算的内存占用（字节）")
+    private long estimatedBytes;
+
+    @Schema(description = "索引构建时间（毫秒时间戳）")
+    private long builtAt;
+}
@@ -0,0 +1,15 @@
+package xyz.ezsky.anilink.repository;
+
+import org.springframework.transaction.annotation.Transactional;
+import xyz.ezsky.anilink.model.entity.MediaDirectorySnapshot;
+import xyz.ezsky.anilink.repository.base.BaseRepository;
+
+import java.util.List;
+
+public interface MediaDirectorySnapshotRepository extends BaseRepository<MediaDirectorySnapshot, Long> {
+
+    List<MediaDirectorySnapshot> findByLibraryId(Long libraryId);
+
+    @Transactional
+    void deleteByLibraryId(Long libraryId);
+}
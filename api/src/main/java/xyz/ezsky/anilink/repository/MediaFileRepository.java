@@ -6,15 +6,153 @@ import xyz.ezsky.anilink.repository.base.BaseRepository;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface MediaFileRepository extends BaseRepository<MediaFile, Long> {
     List<MediaFile> findByLibraryId(Long libraryId);
+
+    /**
+     * 路径索引使用的轻量投影，只读取比对文件变化所需的列
+     */
+    interface PathView {
+        Long getId();
+
+        String getFilePath();
+
+        Long getSize();
+
+        Long getLastModified();
+
+        String getFileKey();
+    }
+
+    @Query("""
+            SELECT m.id AS id, m.filePath AS filePath, m.size AS size, m.lastModified AS lastModified,
+                   m.fileKey AS fileKey
+            FROM MediaFile m
+            WHERE m.library.id = :libraryId
+            """)
+    List<PathView> findPathViewsByLibraryId(@Param("libraryId") Long libraryId);
+
+    /**
+     * 重复文件分组投影：同一内容哈希与大小的文件数
+     */
+    interface DuplicateGroupView {
+        String getHash();
+
+        Long getSize();
+
+        Long getCopies();
+
+        /**
+         * 物理副本数：不同文件标识（inode）的数量，无文件标识的记录各算一份
+         */
+        Long getPhysicalCopies();
+    }
+
+    /**
+     * 重复文件成员投影，只读取展示所需的列
+     */
+    interface DuplicateMemberView {
+        Long getId();
+
+        Long getLibraryId();
+
+        String getFilePath();
+
+        String getFileName();
+
+        String getHash();
+
+        Long getSize();
+
+        String getFileKey();
+
+        String getAnimeTitle();
+
+        String getEpisodeTitle();
+    }
+
+    /**
+     * 媒体库待处理数投影
+     */
+    interface LibraryPendingView {
+        Long getLibraryId();
+
+        Long getPending();
+    }
+
+    /**
+     * 同目录已匹配文件投影，用于按命名规律推断剧集
+     */
+    interface MatchedSiblingView {
+        String getFilePath();
+
+        String getFileName();
+
+        String getEpisodeId();
+
+        Long getAnimeId();
+
+        String getAnimeTitle();
+    }
+
+    /**
+     * 单条聚合查询取出所有存在多个物理副本的 (hash, size) 分组；同一 inode 的硬链接只算一份
+     */
+    @Query("""
+            SELECT m.hash AS hash, m.size AS size, COUNT(m.id) AS copies,
+                   COUNT(DISTINCT m.fileKey) + SUM(CASE WHEN m.fileKey IS NULL THEN 1 ELSE 0 END) AS physicalCopies
+            FROM MediaFile m
+            WHERE m.hash IS NOT NULL AND m.hash <> '' AND m.size IS NOT NULL
+            GROUP BY m.hash, m.size
+            HAVING COUNT(DISTINCT m.fileKey) + SUM(CASE WHEN m.fileKey IS NULL THEN 1 ELSE 0 END) > 1
+            """)
+    List<DuplicateGroupView> findDuplicateGroups();
+
+    /**
+     * 单个 (hash, size) 分组的文件数与物理副本数，没有记录时为空
+     */
+    @Query("""
+            SELECT m.hash AS hash, m.size AS size, COUNT(m.id) AS copies,
+                   COUNT(DISTINCT m.fileKey) + SUM(CASE WHEN m.fileKey IS NULL THEN 1 ELSE 0 END) AS physicalCopies
+            FROM MediaFile m
+            WHERE m.hash = :hash AND m.size = :size
+            GROUP BY m.hash, m.size
+            """)
+    Optional<DuplicateGroupView> findDuplicateGroup(@Param("hash") String hash, @Param("size") Long size);
+
+    @Query("""
+            SELECT m.id AS id, m.library.id AS libraryId, m.filePath AS filePath, m.fileName AS fileName,
+                   m.hash AS hash, m.size AS size, m.fileKey AS fileKey,
+                   m.animeTitle AS animeTitle, m.episodeTitle AS episodeTitle
+            FROM MediaFile m
+            WHERE m.hash IN :hashes
+            ORDER BY m.id ASC
+            """)
+    List<DuplicateMemberView> findDuplicateMembersByHashIn(@Param("hashes") Collection<String> hashes);
+
+    /**
+     * 按路径前缀读取媒体库中已匹配的文件（前缀中的 LIKE 通配符需以 ! 转义），调用方再按所在目录过滤
+     */
+    @Query("""
+            SELECT m.filePath AS filePath, m.fileName AS fileName, m.episodeId AS episodeId,
+                   m.animeId AS animeId, m.animeTitle AS animeTitle
+            FROM MediaFile m
+            WHERE m.library.id = :libraryId AND m.matchStatus = :status AND m.filePath LIKE :prefix ESCAPE '!'
+            """)
+    List<MatchedSiblingView> findSiblingsByPathPrefix(@Param("libraryId") Long libraryId,
+                                                      @Param("prefix") String prefix,
+                                                      @Param("status") MatchStatus status);
+
     Optional<MediaFile> findByFilePath(String filePath);
 
     long countByLibraryId(Long libraryId);
@@ -33,6 +171,22 @@ public interface MediaFileRepository extends BaseRepository<MediaFile, Long> {
 
     long countByMatchStatusIn(List<MatchStatus> matchStatuses);
 
+    /**
+     * 按 ID 游标分段读取指定状态且已到重试时间的文件 ID（keyset 分页，不随偏移量变慢）
+     */
+    @Query("SELECT m.id FROM MediaFile m WHERE m.matchStatus IN :statuses AND m.id > :afterId "
+            + "AND (m.nextMatchAttemptAt IS NULL OR m.nextMatchAttemptAt <= :now) ORDER BY m.id ASC")
+    List<Long> findIdsByMatchStatusInAfter(@Param("statuses") Collection<MatchStatus> statuses,
+                                           @Param("afterId") Long afterId,
+                                           @Param("now") Timestamp now,
+                                           Pageable pageable);
+
+    /**
+     * 指定状态中最早的下一次重试时间，用于启动后安排到期补充
+     */
+    @Query("SELECT MIN(m.nextMatchAttemptAt) FROM MediaFile m WHERE m.matchStatus IN :statuses")
+    Timestamp findEarliestNextMatchAttemptAt(@Param("statuses") Collection<MatchStatus> statuses);
+
     long countByLibraryIdAndMatchStatusIn(Long libraryId, List<MatchStatus> matchStatuses);
 
     // 新的分页查询，按数据库ID排序由调用方的 Pageable 决定
@@ -40,6 +194,28 @@ public interface MediaFileRepository extends BaseRepository<MediaFile, Long> {
 
     Page<MediaFile> findByMetadataFetchedFalse(Pageable pageable);
 
+    /**
+     * 待提取元数据的文件，排除指定匹配状态（如仍在写入的文件）
+     */
+    Page<MediaFile> findByMetadataFetchedFalseAndMatchStatusNot(MatchStatus matchStatus, Pageable pageable);
+
+    long countByMetadataFetchedFalseAndMatchStatusNot(MatchStatus matchStatus);
+
+    /**
+     * 指定媒体库中待提取元数据的文件，排除指定匹配状态
+     */
+    Page<MediaFile> findByLibraryIdAndMetadataFetchedFalseAndMatchStatusNot(Long libraryId, MatchStatus matchStatus,
+                                                                          Pageable pageable);
+
+    /**
+     * 按媒体库统计待提取元数据的文件数，排除指定匹配状态
+     */
+    @Query("SELECT m.library.id AS libraryId, COUNT(m) AS pending FROM MediaFile m "
+            + "WHERE m.metadataFetched = false AND m.matchStatus <> :status GROUP BY m.library.id")
+    List<LibraryPendingView> countPendingMetadataByLibrary(@Param("status") MatchStatus status);
+
+    List<MediaFile> findByMatchStatus(MatchStatus matchStatus);
+
     Page<MediaFile> findByLibraryIdAndMetadataFetchedFalse(Long libraryId, Pageable pageable);
 
     Page<MediaFile> findByMatchStatusIn(List<MatchStatus> matchStatuses, Pageable pageable);
@@ -77,4 +253,20 @@ public interface MediaFileRepository extends BaseRepository<MediaFile, Long> {
 
     @Transactional
     void deleteByLibraryId(Long libraryId);
+
+    /**
+     * 仅在尚无哈希时写入哈希，不覆盖匹配线程同时写入的其他字段
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE MediaFile m SET m.hash = :hash WHERE m.id = :id AND (m.hash IS NULL OR m.hash = '')")
+    int updateHashIfMissing(@Param("id") Long id, @Param("hash") String hash);
+
+    /**
+     * 按 ID 批量删除媒体文件记录（单条 DELETE ... WHERE IN，不逐条加载实体）
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM MediaFile m WHERE m.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
 }
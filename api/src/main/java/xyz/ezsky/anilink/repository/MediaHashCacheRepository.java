@@ -0,0 +1,11 @@
+package xyz.ezsky.anilink.repository;
+
+import xyz.ezsky.anilink.model.entity.MediaHashCache;
+import xyz.ezsky.anilink.repository.base.LruCacheRepository;
+
+import java.util.Optional;
+
+public interface MediaHashCacheRepository extends LruCacheRepository<MediaHashCache> {
+
+    Optional<MediaHashCache> findByFileKeyAndSizeAndLastModified(String fileKey, Long size, Long lastModified);
+}
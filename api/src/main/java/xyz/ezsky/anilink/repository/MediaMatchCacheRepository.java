@@ -0,0 +1,27 @@
+package xyz.ezsky.anilink.repository;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import xyz.ezsky.anilink.model.entity.MediaMatchCache;
+import xyz.ezsky.anilink.repository.base.LruCacheRepository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface MediaMatchCacheRepository extends LruCacheRepository<MediaMatchCache> {
+
+    Optional<MediaMatchCache> findByHashAndSize(String hash, Long size);
+
+    /**
+     * 按哈希批量查询，调用方再按大小过滤（一个匹配批次一条查询）
+     */
+    List<MediaMatchCache> findByHashIn(Collection<String> hashes);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM MediaMatchCache c WHERE c.hash = :hash AND c.size = :size")
+    int deleteByHashAndSize(@Param("hash") String hash, @Param("size") Long size);
+}
@@ -2,18 +2,22 @@ package xyz.ezsky.anilink.repository;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 import xyz.ezsky.anilink.model.entity.MediaSubtitle;
 import xyz.ezsky.anilink.repository.base.BaseRepository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface MediaSubtitleRepository extends BaseRepository<MediaSubtitle, Long> {
     List<MediaSubtitle> findByMediaFileIdOrderByStreamIndexAsc(Long mediaFileId);
 
+    List<MediaSubtitle> findByMediaFileIdIn(Collection<Long> mediaFileIds);
+
         @Query(value = """
             SELECT s FROM MediaSubtitle s
             JOIN FETCH s.mediaFile m
@@ -49,4 +53,12 @@ public interface MediaSubtitleRepository extends BaseRepository<MediaSubtitle, L
 
     @Transactional
     void deleteByMediaFileLibraryId(Long libraryId);
+
+    /**
+     * 按媒体文件 ID 批量删除字幕记录（单条 DELETE ... WHERE IN）
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM MediaSubtitle s WHERE s.mediaFile.id IN :mediaFileIds")
+    int deleteByMediaFileIdIn(@Param("mediaFileIds") Collection<Long> mediaFileIds);
 }
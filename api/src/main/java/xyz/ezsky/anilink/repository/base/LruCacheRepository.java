@@ -0,0 +1,34 @@
+package xyz.ezsky.anilink.repository.base;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.NoRepositoryBean;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 按最近使用时间淘汰的缓存表，实体需有 {@code id} 与 {@code lastUsedAt} 字段
+ */
+@NoRepositoryBean
+public interface LruCacheRepository<T> extends BaseRepository<T, Long> {
+
+    /**
+     * 最久未使用的缓存条目 ID
+     */
+    @Query("SELECT c.id FROM #{#entityName} c ORDER BY c.lastUsedAt ASC")
+    List<Long> findLeastRecentlyUsedIds(Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE #{#entityName} c SET c.lastUsedAt = :lastUsedAt WHERE c.id IN :ids")
+    int touch(@Param("ids") Collection<Long> ids, @Param("lastUsedAt") Long lastUsedAt);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM #{#entityName} c WHERE c.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+}
@@ -196,6 +196,18 @@ public class AnimeService {
         return null;
     }
 
+    /**
+     * 仅读取本地已缓存的 /api/v2/bangumi/{animeId} 原始JSON（含已过期条目），不请求上游。
+     *
+     * @param animeId 动漫ID
+     * @return 缓存的原始JSON，未缓存时返回 null
+     */
+    public String getCachedRawJsonByAnimeId(Long animeId) {
+        return apiCacheRepository.findByCacheKey(buildBangumiCacheKey(animeId))
+                .map(ApiCache::getCacheValue)
+                .orElse(null);
+    }
+
     /**
      * 获取弹弹 /api/v2/bangumi/shin 原始JSON数据（带数据库缓存）。
      *
@@ -11,6 +11,7 @@ import xyz.ezsky.anilink.model.entity.Anime;
 import xyz.ezsky.anilink.repository.AnimeRepository;
 import xyz.ezsky.anilink.util.DandanClientUtil;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -163,10 +164,20 @@ public class DandanMatchService {
      * @return 匹配结果列表，与输入顺序一一对应
      */
     public List<MatchResult> batchMatch(List<Map<String, Object>> items) {
+        return batchMatchWithStatus(items).results();
+    }
+
+    /**
+     * 批量匹配并返回调用层面的 HTTP 状态，供调用方区分"未匹配"与"接口限流/故障"
+     *
+     * @param items 文件信息列表，每个item包含fileName、fileHash、fileSize
+     * @return 匹配结果与状态码（网络失败时为 0）
+     */
+    public BatchMatchOutcome batchMatchWithStatus(List<Map<String, Object>> items) {
         List<MatchResult> results = new ArrayList<>();
         
         if (items == null || items.isEmpty()) {
-            return results;
+            return new BatchMatchOutcome(results, 200);
         }
 
         try {
@@ -205,7 +216,7 @@ public class DandanMatchService {
                     result.setErrorMessage("API调用失败");
                     results.add(result);
                 }
-                return results;
+                return new BatchMatchOutcome(results, 0);
             }
 
             if (!resp.getStatusCode().is2xxSuccessful()) {
@@ -217,7 +228,7 @@ public class DandanMatchService {
                     result.setErrorMessage("API返回错误状态: " + resp.getStatusCode());
                     results.add(result);
                 }
-                return results;
+                return new BatchMatchOutcome(results, resp.getStatusCode().value());
             }
 
             String json = resp.getBody();
@@ -230,7 +241,7 @@ public class DandanMatchService {
                     result.setErrorMessage("API返回空响应");
                     results.add(result);
                 }
-                return results;
+                return new BatchMatchOutcome(results, 200, true);
             }
 
             JsonNode root = objectMapper.readTree(json);
@@ -256,7 +267,7 @@ public class DandanMatchService {
                     result.setErrorMessage(errorMsg);
                     results.add(result);
                 }
-                return results;
+                return new BatchMatchOutcome(results, 200, true);
             }
             
             // 提取results数组
@@ -275,6 +286,7 @@ public class DandanMatchService {
                     result.setErrorMessage("响应格式无效");
                     results.add(result);
                 }
+                return new BatchMatchOutcome(results, 200, true);
             }
 
         } catch (Exception e) {
@@ -286,9 +298,49 @@ public class DandanMatchService {
                 result.setErrorMessage("处理异常: " + e.getMessage());
                 results.add(result);
             }
+            // 超时、读响应中断等 IO 故障按网络失败计，参与拥塞判断
+            return isIoFailure(e) ? new BatchMatchOutcome(results, 0) : new BatchMatchOutcome(results, 200, true);
         }
 
-        return results;
+        return new BatchMatchOutcome(results, 200);
+    }
+
+    private static boolean isIoFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 批量匹配调用结果
+     *
+     * @param results    与输入顺序一一对应的匹配结果
+     * @param statusCode HTTP 状态码，网络失败时为 0
+     * @param failed     整批调用失败（非 2xx、网络失败、签名等顶层错误、响应无法解析），
+     *                   此时结果不代表"未匹配"
+     */
+    public record BatchMatchOutcome(List<MatchResult> results, int statusCode, boolean failed) {
+
+        public BatchMatchOutcome(List<MatchResult> results, int statusCode) {
+            this(results, statusCode, statusCode < 200 || statusCode >= 300);
+        }
+
+        /**
+         * 整批调用失败，属于暂时性故障，应稍后重试
+         */
+        public boolean isRetryable() {
+            return failed;
+        }
+
+        /**
+         * 限流（429）、服务端错误（5xx）或网络失败：除重试外还应降低并发
+         */
+        public boolean isCongestion() {
+            return statusCode == 0 || statusCode == 429 || statusCode >= 500;
+        }
     }
 
     /**
@@ -0,0 +1,115 @@
+package xyz.ezsky.anilink.service;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.data.domain.PageRequest;
+import xyz.ezsky.anilink.repository.base.LruCacheRepository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * 数据库缓存表的公共维护逻辑：命中统计、按间隔合并的使用时间刷新，以及超出上限后按最近使用时间分批淘汰。
+ *
+ * <p>子类提供缓存表的仓库，并在各自的定时任务中调用 {@link #trimToCapacity(long)}。</p>
+ */
+@Log4j2
+abstract class LruCacheSupport {
+
+    private static final int TRIM_BATCH_SIZE = 1000;
+
+    private final String name;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param name 日志中使用的缓存名称
+     */
+    protected LruCacheSupport(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 缓存表仓库
+     */
+    protected abstract LruCacheRepository<?> cacheRepository();
+
+    protected void recordHits(long count) {
+        hits.addAndGet(count);
+    }
+
+    protected void recordMisses(long count) {
+        misses.addAndGet(count);
+    }
+
+    /**
+     * 刷新本次用到、且上次刷新已超过间隔的条目的使用时间，合并为一条 UPDATE
+     *
+     * @param used            本次命中的条目
+     * @param idOf            条目 ID
+     * @param lastUsedOf      条目记录的最近使用时间（毫秒）
+     * @param intervalMinutes 刷新间隔（分钟）
+     */
+    protected <T> void touchIfStale(Collection<T> used, Function<T, Long> idOf, ToLongFunction<T> lastUsedOf,
+                                    long intervalMinutes) {
+        long now = System.currentTimeMillis();
+        long interval = TimeUnit.MINUTES.toMillis(intervalMinutes);
+        List<Long> stale = used.stream()
+                .filter(entry -> now - lastUsedOf.applyAsLong(entry) >= interval)
+                .map(idOf)
+                .distinct()
+                .toList();
+        if (!stale.isEmpty()) {
+            cacheRepository().touch(stale, now);
+        }
+    }
+
+    /**
+     * 按最近使用时间分批删除超出上限的条目
+     *
+     * @param maxEntries 条目上限
+     */
+    protected void trimToCapacity(long maxEntries) {
+        LruCacheRepository<?> repository = cacheRepository();
+        long excess = repository.count() - Math.max(0, maxEntries);
+        long removed = 0;
+        while (excess > 0) {
+            List<Long> ids = repository.findLeastRecentlyUsedIds(
+                    PageRequest.of(0, (int) Math.min(excess, TRIM_BATCH_SIZE)));
+            if (ids.isEmpty()) {
+                break;
+            }
+            removed += repository.deleteByIdIn(ids);
+            excess -= ids.size();
+        }
+        if (removed > 0) {
+            log.info("Trimmed {} least recently used {} entries", removed, name);
+        }
+    }
+
+    /**
+     * 自启动以来的缓存命中次数
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * 自启动以来的缓存未命中次数
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * 自启动以来的缓存命中率，尚无查询时为 0
+     */
+    public double getHitRatio() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+}
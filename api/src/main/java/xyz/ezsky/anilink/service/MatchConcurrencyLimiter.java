@@ -0,0 +1,92 @@
+package xyz.ezsky.anilink.service;
+
+import java.util.Arrays;
+
+/**
+ * 弹弹匹配请求的自适应并发上限（AIMD）。
+ *
+ * <p>请求成功且延迟不超过目标时加性增长：每次成功增加 1/当前上限，约每轮满并发增加 1；
+ * 延迟超过目标时小幅收缩；遇到限流（429）、服务端错误（5xx）或网络失败时减半。
+ * 同时保存最近一段时间的批次延迟，用于输出分位数。</p>
+ */
+public class MatchConcurrencyLimiter {
+
+    private static final int LATENCY_WINDOW = 256;
+    private static final double LATENCY_BACKOFF = 0.9;
+    private static final double CONGESTION_BACKOFF = 0.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyTargetMillis;
+    private double limit;
+
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private int latencyCount;
+    private int latencyNext;
+
+    /**
+     * @param initialLimit        初始并发上限
+     * @param minLimit            并发下限
+     * @param maxLimit            并发上限的上界
+     * @param latencyTargetMillis 目标批次延迟，超过即视为拥塞前兆
+     */
+    public MatchConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyTargetMillis) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.latencyTargetMillis = latencyTargetMillis;
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /**
+     * 当前允许的在途请求数
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * 记录一次成功的请求
+     *
+     * @param latencyMillis 请求耗时（毫秒）
+     */
+    public synchronized void onSuccess(long latencyMillis) {
+        recordLatency(latencyMillis);
+        if (latencyTargetMillis > 0 && latencyMillis > latencyTargetMillis) {
+            limit = Math.max(minLimit, limit * LATENCY_BACKOFF);
+        } else {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    /**
+     * 记录一次被限流或服务端失败的请求
+     *
+     * @param latencyMillis 请求耗时（毫秒）
+     */
+    public synchronized void onCongestion(long latencyMillis) {
+        recordLatency(latencyMillis);
+        limit = Math.max(minLimit, limit * CONGESTION_BACKOFF);
+    }
+
+    /**
+     * 最近批次延迟的分位数
+     *
+     * @param percentile 分位（0~100）
+     * @return 延迟毫秒数，尚无样本时为 0
+     */
+    public synchronized long getLatencyPercentile(double percentile) {
+        if (latencyCount == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * latencyCount) - 1;
+        return sorted[Math.min(latencyCount - 1, Math.max(0, index))];
+    }
+
+    private void recordLatency(long latencyMillis) {
+        latencies[latencyNext] = latencyMillis;
+        latencyNext = (latencyNext + 1) % LATENCY_WINDOW;
+        latencyCount = Math.min(LATENCY_WINDOW, latencyCount + 1);
+    }
+}
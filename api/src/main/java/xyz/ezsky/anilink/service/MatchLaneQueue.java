@@ -0,0 +1,135 @@
+package xyz.ezsky.anilink.service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按优先级分通道的待匹配文件 ID 队列。
+ *
+ * <p>每个通道内按入队顺序排列，同一文件只存在于一个通道，以更高优先级再次入队时提升到对应通道。
+ * 取候选窗口时按权重为每个非空通道分配份额，高优先级通道先取；某个通道取不满的份额依优先级顺序让给其他通道。
+ * 低优先级通道始终能分到与权重成比例的份额，大量用户操作或监听事件不会让全量积压停滞。</p>
+ *
+ * <p>非线程安全，由调用方加锁。</p>
+ */
+class MatchLaneQueue {
+
+    private final Map<MatchPriority, LinkedHashSet<Long>> lanes = new EnumMap<>(MatchPriority.class);
+    private final Map<Long, MatchPriority> laneOf = new HashMap<>();
+
+    MatchLaneQueue() {
+        for (MatchPriority priority : MatchPriority.values()) {
+            lanes.put(priority, new LinkedHashSet<>());
+        }
+    }
+
+    /**
+     * 加入或提升一个文件
+     *
+     * @param capacity 单个通道的容量上限，只限制新加入的文件
+     * @return 已在同级或更高优先级通道中、加入或提升成功时为 true；通道已满时为 false
+     */
+    boolean offer(Long id, MatchPriority priority, int capacity) {
+        MatchPriority current = laneOf.get(id);
+        if (current != null) {
+            if (current.ordinal() <= priority.ordinal()) {
+                return true;
+            }
+            lanes.get(current).remove(id);
+        } else if (lanes.get(priority).size() >= capacity) {
+            return false;
+        }
+        lanes.get(priority).add(id);
+        laneOf.put(id, priority);
+        return true;
+    }
+
+    void remove(Long id) {
+        MatchPriority current = laneOf.remove(id);
+        if (current != null) {
+            lanes.get(current).remove(id);
+        }
+    }
+
+    /**
+     * 文件所在通道，不在队列中时为 null
+     */
+    MatchPriority priorityOf(Long id) {
+        return laneOf.get(id);
+    }
+
+    int size() {
+        return laneOf.size();
+    }
+
+    int size(MatchPriority priority) {
+        return lanes.get(priority).size();
+    }
+
+    boolean isEmpty() {
+        return laneOf.isEmpty();
+    }
+
+    /**
+     * 按权重份额取出候选窗口（不移出队列），高优先级在前
+     *
+     * @param size    窗口大小
+     * @param weights 各通道权重，缺省或小于 1 时按 1 计
+     */
+    List<Long> window(int size, Map<MatchPriority, Integer> weights) {
+        int totalWeight = 0;
+        for (MatchPriority priority : MatchPriority.values()) {
+            if (!lanes.get(priority).isEmpty()) {
+                totalWeight += weightOf(weights, priority);
+            }
+        }
+        if (totalWeight == 0 || size <= 0) {
+            return List.of();
+        }
+
+        Map<MatchPriority, Integer> taken = new EnumMap<>(MatchPriority.class);
+        int remaining = size;
+        for (MatchPriority priority : MatchPriority.values()) {
+            LinkedHashSet<Long> lane = lanes.get(priority);
+            if (lane.isEmpty()) {
+                continue;
+            }
+            int share = Math.max(1, size * weightOf(weights, priority) / totalWeight);
+            int take = Math.min(Math.min(share, lane.size()), remaining);
+            taken.put(priority, take);
+            remaining -= take;
+        }
+        // 未用完的份额按优先级顺序补给仍有剩余的通道
+        for (MatchPriority priority : MatchPriority.values()) {
+            if (remaining <= 0) {
+                break;
+            }
+            int already = taken.getOrDefault(priority, 0);
+            int extra = Math.min(lanes.get(priority).size() - already, remaining);
+            if (extra > 0) {
+                taken.put(priority, already + extra);
+                remaining -= extra;
+            }
+        }
+
+        List<Long> window = new ArrayList<>(size - remaining);
+        for (MatchPriority priority : MatchPriority.values()) {
+            int take = taken.getOrDefault(priority, 0);
+            for (Long id : lanes.get(priority)) {
+                if (take-- <= 0) {
+                    break;
+                }
+                window.add(id);
+            }
+        }
+        return window;
+    }
+
+    private static int weightOf(Map<MatchPriority, Integer> weights, MatchPriority priority) {
+        return Math.max(1, weights.getOrDefault(priority, 1));
+    }
+}
@@ -0,0 +1,21 @@
+package xyz.ezsky.anilink.service;
+
+/**
+ * 匹配队列的优先级通道，声明顺序即优先级从高到低
+ */
+public enum MatchPriority {
+    /**
+     * 用户操作：手工修改绑定、对媒体库发起重新匹配
+     */
+    INTERACTIVE,
+
+    /**
+     * 目录监听发现的变更、写入完成后通过稳定性闸门的新文件
+     */
+    WATCHER,
+
+    /**
+     * 全量扫描、启动恢复与数据库积压补充
+     */
+    BULK
+}
@@ -0,0 +1,105 @@
+package xyz.ezsky.anilink.service;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import xyz.ezsky.anilink.model.entity.MediaDirectorySnapshot;
+import xyz.ezsky.anilink.repository.MediaDirectorySnapshotRepository;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 媒体库目录快照服务：为增量扫描加载和保存每个目录的修改时间、子项数量与扫描时间。
+ */
+@Log4j2
+@Service
+public class MediaDirectorySnapshotService {
+
+    @Autowired
+    private MediaDirectorySnapshotRepository snapshotRepository;
+
+    /**
+     * 加载媒体库的全部目录快照。
+     *
+     * @param libraryId 媒体库 ID
+     * @return 目录绝对路径 -> 快照
+     */
+    public Map<String, MediaDirectorySnapshot> load(Long libraryId) {
+        Map<String, MediaDirectorySnapshot> snapshots = new HashMap<>();
+        for (MediaDirectorySnapshot snapshot : snapshotRepository.findByLibraryId(libraryId)) {
+            snapshots.put(snapshot.getDirPath(), snapshot);
+        }
+        return snapshots;
+    }
+
+    /**
+     * 将快照转换为遍历器使用的目录状态。
+     */
+    public Map<String, MediaLibraryWalker.DirectoryState> toStates(Map<String, MediaDirectorySnapshot> snapshots) {
+        Map<String, MediaLibraryWalker.DirectoryState> states = new HashMap<>(snapshots.size());
+        snapshots.forEach((path, snapshot) -> states.put(path, new MediaLibraryWalker.DirectoryState(
+                snapshot.getDirMtime(), snapshot.getChildCount(), snapshot.getLastScannedAt())));
+        return states;
+    }
+
+    /**
+     * 根据本次遍历结果更新快照：列过内容的目录写入新状态，未再出现的目录删除快照，跳过的目录保持不变。
+     *
+     * @param libraryId 媒体库 ID
+     * @param existing  扫描开始前加载的快照
+     * @param visited   本次遍历访问到的目录
+     * @param scannedAt 本次遍历开始时间（毫秒），必须不晚于实际列目录的时间
+     * @param scopeDir  本次遍历的子树根目录，为 null 表示整个媒体库；子树外的快照不受影响
+     */
+    public void save(Long libraryId, Map<String, MediaDirectorySnapshot> existing,
+                     List<MediaLibraryWalker.VisitedDirectory> visited, long scannedAt, String scopeDir) {
+        List<MediaDirectorySnapshot> toSave = new ArrayList<>();
+        Set<String> visitedPaths = new HashSet<>(visited.size());
+        for (MediaLibraryWalker.VisitedDirectory directory : visited) {
+            visitedPaths.add(directory.path());
+            if (!directory.listed()) {
+                continue;
+            }
+            MediaDirectorySnapshot snapshot = existing.get(directory.path());
+            if (snapshot == null) {
+                snapshot = new MediaDirectorySnapshot();
+                snapshot.setLibraryId(libraryId);
+                snapshot.setDirPath(directory.path());
+            }
+            snapshot.setDirMtime(directory.lastModified());
+            snapshot.setChildCount(directory.childCount());
+            snapshot.setLastScannedAt(scannedAt);
+            toSave.add(snapshot);
+        }
+
+        List<MediaDirectorySnapshot> toDelete = new ArrayList<>();
+        String scopePrefix = scopeDir != null ? scopeDir + File.separator : null;
+        existing.forEach((path, snapshot) -> {
+            boolean inScope = scopeDir == null || path.equals(scopeDir) || path.startsWith(scopePrefix);
+            if (inScope && !visitedPaths.contains(path)) {
+                toDelete.add(snapshot);
+            }
+        });
+
+        if (!toDelete.isEmpty()) {
+            snapshotRepository.deleteAllInBatch(toDelete);
+        }
+        if (!toSave.isEmpty()) {
+            snapshotRepository.saveAll(toSave);
+        }
+        log.debug("Saved {} directory snapshots and removed {} for library {}", toSave.size(), toDelete.size(), libraryId);
+    }
+
+    /**
+     * 删除媒体库的全部目录快照，下一次扫描将完整列出所有目录。
+     */
+    public void clear(Long libraryId) {
+        snapshotRepository.deleteByLibraryId(libraryId);
+    }
+}
@@ -0,0 +1,219 @@
+package xyz.ezsky.anilink.service;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import xyz.ezsky.anilink.model.vo.DuplicateVO;
+import xyz.ezsky.anilink.model.vo.PageVO;
+import xyz.ezsky.anilink.repository.MediaFileRepository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 跨媒体库重复文件索引。
+ *
+ * <p>以 (内容哈希, 文件大小) 为键，只在内存中保存存在多个副本的分组及副本数，不加载媒体文件实体。
+ * 首次使用时通过一条聚合查询构建；之后每次写入哈希时按该键重新计数（走 hash + size 索引），
+ * 并定期整体重建以反映文件删除。分组成员仅在分页展示时按需查询投影。</p>
+ *
+ * <p>副本按文件标识（inode）去重：同一 inode 的硬链接（如下载完成后链接进媒体库的文件）不占额外空间，
+ * 可回收字节数按 (物理副本数 - 1) × 大小计算，只由硬链接构成的分组不进入报告。没有文件标识的记录各算一份。</p>
+ */
+@Log4j2
+@Service
+public class MediaDuplicateIndex {
+
+    @Autowired
+    private MediaFileRepository mediaFileRepository;
+
+    private static final class Group {
+        private final String hash;
+        private final long size;
+        private volatile int copies;
+        private volatile int physicalCopies;
+
+        private Group(String hash, long size, int copies, int physicalCopies) {
+            this.hash = hash;
+            this.size = size;
+            this.copies = copies;
+            this.physicalCopies = physicalCopies;
+        }
+
+        private long reclaimableBytes() {
+            return size * Math.max(0, physicalCopies - 1);
+        }
+    }
+
+    private volatile Map<String, Group> groups = new ConcurrentHashMap<>();
+    private volatile boolean built;
+
+    /**
+     * 通过一条聚合查询重建索引
+     */
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        Map<String, Group> rebuilt = new ConcurrentHashMap<>();
+        for (MediaFileRepository.DuplicateGroupView view : mediaFileRepository.findDuplicateGroups()) {
+            rebuilt.put(keyOf(view.getHash(), view.getSize()),
+                    new Group(view.getHash(), view.getSize(), view.getCopies().intValue(),
+                            view.getPhysicalCopies().intValue()));
+        }
+        groups = rebuilt;
+        built = true;
+        log.info("Duplicate index rebuilt: {} groups in {} ms", rebuilt.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 定期重建，反映删除、移出媒体库等未经过哈希写入的变化；尚未使用过的索引不重建
+     */
+    @Scheduled(fixedDelayString = "${anilink.duplicates.rebuild-interval-ms:3600000}",
+            initialDelayString = "${anilink.duplicates.rebuild-interval-ms:3600000}")
+    public void scheduledRebuild() {
+        if (built) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 媒体文件写入哈希后增量更新对应分组
+     *
+     * @param hash 内容哈希
+     * @param size 文件大小
+     */
+    public void onHashWritten(String hash, Long size) {
+        if (!built || hash == null || hash.isEmpty() || size == null) {
+            return;
+        }
+        try {
+            MediaFileRepository.DuplicateGroupView view = mediaFileRepository.findDuplicateGroup(hash, size).orElse(null);
+            String key = keyOf(hash, size);
+            if (view != null && view.getPhysicalCopies() != null && view.getPhysicalCopies() > 1) {
+                int copies = view.getCopies().intValue();
+                int physicalCopies = view.getPhysicalCopies().intValue();
+                groups.compute(key, (k, group) -> {
+                    if (group == null) {
+                        return new Group(hash, size, copies, physicalCopies);
+                    }
+                    group.copies = copies;
+                    group.physicalCopies = physicalCopies;
+                    return group;
+                });
+            } else {
+                groups.remove(key);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to update duplicate index for hash {}: {}", hash, e.getMessage());
+        }
+    }
+
+    /**
+     * 分页查询重复分组，按可回收字节数降序
+     *
+     * @param page     页码，从 0 开始
+     * @param pageSize 每页分组数
+     * @return 重复文件报告
+     */
+    public DuplicateVO.Report getReport(int page, int pageSize) {
+        if (!built) {
+            rebuild();
+        }
+        List<Group> sorted = new ArrayList<>(groups.values());
+        sorted.sort(Comparator.comparingLong(Group::reclaimableBytes).reversed()
+                .thenComparing(group -> group.hash));
+
+        long duplicateFiles = 0;
+        long reclaimableBytes = 0;
+        for (Group group : sorted) {
+            duplicateFiles += group.copies;
+            reclaimableBytes += group.reclaimableBytes();
+        }
+
+        int safePageSize = Math.max(1, pageSize);
+        int safePage = Math.max(0, page);
+        int from = (int) Math.min((long) safePage * safePageSize, sorted.size());
+        int to = Math.min(from + safePageSize, sorted.size());
+        List<DuplicateVO.Group> content = toGroupVOs(sorted.subList(from, to));
+        int totalPages = (sorted.size() + safePageSize - 1) / safePageSize;
+
+        PageVO<DuplicateVO.Group> pageVO = PageVO.<DuplicateVO.Group>builder()
+                .content(content)
+                .totalElements(sorted.size())
+                .totalPages(totalPages)
+                .currentPage(safePage)
+                .pageSize(safePageSize)
+                .hasNext(safePage + 1 < totalPages)
+                .hasPrevious(safePage > 0)
+                .build();
+
+        return DuplicateVO.Report.builder()
+                .groupCount(sorted.size())
+                .duplicateFiles(duplicateFiles)
+                .reclaimableBytes(reclaimableBytes)
+                .groups(pageVO)
+                .build();
+    }
+
+    private List<DuplicateVO.Group> toGroupVOs(List<Group> pageGroups) {
+        if (pageGroups.isEmpty()) {
+            return List.of();
+        }
+        Map<String, List<MediaFileRepository.DuplicateMemberView>> membersByKey = new LinkedHashMap<>();
+        for (MediaFileRepository.DuplicateMemberView member : mediaFileRepository.findDuplicateMembersByHashIn(
+                pageGroups.stream().map(group -> group.hash).distinct().toList())) {
+            membersByKey.computeIfAbsent(keyOf(member.getHash(), member.getSize()), k -> new ArrayList<>()).add(member);
+        }
+
+        List<DuplicateVO.Group> result = new ArrayList<>(pageGroups.size());
+        for (Group group : pageGroups) {
+            List<MediaFileRepository.DuplicateMemberView> members =
+                    membersByKey.getOrDefault(keyOf(group.hash, group.size), List.of());
+            Map<String, Integer> linksByFileKey = new HashMap<>();
+            int physicalCopies = 0;
+            for (MediaFileRepository.DuplicateMemberView member : members) {
+                if (member.getFileKey() == null || linksByFileKey.merge(member.getFileKey(), 1, Integer::sum) == 1) {
+                    physicalCopies++;
+                }
+            }
+            // 成员以实际查询为准，索引中已过期的副本数顺带修正
+            if (physicalCopies < 2) {
+                groups.remove(keyOf(group.hash, group.size), group);
+                continue;
+            }
+            group.copies = members.size();
+            group.physicalCopies = physicalCopies;
+
+            List<DuplicateVO.File> files = new ArrayList<>(members.size());
+            for (MediaFileRepository.DuplicateMemberView member : members) {
+                files.add(DuplicateVO.File.builder()
+                        .id(member.getId())
+                        .libraryId(member.getLibraryId())
+                        .filePath(member.getFilePath())
+                        .fileName(member.getFileName())
+                        .animeTitle(member.getAnimeTitle())
+                        .episodeTitle(member.getEpisodeTitle())
+                        .hardlinked(member.getFileKey() != null && linksByFileKey.get(member.getFileKey()) > 1)
+                        .build());
+            }
+            result.add(DuplicateVO.Group.builder()
+                    .hash(group.hash)
+                    .size(group.size)
+                    .copies(members.size())
+                    .physicalCopies(physicalCopies)
+                    .reclaimableBytes(group.reclaimableBytes())
+                    .files(files)
+                    .build());
+        }
+        return result;
+    }
+
+    private static String keyOf(String hash, Long size) {
+        return hash + "/" + size;
+    }
+}
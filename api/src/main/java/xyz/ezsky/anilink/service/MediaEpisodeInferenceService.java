@@ -0,0 +1,276 @@
+package xyz.ezsky.anilink.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import xyz.ezsky.anilink.model.dto.MatchResult;
+import xyz.ezsky.anilink.model.entity.MatchStatus;
+import xyz.ezsky.anilink.model.entity.MediaFile;
+import xyz.ezsky.anilink.repository.MediaFileRepository;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 基于同目录已匹配文件的本地剧集推断。
+ *
+ * <p>字幕组发布的同一季文件通常共用命名模板，仅集数不同。对待匹配文件，取同目录下命名模板相同
+ * （去掉数字后的文本一致、数字段数量一致）的已匹配文件，结合本地缓存的 {@code /api/v2/bangumi/{animeId}}
+ * 剧集列表，找出在所有这些文件中都与其集数一致的唯一数字位置；再取待匹配文件该位置的数字，
+ * 在剧集列表中定位 episodeId。其余数字位置若在所有同模板文件中取值相同（季数、版本、分辨率、年份等），
+ * 待匹配文件在该位置也必须取相同的值，否则视为不同季或不同版本。</p>
+ *
+ * <p>全程不读文件内容、不请求上游：剧集列表未缓存、同模板文件不足、番剧不一致或集数位置不唯一时
+ * 视为低置信度，交回正常的哈希 + 远程匹配流程。</p>
+ */
+@Log4j2
+@Service
+public class MediaEpisodeInferenceService {
+
+    private static final Pattern NUMBER = Pattern.compile("\\d+");
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Autowired
+    private MediaFileRepository mediaFileRepository;
+
+    @Autowired
+    private AnimeService animeService;
+
+    @Value("${anilink.match.inference-enabled:true}")
+    private boolean enabled = true;
+
+    /**
+     * 参与推断的同模板已匹配文件最少数量
+     */
+    @Value("${anilink.match.inference-min-siblings:2}")
+    private int minSiblings = 2;
+
+    /**
+     * 文件名模板：去掉扩展名后，数字段替换为占位符的文本及按顺序提取的数字段
+     */
+    record Template(String skeleton, List<String> numbers) {
+    }
+
+    /**
+     * 剧集列表中的一集
+     */
+    record Episode(String episodeId, String episodeTitle) {
+    }
+
+    /**
+     * 为一批待匹配文件推断剧集
+     *
+     * @param files 待匹配文件
+     * @return 文件 ID 到推断结果的映射，只包含高置信度的文件
+     */
+    public Map<Long, MatchResult> infer(List<MediaFile> files) {
+        Map<Long, MatchResult> inferred = new HashMap<>();
+        if (!enabled || files.isEmpty()) {
+            return inferred;
+        }
+
+        Map<String, List<MediaFile>> byDirectory = new LinkedHashMap<>();
+        for (MediaFile file : files) {
+            Path parent = Paths.get(file.getFilePath()).getParent();
+            if (parent == null || file.getLibrary() == null || file.getLibrary().getId() == null) {
+                continue;
+            }
+            byDirectory.computeIfAbsent(file.getLibrary().getId() + "|" + parent, k -> new ArrayList<>()).add(file);
+        }
+
+        Map<Long, Map<Integer, List<Episode>>> episodesByAnime = new HashMap<>();
+        for (List<MediaFile> group : byDirectory.values()) {
+            try {
+                inferDirectory(group, episodesByAnime, inferred);
+            } catch (Exception e) {
+                log.warn("Episode inference failed for {}: {}", group.get(0).getFilePath(), e.getMessage());
+            }
+        }
+        return inferred;
+    }
+
+    private void inferDirectory(List<MediaFile> group,
+                                Map<Long, Map<Integer, List<Episode>>> episodesByAnime,
+                                Map<Long, MatchResult> inferred) {
+        MediaFile first = group.get(0);
+        Path parent = Paths.get(first.getFilePath()).getParent();
+        String prefix = escapeLike(parent.toString() + parent.getFileSystem().getSeparator()) + "%";
+        List<MediaFileRepository.MatchedSiblingView> siblings = mediaFileRepository.findSiblingsByPathPrefix(
+                first.getLibrary().getId(), prefix, MatchStatus.MATCHED).stream()
+                .filter(sibling -> parent.equals(Paths.get(sibling.getFilePath()).getParent()))
+                .filter(sibling -> sibling.getAnimeId() != null && sibling.getEpisodeId() != null)
+                .toList();
+        if (siblings.size() < minSiblings) {
+            return;
+        }
+
+        for (MediaFile file : group) {
+            Template template = templateOf(file.getFileName());
+            List<MediaFileRepository.MatchedSiblingView> sameTemplate = new ArrayList<>();
+            List<Template> siblingTemplates = new ArrayList<>();
+            for (MediaFileRepository.MatchedSiblingView sibling : siblings) {
+                Template siblingTemplate = templateOf(sibling.getFileName());
+                if (siblingTemplate.skeleton().equals(template.skeleton())) {
+                    sameTemplate.add(sibling);
+                    siblingTemplates.add(siblingTemplate);
+                }
+            }
+            if (sameTemplate.size() < minSiblings) {
+                continue;
+            }
+            Long animeId = sameTemplate.get(0).getAnimeId();
+            if (sameTemplate.stream().anyMatch(sibling -> !animeId.equals(sibling.getAnimeId()))) {
+                continue;
+            }
+
+            Map<Integer, List<Episode>> episodes = episodesByAnime.computeIfAbsent(animeId, this::loadEpisodes);
+            if (episodes.isEmpty()) {
+                continue;
+            }
+            Map<String, Integer> numberByEpisodeId = new HashMap<>();
+            episodes.forEach((number, list) -> list.forEach(episode -> numberByEpisodeId.put(episode.episodeId(), number)));
+
+            List<Integer> siblingEpisodeNumbers = new ArrayList<>();
+            for (MediaFileRepository.MatchedSiblingView sibling : sameTemplate) {
+                siblingEpisodeNumbers.add(numberByEpisodeId.get(sibling.getEpisodeId()));
+            }
+            int position = episodePosition(siblingTemplates, siblingEpisodeNumbers);
+            if (position < 0 || !sharesFixedNumbers(siblingTemplates, template, position)) {
+                continue;
+            }
+
+            List<Episode> candidates = episodes.get(parseNumber(template.numbers().get(position)));
+            if (candidates == null || candidates.size() != 1) {
+                continue;
+            }
+            Episode episode = candidates.get(0);
+            MatchResult result = new MatchResult();
+            result.setSuccess(true);
+            result.setEpisodeId(episode.episodeId());
+            result.setAnimeId(animeId);
+            result.setAnimeTitle(sameTemplate.get(0).getAnimeTitle());
+            result.setEpisodeTitle(episode.episodeTitle());
+            inferred.put(file.getId(), result);
+        }
+    }
+
+    /**
+     * 找出在所有同模板文件中都等于其集数的唯一数字位置
+     *
+     * @param templates      同模板已匹配文件的模板
+     * @param episodeNumbers 与模板一一对应的集数，未知时为 null
+     * @return 数字位置；不存在或不唯一时返回 -1
+     */
+    static int episodePosition(List<Template> templates, List<Integer> episodeNumbers) {
+        if (templates.isEmpty() || episodeNumbers.contains(null)) {
+            return -1;
+        }
+        int count = templates.get(0).numbers().size();
+        int found = -1;
+        for (int position = 0; position < count; position++) {
+            boolean consistent = true;
+            for (int i = 0; i < templates.size() && consistent; i++) {
+                consistent = Objects.equals(parseNumber(templates.get(i).numbers().get(position)), episodeNumbers.get(i));
+            }
+            if (consistent) {
+                if (found >= 0) {
+                    return -1;
+                }
+                found = position;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 检查待匹配文件在集数以外、同模板文件中取值固定的数字位置上是否取相同的值
+     *
+     * @param templates       同模板已匹配文件的模板
+     * @param target          待匹配文件的模板
+     * @param episodePosition 集数所在位置
+     * @return 所有固定位置都一致时返回 true
+     */
+    static boolean sharesFixedNumbers(List<Template> templates, Template target, int episodePosition) {
+        for (int position = 0; position < target.numbers().size(); position++) {
+            if (position == episodePosition) {
+                continue;
+            }
+            Integer fixed = parseNumber(templates.get(0).numbers().get(position));
+            boolean constant = true;
+            for (int i = 1; i < templates.size() && constant; i++) {
+                constant = Objects.equals(parseNumber(templates.get(i).numbers().get(position)), fixed);
+            }
+            if (constant && !Objects.equals(parseNumber(target.numbers().get(position)), fixed)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 解析文件名模板
+     */
+    static Template templateOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        String stem = dot > 0 ? fileName.substring(0, dot) : fileName;
+        Matcher matcher = NUMBER.matcher(stem);
+        StringBuilder skeleton = new StringBuilder();
+        List<String> numbers = new ArrayList<>();
+        int last = 0;
+        while (matcher.find()) {
+            skeleton.append(stem, last, matcher.start()).append('#');
+            numbers.add(matcher.group());
+            last = matcher.end();
+        }
+        skeleton.append(stem.substring(last));
+        return new Template(skeleton.toString(), numbers);
+    }
+
+    /**
+     * 从本地缓存的番剧详情中读取剧集列表，按数字集数分组；特别篇等非数字集数不参与推断
+     */
+    private Map<Integer, List<Episode>> loadEpisodes(Long animeId) {
+        Map<Integer, List<Episode>> episodes = new HashMap<>();
+        String rawJson = animeService.getCachedRawJsonByAnimeId(animeId);
+        if (rawJson == null) {
+            return episodes;
+        }
+        try {
+            JsonNode list = OBJECT_MAPPER.readTree(rawJson).path("bangumi").path("episodes");
+            for (JsonNode node : list) {
+                Integer number = parseNumber(node.path("episodeNumber").asText(""));
+                String episodeId = node.path("episodeId").asText("");
+                if (number == null || episodeId.isEmpty()) {
+                    continue;
+                }
+                episodes.computeIfAbsent(number, k -> new ArrayList<>())
+                        .add(new Episode(episodeId, node.path("episodeTitle").asText(null)));
+            }
+        } catch (Exception e) {
+            log.warn("Failed to parse cached bangumi episodes for animeId={}: {}", animeId, e.getMessage());
+        }
+        return episodes;
+    }
+
+    private static Integer parseNumber(String text) {
+        if (text == null || text.isEmpty() || text.length() > 9 || !text.chars().allMatch(Character::isDigit)) {
+            return null;
+        }
+        return Integer.parseInt(text);
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+}
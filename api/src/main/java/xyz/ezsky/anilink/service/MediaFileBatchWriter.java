@@ -0,0 +1,363 @@
+package xyz.ezsky.anilink.service;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import xyz.ezsky.anilink.model.entity.MatchStatus;
+import xyz.ezsky.anilink.model.entity.MediaFile;
+import xyz.ezsky.anilink.repository.MediaFileRepository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 媒体文件批量写入服务。
+ *
+ * <p>位于目录遍历与 {@link MediaFileRepository} 之间的缓冲层：</p>
+ * <ul>
+ *   <li>新增/变更的文件先进入缓冲区，满一批后通过 {@code saveAll} 在单个事务中提交，
+ *   配合 {@code hibernate.jdbc.batch_size} 合并为 JDBC 批量语句（雪花 ID 在 persist 时预分配，不依赖自增回填）。</li>
+ *   <li>删除的文件按批次执行一次字幕清理和一条 {@code DELETE ... WHERE id IN (...)}。</li>
+ *   <li>仍在写入的文件（{@link MatchStatus#PENDING_STABLE}）交给 {@link MediaFileStabilityGate}，稳定后再入队。</li>
+ *   <li>重命名/移动的文件只更新路径，保留 hash、匹配结果与字幕，不再进入匹配和元数据队列。</li>
+ *   <li>每批提交成功后再更新 {@link MediaPathIndex} 并通知匹配队列与元数据队列，保证队列拉取时记录已落库。</li>
+ *   <li>升级前入库、内容未变的文件只补写文件标识，按批次执行 JDBC 批量 UPDATE，不加载实体，也不进入任何队列。</li>
+ * </ul>
+ */
+@Log4j2
+@Service
+public class MediaFileBatchWriter {
+
+    private static final String BACKFILL_FILE_KEY_SQL = "UPDATE media_file SET file_key = ? WHERE id = ? AND file_key IS NULL";
+
+    @Autowired
+    private MediaFileRepository mediaFileRepository;
+
+    @Autowired
+    private MediaSubtitleService mediaSubtitleService;
+
+    @Autowired
+    private MediaMatchQueueManager mediaMatchQueueManager;
+
+    @Autowired
+    private MediaMetadataQueueManager metadataQueueManager;
+
+    @Autowired
+    private MediaPathIndex mediaPathIndex;
+
+    @Autowired
+    private MediaFileStabilityGate mediaFileStabilityGate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${anilink.scanner.persist-batch-size:200}")
+    private int batchSize;
+
+    /**
+     * 打开一个新的写入缓冲区。调用方使用完毕后必须 {@link Sink#close()} 以提交剩余数据。
+     *
+     * @param label 日志中用于标识来源的名称（如媒体库名称）
+     * @return 写入缓冲区
+     */
+    public Sink openSink(String label) {
+        return openSink(label, MatchPriority.BULK);
+    }
+
+    /**
+     * 打开一个新的写入缓冲区，落库的文件按指定优先级进入匹配队列。
+     *
+     * @param label    日志中用于标识来源的名称（如媒体库名称）
+     * @param priority 匹配队列优先级
+     * @return 写入缓冲区
+     */
+    public Sink openSink(String label, MatchPriority priority) {
+        return new Sink(label, Math.max(1, batchSize), priority);
+    }
+
+    /**
+     * 单次扫描使用的写入缓冲区，非线程安全，应由单个线程顺序调用。
+     */
+    public final class Sink implements AutoCloseable {
+
+        private final String label;
+        private final int chunkSize;
+        private final MatchPriority priority;
+        private final long startNanos = System.nanoTime();
+        private final List<MediaFile> pendingSaves = new ArrayList<>();
+        private final List<PendingDelete> pendingDeletes = new ArrayList<>();
+        private final List<PendingFileKey> pendingFileKeys = new ArrayList<>();
+        private final Map<Long, String> pendingMoveSources = new HashMap<>();
+        /**
+         * 缓冲中的新增实体。雪花 ID 在 persist 时即写入实体，批量回滚后不能再以 ID 是否为空区分新增记录
+         */
+        private final Set<MediaFile> pendingNew = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private long inserted;
+        private long updated;
+        private long deleted;
+        private long moved;
+        private long failed;
+
+        private Sink(String label, int chunkSize, MatchPriority priority) {
+            this.label = label;
+            this.chunkSize = chunkSize;
+            this.priority = priority;
+        }
+
+        /**
+         * 缓冲一条新增记录
+         */
+        public void insert(MediaFile mediaFile) {
+            pendingSaves.add(mediaFile);
+            pendingNew.add(mediaFile);
+            if (pendingSaves.size() >= chunkSize) {
+                flushSaves();
+            }
+        }
+
+        /**
+         * 缓冲一条更新记录
+         */
+        public void update(MediaFile mediaFile) {
+            pendingSaves.add(mediaFile);
+            if (pendingSaves.size() >= chunkSize) {
+                flushSaves();
+            }
+        }
+
+        /**
+         * 缓冲一条移动记录：实体的路径已更新为新路径，提交后从索引中移除旧路径
+         *
+         * @param mediaFile 已更新路径的媒体文件
+         * @param oldPath   移动前的绝对路径
+         */
+        public void move(MediaFile mediaFile, String oldPath) {
+            pendingSaves.add(mediaFile);
+            pendingMoveSources.put(mediaFile.getId(), oldPath);
+            if (pendingSaves.size() >= chunkSize) {
+                flushSaves();
+            }
+        }
+
+        /**
+         * 缓冲一条删除记录
+         *
+         * @param libraryId 所属媒体库 ID
+         * @param id        媒体文件 ID
+         * @param filePath  文件绝对路径
+         */
+        public void delete(Long libraryId, Long id, String filePath) {
+            pendingDeletes.add(new PendingDelete(libraryId, id, filePath));
+            if (pendingDeletes.size() >= chunkSize) {
+                flushDeletes();
+            }
+        }
+
+        /**
+         * 缓冲一条文件标识补写：内容未变的已入库文件只更新 file_key 列，不触发匹配与元数据处理
+         *
+         * @param libraryId 所属媒体库 ID
+         * @param filePath  文件绝对路径
+         * @param indexed   路径索引中的现有记录
+         * @param fileKey   文件系统标识
+         */
+        public void backfillFileKey(Long libraryId, String filePath, MediaPathIndex.Entry indexed, String fileKey) {
+            pendingFileKeys.add(new PendingFileKey(libraryId, filePath,
+                    new MediaPathIndex.Entry(indexed.id(), indexed.size(), indexed.lastModified(), fileKey)));
+            if (pendingFileKeys.size() >= chunkSize) {
+                flushFileKeys();
+            }
+        }
+
+        /**
+         * 立即提交所有缓冲中的新增、更新、删除与文件标识补写
+         */
+        public void flush() {
+            flushSaves();
+            flushDeletes();
+            flushFileKeys();
+        }
+
+        public long getInserted() {
+            return inserted;
+        }
+
+        public long getUpdated() {
+            return updated;
+        }
+
+        public long getDeleted() {
+            return deleted;
+        }
+
+        public long getMoved() {
+            return moved;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * 自打开以来的写入吞吐（条/秒）
+         */
+        public double getThroughputPerSecond() {
+            double seconds = (System.nanoTime() - startNanos) / 1_000_000_000d;
+            long total = inserted + updated + moved + deleted;
+            return seconds > 0 ? total / seconds : total;
+        }
+
+        @Override
+        public void close() {
+            flush();
+            long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+            if (inserted + updated + moved + deleted + failed > 0) {
+                log.info("Persisted media files for {}: inserted={}, updated={}, moved={}, deleted={}, failed={} in {} ms ({} files/s)",
+                        label, inserted, updated, moved, deleted, failed, elapsedMs,
+                        String.format("%.1f", getThroughputPerSecond()));
+            }
+        }
+
+        private void flushSaves() {
+            if (pendingSaves.isEmpty()) {
+                return;
+            }
+            List<MediaFile> chunk = new ArrayList<>(pendingSaves);
+            Map<Long, String> moveSources = new HashMap<>(pendingMoveSources);
+            Set<MediaFile> newEntities = Collections.newSetFromMap(new IdentityHashMap<>());
+            newEntities.addAll(pendingNew);
+            int chunkInserts = newEntities.size();
+            pendingSaves.clear();
+            pendingMoveSources.clear();
+            pendingNew.clear();
+
+            List<MediaFile> saved;
+            try {
+                // SimpleJpaRepository.saveAll 自带事务，一个批次只提交一次
+                saved = mediaFileRepository.saveAll(chunk);
+                inserted += chunkInserts;
+                moved += moveSources.size();
+                updated += chunk.size() - chunkInserts - moveSources.size();
+            } catch (Exception e) {
+                // 批次中任意一条冲突（如并发写入同一路径）都会回滚整批，退化为逐条保存以隔离失败记录
+                log.warn("Batch save of {} media files failed for {}, falling back to single saves: {}",
+                        chunk.size(), label, e.getMessage());
+                saved = saveIndividually(chunk, newEntities, moveSources);
+            }
+
+            Set<Long> enqueuedLibraries = new HashSet<>();
+            for (MediaFile mediaFile : saved) {
+                if (mediaFile.getMatchStatus() == MatchStatus.PENDING_STABLE) {
+                    // 按当前路径（含移动后的新路径）跟踪，稳定后由闸门负责入队
+                    mediaFileStabilityGate.track(mediaFile);
+                }
+                String oldPath = moveSources.get(mediaFile.getId());
+                if (oldPath != null) {
+                    // 移动的文件内容未变，保留已有 hash 与匹配结果，只需替换索引中的路径
+                    mediaPathIndex.remove(mediaFile.getLibrary().getId(), oldPath);
+                    mediaPathIndex.put(mediaFile);
+                    log.info("Moved file: {} -> {}", oldPath, mediaFile.getFilePath());
+                    continue;
+                }
+                mediaPathIndex.put(mediaFile);
+                if (mediaFile.getMatchStatus() == MatchStatus.PENDING_STABLE) {
+                    continue;
+                }
+                // 文件记录落库后立即入匹配队列，匹配所需字段由匹配队列自行补齐（hash）。
+                mediaMatchQueueManager.addToQueue(mediaFile.getId(), priority);
+                enqueuedLibraries.add(mediaFile.getLibrary().getId());
+            }
+            // 仅触发后台处理器；具体任务由处理器按库内待处理文件分批拉取。
+            enqueuedLibraries.forEach(metadataQueueManager::triggerProcessing);
+            log.debug("Flushed {} media file saves for {}", saved.size(), label);
+        }
+
+        private List<MediaFile> saveIndividually(List<MediaFile> chunk, Set<MediaFile> newEntities,
+                                                 Map<Long, String> moveSources) {
+            List<MediaFile> saved = new ArrayList<>();
+            for (MediaFile mediaFile : chunk) {
+                boolean isNew = newEntities.contains(mediaFile);
+                if (isNew) {
+                    // 回滚的批次已为其分配 ID，清空后按新增持久化，避免对不存在的行执行 merge
+                    mediaFile.setId(null);
+                }
+                try {
+                    saved.add(mediaFileRepository.save(mediaFile));
+                    if (isNew) {
+                        inserted++;
+                    } else if (moveSources.containsKey(mediaFile.getId())) {
+                        moved++;
+                    } else {
+                        updated++;
+                    }
+                } catch (Exception e) {
+                    failed++;
+                    log.error("Failed to save media file: {}", mediaFile.getFilePath(), e);
+                }
+            }
+            return saved;
+        }
+
+        private void flushFileKeys() {
+            if (pendingFileKeys.isEmpty()) {
+                return;
+            }
+            List<Object[]> args = new ArrayList<>(pendingFileKeys.size());
+            for (PendingFileKey pending : pendingFileKeys) {
+                args.add(new Object[]{pending.entry().fileKey(), pending.entry().id()});
+            }
+            try {
+                jdbcTemplate.batchUpdate(BACKFILL_FILE_KEY_SQL, args);
+                for (PendingFileKey pending : pendingFileKeys) {
+                    mediaPathIndex.put(pending.libraryId(), pending.filePath(), pending.entry());
+                }
+                log.debug("Backfilled file keys for {} media files in {}", pendingFileKeys.size(), label);
+            } catch (Exception e) {
+                // 补写失败不影响扫描，下次扫描会再次尝试
+                log.warn("Failed to backfill file keys for {} media files in {}: {}",
+                        pendingFileKeys.size(), label, e.getMessage());
+            } finally {
+                pendingFileKeys.clear();
+            }
+        }
+
+        private void flushDeletes() {
+            if (pendingDeletes.isEmpty()) {
+                return;
+            }
+            List<Long> ids = new ArrayList<>(pendingDeletes.size());
+            for (PendingDelete pending : pendingDeletes) {
+                ids.add(pending.id());
+            }
+            try {
+                mediaSubtitleService.cleanupByMediaFileIds(ids);
+                mediaFileRepository.deleteByIdIn(ids);
+                deleted += ids.size();
+                for (PendingDelete pending : pendingDeletes) {
+                    mediaPathIndex.remove(pending.libraryId(), pending.filePath());
+                    log.info("Removed deleted file: {}", pending.filePath());
+                }
+            } catch (Exception e) {
+                failed += ids.size();
+                log.error("Failed to bulk delete {} media files for {}", ids.size(), label, e);
+            } finally {
+                pendingDeletes.clear();
+            }
+        }
+    }
+
+    private record PendingDelete(Long libraryId, Long id, String filePath) {
+    }
+
+    private record PendingFileKey(Long libraryId, String filePath, MediaPathIndex.Entry entry) {
+    }
+}
@@ -0,0 +1,184 @@
+package xyz.ezsky.anilink.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import xyz.ezsky.anilink.model.entity.MediaLibrary;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文件变更事件去抖器（哈希时间轮）。
+ *
+ * <p>每个待处理路径只占一个 {@link Pending} 对象：重复的 MODIFY 事件只刷新截止时间，不取消也不重新创建定时任务。
+ * 时间轮每个刻度处理一个槽位，截止时间已到的路径按媒体库合并为一批交给回调，
+ * 尚未到期的（期间又有新事件）重新放入对应槽位。超过一圈的截止时间在经过槽位时继续顺延。</p>
+ *
+ * <p>回调在时间轮线程中顺序执行。</p>
+ */
+@Log4j2
+@Service
+public class MediaFileEventDebouncer {
+
+    /**
+     * 时间轮槽位数，默认刻度下约覆盖 16 秒
+     */
+    private static final int WHEEL_SIZE = 64;
+
+    @Value("${anilink.watcher.debounce-ms:5000}")
+    private long quietMillis = 5000;
+
+    @Value("${anilink.watcher.debounce-tick-ms:250}")
+    private long tickMillis = 250;
+
+    /**
+     * 一批静默期已过的文件的处理回调
+     */
+    public interface BatchHandler {
+
+        /**
+         * @param library 所属媒体库
+         * @param files   静默期已过的文件
+         */
+        void onReady(MediaLibrary library, List<Path> files);
+    }
+
+    private static final class Pending {
+        private final MediaLibrary library;
+        private final BatchHandler handler;
+        private long deadline;
+
+        private Pending(MediaLibrary library, BatchHandler handler, long deadline) {
+            this.library = library;
+            this.handler = handler;
+            this.deadline = deadline;
+        }
+    }
+
+    private record Batch(MediaLibrary library, BatchHandler handler, List<Path> files) {
+    }
+
+    private final Map<Path, Pending> pending = new HashMap<>();
+    private final List<Set<Path>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private long nextTick;
+    private long coalescedEvents;
+
+    private ScheduledExecutorService ticker;
+
+    public MediaFileEventDebouncer() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new HashSet<>());
+        }
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (ticker != null) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "media-file-debouncer");
+            t.setDaemon(true);
+            return t;
+        });
+        long tick = Math.max(1, tickMillis);
+        ticker.scheduleWithFixedDelay(this::tick, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+        pending.clear();
+        wheel.forEach(Set::clear);
+    }
+
+    /**
+     * 记录一次文件变更；同一路径在静默期内的后续事件只顺延截止时间。
+     *
+     * @param library 所属媒体库
+     * @param file    变更的文件
+     * @param handler 静默期过后的处理回调
+     */
+    public synchronized void submit(MediaLibrary library, Path file, BatchHandler handler) {
+        long deadline = System.currentTimeMillis() + quietMillis;
+        Pending existing = pending.get(file);
+        if (existing != null) {
+            existing.deadline = deadline;
+            coalescedEvents++;
+            return;
+        }
+        pending.put(file, new Pending(library, handler, deadline));
+        place(file, quietMillis);
+    }
+
+    /**
+     * 当前等待静默期结束的路径数
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 自启动以来被合并掉的重复事件数
+     */
+    public synchronized long getCoalescedEvents() {
+        return coalescedEvents;
+    }
+
+    private void place(Path file, long delayMillis) {
+        long ticks = Math.max(1, (delayMillis + tickMillis - 1) / Math.max(1, tickMillis));
+        int slot = (int) ((nextTick + Math.min(ticks, WHEEL_SIZE) - 1) % WHEEL_SIZE);
+        wheel.get(slot).add(file);
+    }
+
+    private void tick() {
+        Map<Long, Batch> ready = new LinkedHashMap<>();
+        synchronized (this) {
+            Set<Path> bucket = wheel.get((int) (nextTick % WHEEL_SIZE));
+            nextTick++;
+            if (bucket.isEmpty()) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            List<Path> due = new ArrayList<>(bucket);
+            bucket.clear();
+            for (Path file : due) {
+                Pending entry = pending.get(file);
+                if (entry == null) {
+                    continue;
+                }
+                if (entry.deadline > now) {
+                    place(file, entry.deadline - now);
+                    continue;
+                }
+                pending.remove(file);
+                ready.computeIfAbsent(entry.library.getId(),
+                        id -> new Batch(entry.library, entry.handler, new ArrayList<>())).files().add(file);
+            }
+        }
+
+        for (Batch batch : ready.values()) {
+            log.debug("Flushing {} debounced file events for library {}", batch.files().size(), batch.library().getName());
+            try {
+                batch.handler().onReady(batch.library(), batch.files());
+            } catch (Exception e) {
+                log.error("Error handling debounced file events for library: {}", batch.library().getName(), e);
+            }
+        }
+    }
+}
@@ -13,6 +13,7 @@ import xyz.ezsky.anilink.model.dto.UpdateMediaFileRequest;
 import xyz.ezsky.anilink.model.entity.MatchStatus;
 import xyz.ezsky.anilink.model.entity.MediaFile;
 import xyz.ezsky.anilink.model.vo.LibraryItemVO;
+import xyz.ezsky.anilink.model.vo.LibraryMetadataProgressVO;
 import xyz.ezsky.anilink.model.vo.MatchProgressVO;
 import xyz.ezsky.anilink.model.vo.MetadataProgressVO;
 import xyz.ezsky.anilink.model.vo.PageVO;
@@ -59,9 +60,18 @@ public class MediaFileService {
     @Autowired
     private DandanMatchService dandanMatchService;
 
+    @Autowired
+    private MediaPathIndex mediaPathIndex;
+
     @Autowired
     private MediaHashService mediaHashService;
 
+    @Autowired
+    private MediaDuplicateIndex mediaDuplicateIndex;
+
+    @Autowired
+    private MediaMatchCacheService mediaMatchCacheService;
+
     @Autowired
     private xyz.ezsky.anilink.repository.PlayHistoryRepository playHistoryRepository;
 
@@ -109,7 +119,24 @@ public class MediaFileService {
                 mediaFile.getHash(),
                 mediaFile.getSize()
         );
-        List<MatchResult> matchResults = dandanMatchService.batchMatch(List.of(fileInfo));
+        // 同一内容已有确认的匹配结果时直接复用，不请求接口
+        MatchResult cachedResult = mediaMatchCacheService.lookup(mediaFile.getHash(), mediaFile.getSize());
+        List<MatchResult> matchResults;
+        if (cachedResult != null) {
+            matchResults = List.of(cachedResult);
+        } else {
+            DandanMatchService.BatchMatchOutcome outcome = dandanMatchService.batchMatchWithStatus(List.of(fileInfo));
+            if (outcome.isRetryable()) {
+                // 接口暂时性故障不代表未匹配，保留原有匹配结果
+                throw new IllegalStateException("弹弹接口暂时不可用，请稍后重试");
+            }
+            matchResults = outcome.results();
+            if (!matchResults.isEmpty()) {
+                mediaMatchCacheService.store(mediaFile.getHash(), mediaFile.getSize(), matchResults.get(0));
+            }
+        }
+        mediaFile.setMatchAttempts(0);
+        mediaFile.setNextMatchAttemptAt(null);
 
         if (matchResults.isEmpty()) {
             mediaFile.setMatchStatus(MatchStatus.NO_MATCH_FOUND);
@@ -131,6 +158,7 @@ public class MediaFileService {
         }
 
         MediaFile saved = mediaFileRepository.save(mediaFile);
+        mediaDuplicateIndex.onHashWritten(saved.getHash(), saved.getSize());
         
         // 如果手动匹配成功，也异步通知追番用户
         if (saved.getMatchStatus() == MatchStatus.MATCHED && saved.getAnimeId() != null) {
@@ -194,7 +222,7 @@ public class MediaFileService {
         }
 
         // 触发后台处理器按批次从数据库拉取待处理任务
-        metadataQueueManager.triggerProcessing();
+        metadataQueueManager.triggerProcessing(libraryId);
         
         log.info("Submitted {} files from library {} for metadata reprocessing", files.size(), libraryId);
         return CompletableFuture.completedFuture(null);
@@ -228,6 +256,18 @@ public class MediaFileService {
                 .totalSubmitted(submittedFromDb)
                 .totalProcessed(processedFromDb)
                 .failedTasks(metadataQueueManager.getTotalFailed())
+                .libraries(metadataQueueManager.getLibraryProgress().stream()
+                        .filter(progress -> libraryId == null || libraryId.equals(progress.libraryId()))
+                        .map(progress -> LibraryMetadataProgressVO.builder()
+                                .libraryId(progress.libraryId())
+                                .weight(progress.weight())
+                                .pending(progress.pending())
+                                .inFlight(progress.inFlight())
+                                .processed(progress.processed())
+                                .failed(progress.failed())
+                                .throughputPerMinute(progress.throughputPerMinute())
+                                .build())
+                        .toList())
                 .build();
     }
 
@@ -251,13 +291,25 @@ public class MediaFileService {
                 .pendingMatch(libraryPendingMatch)
             // queuePending 表示真实队列长度（当前为全局匹配队列）
             .queuePending(mediaMatchQueueManager.getQueueSize())
+                .queueInteractive(mediaMatchQueueManager.getLaneSize(MatchPriority.INTERACTIVE))
+                .queueWatcher(mediaMatchQueueManager.getLaneSize(MatchPriority.WATCHER))
+                .queueBulk(mediaMatchQueueManager.getLaneSize(MatchPriority.BULK))
                 .activeBatches(mediaMatchQueueManager.getActiveBatches())
+                .concurrencyLimit(mediaMatchQueueManager.getConcurrencyLimit())
+                .batchLatencyP50Ms(mediaMatchQueueManager.getBatchLatencyPercentile(50))
+                .batchLatencyP90Ms(mediaMatchQueueManager.getBatchLatencyPercentile(90))
+                .batchLatencyP99Ms(mediaMatchQueueManager.getBatchLatencyPercentile(99))
+                .hashPending(mediaMatchQueueManager.getHashPending())
+                .matchCacheHits(mediaMatchCacheService.getHits())
+                .matchCacheMisses(mediaMatchCacheService.getMisses())
+                .matchCacheHitRatio(mediaMatchCacheService.getHitRatio())
                 .batchSize(mediaMatchQueueManager.getBatchSize())
                 .queueIntervalSeconds(mediaMatchQueueManager.getQueueIntervalSeconds())
                 .totalEnqueued(mediaMatchQueueManager.getTotalEnqueued())
                 .totalProcessed(mediaMatchQueueManager.getTotalProcessed())
                 .totalMatched(mediaMatchQueueManager.getTotalMatched())
                 .totalNoMatch(mediaMatchQueueManager.getTotalNoMatch())
+                .totalInferred(mediaMatchQueueManager.getTotalInferred())
                 .failedTasks(mediaMatchQueueManager.getTotalFailed())
                 .build();
     }
@@ -278,6 +330,7 @@ public class MediaFileService {
                     
                     // 删除数据库记录
                     mediaFileRepository.delete(mediaFile);
+                    mediaPathIndex.remove(mediaFile.getLibrary().getId(), filePath);
                     log.info("Deleted media file record: {}", filePath);
                     
                     // 可选：删除硬盘上的文件
@@ -330,10 +383,21 @@ public class MediaFileService {
                             && mediaFile.getEpisodeId() != null
                             && !mediaFile.getEpisodeId().isBlank();
                     mediaFile.setMatchStatus(hasMatchedBinding ? MatchStatus.MATCHED : MatchStatus.UNMATCHED);
+                    mediaFile.setMatchAttempts(0);
+                    mediaFile.setNextMatchAttemptAt(null);
 
                     MediaFile saved = mediaFileRepository.save(mediaFile);
+                    if (saved.getMatchStatus() == MatchStatus.UNMATCHED) {
+                        mediaMatchQueueManager.addToQueue(saved.getId(), MatchPriority.INTERACTIVE);
+                    }
 
                     // 手工更新将文件绑定到新剧集时，也触发一次追番通知。
+                    // 手工改绑说明自动匹配结果不可信，不再向同一内容的其他文件复用
+                    if (!Objects.equals(saved.getAnimeId(), originalAnimeId)
+                            || !Objects.equals(saved.getEpisodeId(), originalEpisodeId)) {
+                        mediaMatchCacheService.evict(saved.getHash(), saved.getSize());
+                    }
+
                     if (shouldNotifyAfterManualUpdate(saved, originalAnimeId, originalEpisodeId)) {
                         try {
                             episodeUpdateNotificationService.notifyFollowingUsersAsync(saved);
@@ -369,7 +433,7 @@ public class MediaFileService {
         if (matched) {
             return List.of(MatchStatus.MATCHED);
         }
-        return Arrays.asList(MatchStatus.UNMATCHED, MatchStatus.NO_MATCH_FOUND);
+        return Arrays.asList(MatchStatus.UNMATCHED, MatchStatus.NO_MATCH_FOUND, MatchStatus.PENDING_STABLE);
     }
 
     private void ensureHash(MediaFile mediaFile) {
@@ -0,0 +1,192 @@
+package xyz.ezsky.anilink.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import xyz.ezsky.anilink.model.entity.MatchStatus;
+import xyz.ezsky.anilink.model.entity.MediaFile;
+import xyz.ezsky.anilink.repository.MediaFileRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文件稳定性闸门。
+ *
+ * <p>修改时间距今不足一个稳定窗口（轮询间隔 × 轮询次数）的文件视为可能仍在写入，入库时标记为
+ * {@link MatchStatus#PENDING_STABLE}，不进入 hash、匹配和元数据队列。闸门定期轮询这些文件，
+ * 大小和修改时间连续多次不变后改为 {@link MatchStatus#UNMATCHED} 并通知各队列。</p>
+ */
+@Log4j2
+@Service
+public class MediaFileStabilityGate {
+
+    @Autowired
+    private MediaFileRepository mediaFileRepository;
+
+    @Autowired
+    private MediaPathIndex mediaPathIndex;
+
+    @Autowired
+    private MediaMatchQueueManager mediaMatchQueueManager;
+
+    @Autowired
+    private MediaMetadataQueueManager metadataQueueManager;
+
+    @Value("${anilink.scanner.stability-poll-ms:2000}")
+    private long pollMillis = 2000;
+
+    @Value("${anilink.scanner.stability-polls:3}")
+    private int requiredPolls = 3;
+
+    private final Map<Long, Tracked> tracked = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService poller;
+
+    private static final class Tracked {
+        private final Path path;
+        private long size;
+        private long lastModified;
+        private int stablePolls;
+
+        private Tracked(Path path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (poller != null) {
+            return;
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "media-stability-gate");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = Math.max(1, pollMillis);
+        poller.scheduleWithFixedDelay(this::poll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+        tracked.clear();
+    }
+
+    /**
+     * 判断文件是否已稳定：修改时间早于一个稳定窗口。
+     *
+     * @param attrs 文件属性
+     * @return true 表示可以直接进入各处理队列
+     */
+    public boolean isSettled(BasicFileAttributes attrs) {
+        long window = Math.max(1, pollMillis) * Math.max(1, requiredPolls);
+        return System.currentTimeMillis() - attrs.lastModifiedTime().toMillis() >= window;
+    }
+
+    /**
+     * 开始跟踪一个已落库、状态为 {@link MatchStatus#PENDING_STABLE} 的文件；重复调用会重新计数。
+     *
+     * @param mediaFile 媒体文件
+     */
+    public void track(MediaFile mediaFile) {
+        if (mediaFile.getId() == null || mediaFile.getFilePath() == null) {
+            return;
+        }
+        tracked.put(mediaFile.getId(), new Tracked(Paths.get(mediaFile.getFilePath()),
+                mediaFile.getSize(), mediaFile.getLastModified()));
+    }
+
+    /**
+     * 重新跟踪数据库中处于等待稳定状态的文件（如服务重启前未完成的写入）。
+     */
+    public void resumePending() {
+        List<MediaFile> pending = mediaFileRepository.findByMatchStatus(MatchStatus.PENDING_STABLE);
+        pending.forEach(this::track);
+        if (!pending.isEmpty()) {
+            log.info("Resumed stability tracking for {} media files", pending.size());
+        }
+    }
+
+    /**
+     * 当前等待稳定的文件数
+     */
+    public int getTrackedCount() {
+        return tracked.size();
+    }
+
+    private void poll() {
+        List<Map.Entry<Long, Tracked>> stable = new ArrayList<>();
+        for (Map.Entry<Long, Tracked> entry : tracked.entrySet()) {
+            Tracked file = entry.getValue();
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(file.path, BasicFileAttributes.class);
+                long size = attrs.size();
+                long lastModified = attrs.lastModifiedTime().toMillis();
+                if (size == file.size && lastModified == file.lastModified) {
+                    file.stablePolls++;
+                } else {
+                    file.size = size;
+                    file.lastModified = lastModified;
+                    file.stablePolls = 0;
+                }
+                if (file.stablePolls >= requiredPolls) {
+                    stable.add(Map.entry(entry.getKey(), file));
+                }
+            } catch (NoSuchFileException e) {
+                // 文件已删除或移走，由监听/扫描处理对应记录
+                tracked.remove(entry.getKey(), file);
+            } catch (IOException e) {
+                log.warn("Could not read attributes of pending file: {}", file.path, e);
+            }
+        }
+
+        for (Map.Entry<Long, Tracked> entry : stable) {
+            Tracked file = entry.getValue();
+            // 轮询期间被重新跟踪（如再次修改或移动）的文件保留新的计数
+            if (tracked.remove(entry.getKey(), file)) {
+                try {
+                    release(entry.getKey(), file);
+                } catch (Exception e) {
+                    log.error("Failed to release stable media file: {}", file.path, e);
+                }
+            }
+        }
+    }
+
+    private void release(Long mediaFileId, Tracked file) {
+        MediaFile mediaFile = mediaFileRepository.findById(mediaFileId).orElse(null);
+        if (mediaFile == null || mediaFile.getMatchStatus() != MatchStatus.PENDING_STABLE) {
+            return;
+        }
+        mediaFile.setSize(file.size);
+        mediaFile.setLastModified(file.lastModified);
+        mediaFile.setMatchStatus(MatchStatus.UNMATCHED);
+        MediaFile saved = mediaFileRepository.save(mediaFile);
+
+        mediaPathIndex.put(saved);
+        mediaMatchQueueManager.addToQueue(saved.getId(), MatchPriority.WATCHER);
+        metadataQueueManager.triggerProcessing(saved.getLibrary().getId());
+        log.info("File is stable, queued for processing: {}", saved.getFilePath());
+    }
+}
@@ -0,0 +1,115 @@
+package xyz.ezsky.anilink.service;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import xyz.ezsky.anilink.model.entity.MediaHashCache;
+import xyz.ezsky.anilink.repository.MediaHashCacheRepository;
+import xyz.ezsky.anilink.repository.base.LruCacheRepository;
+
+import java.util.List;
+
+/**
+ * 文件哈希缓存服务。
+ *
+ * <p>以 (文件标识, 大小, 修改时间) 为键保存已计算的哈希。文件标识取自 {@code BasicFileAttributes#fileKey()}，
+ * Linux 上包含设备号和 inode，因此硬链接到媒体库的下载文件、同一文件系统内跨媒体库移动的文件都能直接命中；
+ * 内容被改写时修改时间随之变化，旧条目自然失效。不提供文件标识的文件系统（如 Windows）不使用缓存。</p>
+ *
+ * <p>缓存只在哈希计算前按单个文件查询，写入发生在哈希计算完成后；同一文件的多个硬链接并发计算时以先写入的条目为准。
+ * 条目数上限与淘汰由 {@link LruCacheSupport} 负责。</p>
+ */
+@Log4j2
+@Service
+public class MediaHashCacheService extends LruCacheSupport {
+
+    @Autowired
+    private MediaHashCacheRepository mediaHashCacheRepository;
+
+    @Value("${anilink.hash.cache-enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${anilink.hash.cache-max-entries:200000}")
+    private long maxEntries = 200000;
+
+    @Value("${anilink.hash.cache-touch-interval-minutes:60}")
+    private long touchIntervalMinutes = 60;
+
+    public MediaHashCacheService() {
+        super("hash cache");
+    }
+
+    @Override
+    protected LruCacheRepository<?> cacheRepository() {
+        return mediaHashCacheRepository;
+    }
+
+    /**
+     * 查找缓存的哈希
+     *
+     * @param fileKey      文件标识，为 null 时不查找
+     * @param size         文件大小
+     * @param lastModified 文件修改时间（毫秒）
+     * @return 缓存的哈希；未命中时返回 null
+     */
+    public String lookup(String fileKey, long size, long lastModified) {
+        if (!enabled || fileKey == null) {
+            return null;
+        }
+        try {
+            MediaHashCache cached = mediaHashCacheRepository
+                    .findByFileKeyAndSizeAndLastModified(fileKey, size, lastModified).orElse(null);
+            if (cached == null) {
+                recordMisses(1);
+                return null;
+            }
+            recordHits(1);
+            touchIfStale(List.of(cached), MediaHashCache::getId, MediaHashCache::getLastUsedAt, touchIntervalMinutes);
+            return cached.getHash();
+        } catch (Exception e) {
+            log.warn("Hash cache lookup failed for {}: {}", fileKey, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 保存新计算的哈希
+     *
+     * @param fileKey      文件标识，为 null 时不保存
+     * @param size         文件大小
+     * @param lastModified 文件修改时间（毫秒）
+     * @param hash         哈希值
+     */
+    public void store(String fileKey, long size, long lastModified, String hash) {
+        if (!enabled || fileKey == null || hash == null) {
+            return;
+        }
+        MediaHashCache entry = new MediaHashCache();
+        entry.setFileKey(fileKey);
+        entry.setSize(size);
+        entry.setLastModified(lastModified);
+        entry.setHash(hash);
+        entry.setLastUsedAt(System.currentTimeMillis());
+        try {
+            mediaHashCacheRepository.save(entry);
+        } catch (DataIntegrityViolationException e) {
+            // 同一文件的多个硬链接被并发计算，已有条目即可
+            log.debug("Hash cache entry already exists for {}", fileKey);
+        } catch (Exception e) {
+            log.warn("Failed to store hash cache entry for {}: {}", fileKey, e.getMessage());
+        }
+    }
+
+    /**
+     * 按最近使用时间淘汰超出上限的条目
+     */
+    @Scheduled(fixedDelayString = "${anilink.hash.cache-trim-interval-ms:600000}")
+    public void trim() {
+        if (enabled) {
+            trimToCapacity(maxEntries);
+        }
+    }
+}
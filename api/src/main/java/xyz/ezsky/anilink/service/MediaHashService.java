@@ -1,22 +1,31 @@
 package xyz.ezsky.anilink.service;
 
 import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * 媒体文件哈希计算服务
- * 
+ *
  * 使用 MD5 算法计算文件前 16MB 的哈希值，用于文件去重和快速识别。
- * 
+ *
  * 性能优化：
  * - 仅读取文件前 16MB，避免大文件完全加载到内存
- * - 使用缓冲流逐块读取，内存占用恒定
- * - 计算过程中流式处理，不保存中间数据
+ * - 通过 {@link FileChannel} 读入每线程复用的 1MB 直接缓冲区（16 次 read 调用），或按配置使用内存映射
+ * - 每个线程复用同一个 {@link MessageDigest}、摘要数组和十六进制字符数组，除结果字符串外不产生分配
+ * - 读盘前先按文件身份查询 {@link MediaHashCacheService}，硬链接和重新入库的文件直接复用已有哈希
  */
 @Log4j2
 @Service
@@ -24,33 +33,96 @@ public class MediaHashService {
 
     // 前 16MB 用于哈希计算
     private static final long HASH_SIZE = 16 * 1024 * 1024;
-    private static final int BUFFER_SIZE = 8192;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final int DIGEST_LENGTH = 16;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
     /**
-     * 计算文件前 16MB 的 MD5 哈希值
-     * 
+     * 读取方式：DIRECT 使用直接缓冲区顺序读取；MMAP 使用内存映射（Windows 上映射释放前文件无法删除或移动，默认不启用）
+     */
+    public enum ReadMode {
+        DIRECT,
+        MMAP
+    }
+
+    @Value("${anilink.hash.read-mode:DIRECT}")
+    private ReadMode readMode = ReadMode.DIRECT;
+
+    @Autowired
+    private MediaHashCacheService mediaHashCacheService;
+
+    /**
+     * 单个线程的哈希计算上下文
+     */
+    private static final class HashContext {
+        private final MessageDigest md;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final byte[] digest = new byte[DIGEST_LENGTH];
+        private final char[] hex = new char[DIGEST_LENGTH * 2];
+
+        private HashContext() {
+            try {
+                md = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("MD5 is not available", e);
+            }
+        }
+    }
+
+    private static final ThreadLocal<HashContext> CONTEXT = ThreadLocal.withInitial(HashContext::new);
+
+    /**
+     * 计算文件前 16MB 的 MD5 哈希值，文件身份（文件标识、大小、修改时间）命中缓存时不读取文件
+     *
      * @param filePath 视频文件的路径
      * @return 32 字符的十六进制 MD5 哈希值；失败时返回 null
      */
     public String calculateHash(Path filePath) {
+        BasicFileAttributes attrs;
         try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-
-            try (FileInputStream fis = new FileInputStream(filePath.toFile())) {
-                byte[] buffer = new byte[BUFFER_SIZE];
-                long bytesRead = 0;
-                int len;
-
-                while ((len = fis.read(buffer)) != -1 && bytesRead < HASH_SIZE) {
-                    // 确保不超过 16MB
-                    int bytesToProcess = (int) Math.min(len, HASH_SIZE - bytesRead);
-                    md.update(buffer, 0, bytesToProcess);
-                    bytesRead += bytesToProcess;
-                }
-
-                byte[] digest = md.digest();
-                return bytesToHex(digest);
+            attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
+        } catch (IOException e) {
+            log.error("Error reading file attributes for hash calculation: {}", filePath, e);
+            return null;
+        }
+        String fileKey = MediaPathIndex.fileKeyOf(attrs);
+        long size = attrs.size();
+        long lastModified = attrs.lastModifiedTime().toMillis();
+
+        String cached = mediaHashCacheService.lookup(fileKey, size, lastModified);
+        if (cached != null) {
+            log.debug("Hash cache hit for file: {}", filePath);
+            return cached;
+        }
+
+        String hash = calculateHash(filePath, readMode);
+        if (hash != null && fileKey != null && isUnchanged(filePath, size, lastModified)) {
+            mediaHashCacheService.store(fileKey, size, lastModified, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * 使用指定读取方式计算文件前 16MB 的 MD5 哈希值
+     *
+     * @param filePath 视频文件的路径
+     * @param mode     读取方式
+     * @return 32 字符的十六进制 MD5 哈希值；失败时返回 null
+     */
+    public String calculateHash(Path filePath, ReadMode mode) {
+        HashContext context = CONTEXT.get();
+        MessageDigest md = context.md;
+        md.reset();
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long length = Math.min(channel.size(), HASH_SIZE);
+            if (mode == ReadMode.MMAP && length > 0) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+                md.update(mapped);
+            } else {
+                readDirect(channel, length, context.buffer, md);
             }
+            md.digest(context.digest, 0, DIGEST_LENGTH);
+            return toHex(context.digest, context.hex);
         } catch (IOException e) {
             log.error("Error reading file for hash calculation: {}", filePath, e);
             return null;
@@ -61,13 +133,42 @@ public class MediaHashService {
     }
 
     /**
-     * 将字节数组转换为十六进制字符串
+     * 计算期间文件被改写时不写入缓存，避免新内容的哈希记在旧身份下
+     */
+    private static boolean isUnchanged(Path filePath, long size, long lastModified) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
+            return attrs.size() == size && attrs.lastModifiedTime().toMillis() == lastModified;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void readDirect(FileChannel channel, long length, ByteBuffer buffer, MessageDigest md) throws IOException {
+        long position = 0;
+        while (position < length) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), length - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                // 文件在读取过程中被截断
+                break;
+            }
+            position += read;
+            buffer.flip();
+            md.update(buffer);
+        }
+    }
+
+    /**
+     * 将摘要写入复用的字符数组并转换为十六进制字符串（仅结果字符串产生分配）
      */
-    private String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02x", b));
+    static String toHex(byte[] bytes, char[] out) {
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xff;
+            out[i * 2] = HEX_DIGITS[b >>> 4];
+            out[i * 2 + 1] = HEX_DIGITS[b & 0x0f];
         }
-        return sb.toString();
+        return new String(out, 0, bytes.length * 2);
     }
 }
@@ -0,0 +1,233 @@
+package xyz.ezsky.anilink.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 磁盘感知的哈希计算阶段。
+ *
+ * <p>每个文件系统（{@link FileStore}）对应一条独立的读取通道，通道内的并发读取数按介质区分：
+ * 机械硬盘只允许少量顺序读取，避免寻道抖动；固态硬盘允许更多并发；网络挂载等无法识别介质的使用默认值。
+ * 不同磁盘之间互不阻塞，计算结果通过 {@link CompletableFuture} 交还调用方。</p>
+ *
+ * <p>通道内的等待任务按优先级排序：用户操作与目录监听触发的文件排在批量积压之前，同级按提交顺序执行。</p>
+ *
+ * <p>介质通过 Linux 的 {@code /sys/class/block/<设备>/queue/rotational} 识别，其他平台按默认值处理。</p>
+ */
+@Log4j2
+@Service
+public class MediaHashStage {
+
+    private static final String UNKNOWN_STORE = "unknown";
+
+    /**
+     * 目录到文件系统的缓存上限，超过后整体清空重建
+     */
+    private static final int MAX_CACHED_DIRECTORIES = 10000;
+
+    @Autowired
+    private MediaHashService mediaHashService;
+
+    @Value("${anilink.hash.hdd-readers:1}")
+    private int hddReaders = 1;
+
+    @Value("${anilink.hash.ssd-readers:4}")
+    private int ssdReaders = 4;
+
+    @Value("${anilink.hash.default-readers:2}")
+    private int defaultReaders = 2;
+
+    private final Map<String, ExecutorService> lanes = new ConcurrentHashMap<>();
+    private final Map<Path, String> directoryStores = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger laneCounter = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 读取通道中的等待任务：紧急任务优先，同级按提交顺序
+     */
+    private static final class LaneTask implements Runnable, Comparable<LaneTask> {
+        private final Runnable delegate;
+        private final boolean urgent;
+        private final long sequence;
+
+        private LaneTask(Runnable delegate, boolean urgent, long sequence) {
+            this.delegate = delegate;
+            this.urgent = urgent;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            delegate.run();
+        }
+
+        @Override
+        public int compareTo(LaneTask other) {
+            if (urgent != other.urgent) {
+                return urgent ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lanes.values().forEach(ExecutorService::shutdownNow);
+        lanes.clear();
+    }
+
+    /**
+     * 在文件所在磁盘的读取通道中计算哈希
+     *
+     * @param filePath 文件路径
+     * @return 哈希结果；计算失败时结果为 null
+     */
+    public CompletableFuture<String> submit(Path filePath) {
+        return submit(filePath, false);
+    }
+
+    /**
+     * 在文件所在磁盘的读取通道中计算哈希
+     *
+     * @param filePath 文件路径
+     * @param urgent   是否排在该通道中等待的普通任务之前
+     * @return 哈希结果；计算失败时结果为 null
+     */
+    public CompletableFuture<String> submit(Path filePath, boolean urgent) {
+        pending.incrementAndGet();
+        try {
+            ExecutorService lane = laneFor(filePath);
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return mediaHashService.calculateHash(filePath);
+                } finally {
+                    pending.decrementAndGet();
+                }
+            }, task -> lane.execute(new LaneTask(task, urgent, sequence.incrementAndGet())));
+        } catch (RuntimeException e) {
+            pending.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * 已提交但尚未完成的哈希任务数
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * 当前读取通道数（已访问过的文件系统数）
+     */
+    public int getLaneCount() {
+        return lanes.size();
+    }
+
+    private ExecutorService laneFor(Path filePath) {
+        String store = storeOf(filePath);
+        return lanes.computeIfAbsent(store, this::createLane);
+    }
+
+    private String storeOf(Path filePath) {
+        Path dir = filePath.toAbsolutePath().getParent();
+        if (dir == null) {
+            return UNKNOWN_STORE;
+        }
+        String cached = directoryStores.get(dir);
+        if (cached != null) {
+            return cached;
+        }
+        String store;
+        try {
+            store = Files.getFileStore(dir).toString();
+        } catch (IOException e) {
+            return UNKNOWN_STORE;
+        }
+        if (directoryStores.size() >= MAX_CACHED_DIRECTORIES) {
+            directoryStores.clear();
+        }
+        directoryStores.put(dir, store);
+        return store;
+    }
+
+    private ExecutorService createLane(String store) {
+        int readers = Math.max(1, readersFor(store));
+        int laneId = laneCounter.incrementAndGet();
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(readers, readers, 60, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "media-hash-" + laneId + "-" + threadCounter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        log.info("Created hash lane for file store {} with {} readers", store, readers);
+        return executor;
+    }
+
+    private int readersFor(String store) {
+        if (UNKNOWN_STORE.equals(store)) {
+            return defaultReaders;
+        }
+        Boolean rotational = isRotational(store);
+        if (rotational == null) {
+            return defaultReaders;
+        }
+        return rotational ? hddReaders : ssdReaders;
+    }
+
+    /**
+     * 判断文件系统所在块设备是否为机械硬盘
+     *
+     * @param store {@link FileStore#toString()}，Linux 上形如 {@code /mnt/media (/dev/sdb1)}
+     * @return 无法识别（非 Linux、网络挂载、虚拟文件系统）时返回 null
+     */
+    static Boolean isRotational(String store) {
+        int open = store.lastIndexOf(" (");
+        if (open < 0 || !store.endsWith(")")) {
+            return null;
+        }
+        String device = store.substring(open + 2, store.length() - 1);
+        if (!device.startsWith("/dev/")) {
+            return null;
+        }
+        try {
+            // /dev/mapper/* 等符号链接解析到 /dev/dm-N
+            String block = Paths.get(device).toRealPath().getFileName().toString();
+            Path sys = Paths.get("/sys/class/block", block);
+            if (!Files.exists(sys)) {
+                return null;
+            }
+            // 分区目录下没有 queue，向上查找所属磁盘
+            for (Path dir = sys.toRealPath(); dir != null; dir = dir.getParent()) {
+                Path flag = dir.resolve("queue").resolve("rotational");
+                if (Files.isReadable(flag)) {
+                    return "1".equals(Files.readString(flag).trim());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Could not detect media type of {}: {}", device, e.getMessage());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,222 @@
+package xyz.ezsky.anilink.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import xyz.ezsky.anilink.model.entity.MediaLibrary;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 轮询方式的媒体库变更检测，用于 SMB/NFS 等 {@link java.nio.file.WatchService} 收不到事件的网络挂载。
+ *
+ * <p>每个轮询周期从目录快照（{@link MediaDirectorySnapshotService}）取出已知目录，逐个读取目录修改时间并与快照比对，
+ * 修改时间变化或目录消失即通知调用方对该目录做增量扫描。一个周期内的 stat 调用按刻度均匀分摊到整个周期，
+ * 单个刻度另有上限，避免集中访问 NAS。</p>
+ *
+ * <p>所有轮询中的媒体库共用一个刻度线程；回调在该线程中执行，应尽快返回。</p>
+ */
+@Log4j2
+@Service
+public class MediaLibraryPoller {
+
+    @Autowired
+    private MediaDirectorySnapshotService mediaDirectorySnapshotService;
+
+    @Value("${anilink.watcher.poll-interval-seconds:60}")
+    private int defaultIntervalSeconds = 60;
+
+    @Value("${anilink.watcher.poll-tick-ms:1000}")
+    private long tickMillis = 1000;
+
+    @Value("${anilink.watcher.poll-max-stats-per-tick:200}")
+    private int maxStatsPerTick = 200;
+
+    /**
+     * 轮询检测到的目录变化回调
+     */
+    public interface ChangeHandler {
+
+        /**
+         * 目录内容可能发生变化（修改时间改变或目录已不存在）
+         */
+        void onDirectoryChanged(MediaLibrary library, Path directory);
+    }
+
+    private final class Registration {
+        private final MediaLibrary library;
+        private final ChangeHandler handler;
+        private final long intervalMillis;
+        private List<String> directories = List.of();
+        private Map<String, MediaLibraryWalker.DirectoryState> states = Map.of();
+        private int cursor;
+        private long roundStart;
+        private long nextRoundAt;
+
+        private Registration(MediaLibrary library, ChangeHandler handler, long intervalMillis) {
+            this.library = library;
+            this.handler = handler;
+            this.intervalMillis = intervalMillis;
+        }
+    }
+
+    private final Map<Long, Registration> registrations = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService ticker;
+
+    @PostConstruct
+    public synchronized void start() {
+        if (ticker != null) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "media-library-poller");
+            t.setDaemon(true);
+            return t;
+        });
+        long tick = Math.max(1, tickMillis);
+        ticker.scheduleWithFixedDelay(this::tick, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+        registrations.clear();
+    }
+
+    /**
+     * 开始轮询指定媒体库；若已在轮询中则以新设置重新开始。
+     *
+     * @param library 媒体库（轮询间隔取自 {@link MediaLibrary#getPollIntervalSeconds()}）
+     * @param handler 目录变化回调
+     */
+    public void poll(MediaLibrary library, ChangeHandler handler) {
+        Integer seconds = library.getPollIntervalSeconds();
+        long intervalMillis = TimeUnit.SECONDS.toMillis(seconds != null && seconds > 0 ? seconds : defaultIntervalSeconds);
+        Registration registration = new Registration(library, handler, intervalMillis);
+        // 首轮在一个周期后开始，扫描刚刚结束
+        registration.nextRoundAt = System.currentTimeMillis() + intervalMillis;
+        registrations.put(library.getId(), registration);
+        log.info("Started polling library: {} every {} s", library.getName(), intervalMillis / 1000);
+    }
+
+    /**
+     * 停止轮询指定媒体库。
+     */
+    public void unpoll(Long libraryId) {
+        if (registrations.remove(libraryId) != null) {
+            log.info("Stopped polling library with id: {}", libraryId);
+        }
+    }
+
+    /**
+     * 指定媒体库当前轮询周期覆盖的目录数，未轮询时为 0。
+     */
+    public int getPolledDirectoryCount(Long libraryId) {
+        Registration registration = registrations.get(libraryId);
+        return registration != null ? registration.directories.size() : 0;
+    }
+
+    public boolean isPolling(Long libraryId) {
+        return registrations.containsKey(libraryId);
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        int budget = Math.max(1, maxStatsPerTick);
+        for (Registration registration : registrations.values()) {
+            if (budget <= 0) {
+                break;
+            }
+            try {
+                budget -= advance(registration, now, budget);
+            } catch (Exception e) {
+                log.error("Error polling library: {}", registration.library.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * 推进一个媒体库的轮询进度，返回本刻度消耗的 stat 次数。
+     */
+    private int advance(Registration registration, long now, int budget) {
+        if (registration.cursor >= registration.directories.size()) {
+            if (now < registration.nextRoundAt) {
+                return 0;
+            }
+            startRound(registration, now);
+        }
+
+        // 剩余目录按本周期剩余刻度平均分配
+        int remaining = registration.directories.size() - registration.cursor;
+        long roundEnd = registration.roundStart + registration.intervalMillis;
+        long ticksLeft = Math.max(1, (roundEnd - now) / Math.max(1, tickMillis));
+        int quota = (int) Math.min(budget, Math.max(1, (remaining + ticksLeft - 1) / ticksLeft));
+
+        int checked = 0;
+        while (checked < quota && registration.cursor < registration.directories.size()) {
+            String dir = registration.directories.get(registration.cursor++);
+            checked++;
+            if (hasChanged(Paths.get(dir), registration.states.get(dir))) {
+                registration.handler.onDirectoryChanged(registration.library, Paths.get(dir));
+            }
+        }
+        return checked;
+    }
+
+    private void startRound(Registration registration, long now) {
+        registration.cursor = 0;
+        registration.roundStart = now;
+        registration.nextRoundAt = now + registration.intervalMillis;
+        Path root = Paths.get(registration.library.getPath()).toAbsolutePath();
+        if (!Files.isDirectory(root)) {
+            // 挂载断开时整轮跳过，避免把所有目录都当作已删除
+            log.warn("Polled library path is not available: {}", root);
+            registration.directories = List.of();
+            return;
+        }
+
+        Map<String, MediaLibraryWalker.DirectoryState> states =
+                mediaDirectorySnapshotService.toStates(mediaDirectorySnapshotService.load(registration.library.getId()));
+        List<String> directories = new ArrayList<>(states.keySet());
+        if (directories.isEmpty()) {
+            // 尚无快照（如首次扫描失败），检查根目录以便在其出现内容时触发扫描
+            directories.add(root.toString());
+            states = new HashMap<>();
+        }
+        directories.sort(null);
+        registration.directories = directories;
+        registration.states = states;
+    }
+
+    private boolean hasChanged(Path dir, MediaLibraryWalker.DirectoryState state) {
+        try {
+            long lastModified = Files.getLastModifiedTime(dir).toMillis();
+            return !MediaLibraryWalker.isUnchanged(state, lastModified);
+        } catch (NoSuchFileException e) {
+            return true;
+        } catch (IOException e) {
+            // 网络挂载暂时不可用时不触发扫描，下个周期再试
+            log.warn("Could not stat polled directory {}: {}", dir, e.getMessage());
+            return false;
+        }
+    }
+}
@@ -39,6 +39,18 @@ public class MediaLibraryService {
     @Autowired
     private MediaFileRepository mediaFileRepository;
 
+    @Autowired
+    private MediaDirectorySnapshotService mediaDirectorySnapshotService;
+
+    @Autowired
+    private MediaPathIndex mediaPathIndex;
+
+    @Autowired
+    private MediaLibraryWatcher mediaLibraryWatcher;
+
+    @Autowired
+    private MediaLibraryPoller mediaLibraryPoller;
+
     @Autowired
     private AnimeRepository animeRepository;
 
@@ -62,6 +74,9 @@ public class MediaLibraryService {
     public MediaLibraryVO addLibrary(MediaLibraryDTO mediaLibraryDTO, boolean autoScan) {
         MediaLibrary mediaLibrary = new MediaLibrary();
         BeanUtils.copyProperties(mediaLibraryDTO, mediaLibrary);
+        if (mediaLibrary.getWatchMode() == null) {
+            mediaLibrary.setWatchMode(MediaLibrary.WatchMode.NATIVE);
+        }
         MediaLibrary savedLibrary = mediaLibraryRepository.save(mediaLibrary);
         // 只在自动扫描标记为 true 时才触发扫描
         if (autoScan) {
@@ -71,6 +86,8 @@ public class MediaLibraryService {
         BeanUtils.copyProperties(savedLibrary, mediaLibraryVO);
         // 将 Long ID 转换为 String
         mediaLibraryVO.setId(savedLibrary.getId().toString());
+        mediaLibraryVO.setWatchedDirectories(getWatchedDirectoryCount(savedLibrary.getId()));
+        mediaLibraryVO.setWatchOverflowCount(mediaLibraryWatcher.getOverflowCount(savedLibrary.getId()));
         return mediaLibraryVO;
     }
 
@@ -85,10 +102,54 @@ public class MediaLibraryService {
             BeanUtils.copyProperties(mediaLibrary, mediaLibraryVO);
             // 将 Long ID 转换为 String
             mediaLibraryVO.setId(mediaLibrary.getId().toString());
+            mediaLibraryVO.setWatchedDirectories(getWatchedDirectoryCount(mediaLibrary.getId()));
+            mediaLibraryVO.setWatchOverflowCount(mediaLibraryWatcher.getOverflowCount(mediaLibrary.getId()));
             return mediaLibraryVO;
         }).collect(Collectors.toList());
     }
 
+    /**
+     * 更新媒体库的扫描相关设置，仅覆盖请求中非空的字段。
+     *
+     * @param id              媒体库的数据库 ID
+     * @param mediaLibraryDTO 包含新设置的数据传输对象
+     * @return 更新后的媒体库视图对象
+     */
+    public MediaLibraryVO updateLibrarySettings(Long id, MediaLibraryDTO mediaLibraryDTO) {
+        MediaLibrary mediaLibrary = mediaLibraryRepository.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("媒体库不存在"));
+        if (mediaLibraryDTO.getScanParallelism() != null) {
+            mediaLibrary.setScanParallelism(mediaLibraryDTO.getScanParallelism());
+        }
+        boolean watchChanged = false;
+        if (mediaLibraryDTO.getWatchMode() != null && mediaLibraryDTO.getWatchMode() != mediaLibrary.getWatchMode()) {
+            mediaLibrary.setWatchMode(mediaLibraryDTO.getWatchMode());
+            watchChanged = true;
+        }
+        if (mediaLibraryDTO.getPollIntervalSeconds() != null
+                && !mediaLibraryDTO.getPollIntervalSeconds().equals(mediaLibrary.getPollIntervalSeconds())) {
+            mediaLibrary.setPollIntervalSeconds(mediaLibraryDTO.getPollIntervalSeconds());
+            watchChanged = true;
+        }
+        MediaLibrary savedLibrary = mediaLibraryRepository.save(mediaLibrary);
+        if (watchChanged) {
+            // 切换检测方式：先停止旧的监听/轮询，增量扫描补齐期间的变化后按新方式重新开始
+            mediaScannerService.stopWatching(savedLibrary.getId());
+            mediaScannerService.scanLibraryAsync(savedLibrary, false);
+        }
+        MediaLibraryVO mediaLibraryVO = new MediaLibraryVO();
+        BeanUtils.copyProperties(savedLibrary, mediaLibraryVO);
+        mediaLibraryVO.setId(savedLibrary.getId().toString());
+        return mediaLibraryVO;
+    }
+
+    /**
+     * 媒体库当前监听（NATIVE）或轮询（POLLING）的目录数。
+     */
+    private int getWatchedDirectoryCount(Long libraryId) {
+        return mediaLibraryWatcher.getWatchedDirectoryCount(libraryId) + mediaLibraryPoller.getPolledDirectoryCount(libraryId);
+    }
+
     /**
      * 删除指定 ID 的媒体库并停止对该库的文件系统监控（如有）。
      *
@@ -110,8 +171,10 @@ public class MediaLibraryService {
             mediaSubtitleService.cleanupByMediaFileId(mediaFile.getId());
         }
 
-        // 删除媒体文件数据库记录
+        // 删除媒体文件数据库记录及目录快照
         mediaFileRepository.deleteByLibraryId(id);
+        mediaDirectorySnapshotService.clear(id);
+        mediaPathIndex.evict(id);
 
         // 删除已无任何剧集文件关联的 anime 记录
         Set<Long> orphanAnimeIds = affectedAnimeIds.stream()
@@ -128,7 +191,8 @@ public class MediaLibraryService {
      * 对指定 ID 的媒体库触发一次扫描操作。
      *
      * <p>如果指定 ID 的媒体库存在，则将扫描任务委托给 {@link MediaScannerService}。
-     * 该调用为异步（由 {@code MediaScannerService} 在后台线程执行），不会阻塞调用者。</p>
+     * 该调用为异步（由 {@code MediaScannerService} 在后台线程执行），不会阻塞调用者。
+     * 手动触发的扫描为完整扫描，不使用目录快照跳过任何目录。</p>
      *
      * @param id 媒体库的数据库 ID
      */
@@ -0,0 +1,281 @@
+package xyz.ezsky.anilink.service;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+
+/**
+ * 媒体库目录遍历器。
+ *
+ * <p>目录树被拆分为 fork-join 子任务，在有界的 {@link ForkJoinPool} 中列目录、读取文件属性；
+ * 并行度为 1 时同一套目录任务直接在调用线程中逐个执行，不创建线程池。
+ * 输出的文件与目录均按绝对路径排序，保证后续新增/更新/删除逻辑拿到的结果与并行度无关。</p>
+ *
+ * <p>增量模式：调用方传入上一次扫描的目录快照，目录自身修改时间未变化（且不处于时间戳精度窗口内）时
+ * 不再列出其内容，只沿快照中已知的子目录继续下探。目录的修改时间只在直接条目增删/重命名时变化，
+ * 因此深层变化仍能被找到，而未变化的子树只需对每个目录做一次 stat。</p>
+ */
+@Log4j2
+@Service
+public class MediaLibraryWalker {
+
+    /**
+     * 目录修改时间与快照时间的最小间隔。部分文件系统的时间戳精度为 2 秒（如 FAT），
+     * 快照时刻距目录修改时间过近时无法排除同一精度内的后续修改，需要重新列目录。
+     */
+    private static final long RACY_WINDOW_MS = 2000;
+
+    @Value("${anilink.scanner.default-parallelism:1}")
+    private int defaultParallelism;
+
+    @Value("${anilink.scanner.max-parallelism:16}")
+    private int maxParallelism;
+
+    /**
+     * 遍历结果中的单个文件。
+     *
+     * @param path  文件绝对路径
+     * @param attrs 遍历时读取到的文件属性
+     */
+    public record ScannedFile(Path path, BasicFileAttributes attrs) {
+    }
+
+    /**
+     * 上一次扫描记录的目录状态。
+     *
+     * @param lastModified 目录修改时间（毫秒）
+     * @param childCount   直接子项数量
+     * @param scannedAt    上次列出目录内容的时间（毫秒）
+     */
+    public record DirectoryState(long lastModified, int childCount, long scannedAt) {
+    }
+
+    /**
+     * 本次遍历访问到的目录。
+     *
+     * @param path         目录绝对路径
+     * @param lastModified 本次读取到的目录修改时间（毫秒）
+     * @param childCount   直接子项数量（未列目录时沿用快照中的值）
+     * @param listed       本次是否列出了目录内容；为 false 时该目录下的文件未出现在结果中
+     */
+    public record VisitedDirectory(String path, long lastModified, int childCount, boolean listed) {
+    }
+
+    /**
+     * 遍历结果。
+     *
+     * @param files       列出内容的目录中满足过滤条件的文件，按路径排序
+     * @param directories 本次访问到的全部目录
+     */
+    public record WalkResult(List<ScannedFile> files, List<VisitedDirectory> directories) {
+    }
+
+    /**
+     * 根据媒体库配置解析实际使用的并行度（未配置时使用全局默认值，并受最大值约束）。
+     *
+     * @param configured 媒体库上配置的并行度，可为 null
+     * @return 实际并行度，1 表示顺序遍历
+     */
+    public int resolveParallelism(Integer configured) {
+        int desired = configured != null && configured > 0 ? configured : defaultParallelism;
+        return Math.max(1, Math.min(desired, Math.max(1, maxParallelism)));
+    }
+
+    /**
+     * 完整遍历目录树并收集满足过滤条件的文件。
+     *
+     * @param root        遍历根目录
+     * @param parallelism 并行度，小于等于 1 时使用单线程遍历
+     * @param filter      文件过滤条件
+     * @return 按路径排序的文件列表
+     * @throws IOException 列目录或读取属性失败
+     */
+    public List<ScannedFile> walk(Path root, int parallelism, Predicate<Path> filter) throws IOException {
+        return walk(root, parallelism, filter, Map.of()).files();
+    }
+
+    /**
+     * 基于上一次的目录快照增量遍历目录树。
+     *
+     * @param root        遍历根目录
+     * @param parallelism 并行度，小于等于 1 时在调用线程中遍历
+     * @param filter      文件过滤条件
+     * @param previous    上一次扫描的目录快照（目录绝对路径 -> 状态），为空时等同于完整遍历
+     * @return 遍历结果
+     * @throws IOException 列目录或读取属性失败
+     */
+    public WalkResult walk(Path root, int parallelism, Predicate<Path> filter,
+                           Map<String, DirectoryState> previous) throws IOException {
+        boolean parallel = parallelism > 1;
+        WalkContext context = new WalkContext(filter, previous, indexSubdirectories(previous), parallel);
+        DirectoryTask rootTask = new DirectoryTask(root.toAbsolutePath(), context, true);
+        ForkJoinPool pool = parallel ? new ForkJoinPool(parallelism) : null;
+        try {
+            Collected collected = parallel ? pool.invoke(rootTask) : rootTask.compute();
+            collected.files.sort(Comparator.comparing(file -> file.path().toString()));
+            collected.directories.sort(Comparator.comparing(VisitedDirectory::path));
+            return new WalkResult(collected.files, collected.directories);
+        } catch (UncheckedIOException e) {
+            // ForkJoinPool 可能对跨线程异常做包装，这里取出最初的 IOException 抛出
+            Throwable cause = e;
+            while (cause != null && !(cause instanceof IOException)) {
+                cause = cause.getCause();
+            }
+            throw cause != null ? (IOException) cause : new IOException(e);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * 按父目录归类快照中的目录，供跳过列目录时沿已知子目录下探。
+     */
+    private static Map<String, List<Path>> indexSubdirectories(Map<String, DirectoryState> previous) {
+        Map<String, List<Path>> subdirectories = new HashMap<>();
+        for (String dir : previous.keySet()) {
+            Path path = Paths.get(dir);
+            Path parent = path.getParent();
+            if (parent != null) {
+                subdirectories.computeIfAbsent(parent.toString(), key -> new ArrayList<>()).add(path);
+            }
+        }
+        return subdirectories;
+    }
+
+    /**
+     * 目录自上次列出后是否未变化：修改时间一致，且上次列出时已超出修改时间精度的竞争窗口。
+     */
+    static boolean isUnchanged(DirectoryState previous, long lastModified) {
+        return previous != null
+                && previous.lastModified() == lastModified
+                && previous.scannedAt() - lastModified > RACY_WINDOW_MS;
+    }
+
+    /**
+     * @param parallel 子目录任务是否 fork 到线程池；为 false 时在当前线程中依次执行
+     */
+    private record WalkContext(Predicate<Path> filter,
+                               Map<String, DirectoryState> previous,
+                               Map<String, List<Path>> knownSubdirectories,
+                               boolean parallel) {
+    }
+
+    private static final class Collected {
+        private final List<ScannedFile> files = new ArrayList<>();
+        private final List<VisitedDirectory> directories = new ArrayList<>();
+
+        private void merge(Collected other) {
+            files.addAll(other.files);
+            directories.addAll(other.directories);
+        }
+    }
+
+    /**
+     * 单个目录的遍历任务：当前目录下的文件在本任务内处理，子目录拆分为新的子任务并发执行。
+     *
+     * <p>与 {@link Files#walkFileTree} 默认行为保持一致：不跟随目录树内部的符号链接。</p>
+     */
+    private static final class DirectoryTask extends RecursiveTask<Collected> {
+
+        private final Path directory;
+        private final WalkContext context;
+        private final boolean root;
+
+        private DirectoryTask(Path directory, WalkContext context, boolean root) {
+            this.directory = directory;
+            this.context = context;
+            this.root = root;
+        }
+
+        @Override
+        protected Collected compute() {
+            Collected collected = new Collected();
+            List<DirectoryTask> subTasks = new ArrayList<>();
+            String key = directory.toString();
+
+            try {
+                BasicFileAttributes dirAttrs;
+                try {
+                    dirAttrs = root
+                            ? Files.readAttributes(directory, BasicFileAttributes.class)
+                            : Files.readAttributes(directory, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (NoSuchFileException e) {
+                    if (root) {
+                        throw e;
+                    }
+                    // 快照中记录的子目录已被删除
+                    return collected;
+                }
+                if (!dirAttrs.isDirectory()) {
+                    return collected;
+                }
+
+                long lastModified = dirAttrs.lastModifiedTime().toMillis();
+                DirectoryState previous = context.previous().get(key);
+                if (isUnchanged(previous, lastModified)) {
+                    collected.directories.add(new VisitedDirectory(key, lastModified, previous.childCount(), false));
+                    for (Path subdirectory : context.knownSubdirectories().getOrDefault(key, List.of())) {
+                        subTasks.add(schedule(new DirectoryTask(subdirectory, context, false)));
+                    }
+                } else {
+                    int childCount = 0;
+                    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                        for (Path entry : stream) {
+                            childCount++;
+                            BasicFileAttributes attrs;
+                            try {
+                                attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                            } catch (NoSuchFileException e) {
+                                // 列目录与读取属性之间条目被删除
+                                continue;
+                            }
+                            if (attrs.isDirectory()) {
+                                subTasks.add(schedule(new DirectoryTask(entry, context, false)));
+                            } else if (context.filter().test(entry)) {
+                                collected.files.add(new ScannedFile(entry, attrs));
+                            }
+                        }
+                    }
+                    collected.directories.add(new VisitedDirectory(key, lastModified, childCount, true));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            for (DirectoryTask task : subTasks) {
+                collected.merge(context.parallel() ? task.join() : task.compute());
+            }
+            return collected;
+        }
+
+        /**
+         * 并行时提交子任务；顺序执行时留到当前目录列完后再依次执行，不占用公共线程池
+         */
+        private DirectoryTask schedule(DirectoryTask task) {
+            if (context.parallel()) {
+                task.fork();
+            }
+            return task;
+        }
+    }
+}
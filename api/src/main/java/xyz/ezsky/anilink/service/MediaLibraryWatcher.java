@@ -0,0 +1,420 @@
+package xyz.ezsky.anilink.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import xyz.ezsky.anilink.model.entity.MediaLibrary;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 媒体库文件系统监听器。
+ *
+ * <p>所有媒体库的目录注册到同一个 {@link WatchService}，由一个专用的事件循环线程阻塞等待事件，
+ * 不再占用扫描线程池。事件按媒体库放入各自的串行队列，再由小型工作线程池执行：
+ * 同一媒体库内的事件保持先后顺序，不同媒体库之间互不阻塞。</p>
+ *
+ * <p>新建目录由事件循环线程直接注册监听；目录被删除或移出时，立即注销其整棵子树的监听（移出媒体库的目录
+ * 在 Linux 上仍然有效，不能等 {@link WatchKey#reset()} 失败），再按目录事件通知调用方。
+ * 事件队列溢出（{@link StandardWatchEventKinds#OVERFLOW}）按媒体库计数，并回调给调用方做补偿扫描。</p>
+ */
+@Log4j2
+@Service
+public class MediaLibraryWatcher {
+
+    /**
+     * 单个媒体库队列每轮最多连续执行的任务数，超过后让出工作线程给其他媒体库
+     */
+    private static final int MAX_TASKS_PER_TURN = 64;
+
+    @Value("${anilink.watcher.worker-threads:2}")
+    private int workerThreads = 2;
+
+    /**
+     * 媒体库监听事件回调，在工作线程中执行。
+     */
+    public interface EventHandler {
+
+        /**
+         * 文件新增或修改（不含目录）
+         */
+        void onFileChanged(MediaLibrary library, Path file);
+
+        /**
+         * 文件或目录被删除
+         */
+        void onFileDeleted(MediaLibrary library, Path file);
+
+        /**
+         * 新目录出现（新建或移入），其中已有的文件不会再产生单独的事件
+         */
+        void onDirectoryCreated(MediaLibrary library, Path directory);
+
+        /**
+         * 已监听的目录被删除或移出，其下的监听已注销
+         */
+        void onDirectoryDeleted(MediaLibrary library, Path directory);
+
+        /**
+         * 监听目录的事件队列溢出，期间的变更已丢失，需要重新扫描该目录
+         */
+        void onOverflow(MediaLibrary library, Path directory);
+    }
+
+    private final Map<Long, Registration> registrations = new ConcurrentHashMap<>();
+    private final Map<WatchKey, List<WatchedDirectory>> watchedDirectories = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicLong> overflowCounts = new ConcurrentHashMap<>();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private WatchService watchService;
+    private Thread eventLoop;
+    private ExecutorService workers;
+
+    private record WatchedDirectory(Registration registration, Path directory) {
+    }
+
+    private final class Registration {
+        private final MediaLibrary library;
+        private final EventHandler handler;
+        private final Set<WatchKey> keys = ConcurrentHashMap.newKeySet();
+        private final Map<Path, WatchKey> directories = new ConcurrentHashMap<>();
+        private final SerialQueue queue = new SerialQueue();
+
+        private Registration(MediaLibrary library, EventHandler handler) {
+            this.library = library;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * 单个媒体库的串行任务队列：任一时刻最多占用一个工作线程。
+     */
+    private final class SerialQueue implements Runnable {
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        private void submit(Runnable task) {
+            tasks.add(task);
+            scheduleIfIdle();
+        }
+
+        private void scheduleIfIdle() {
+            if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+                workers.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Runnable task;
+                int executed = 0;
+                while (executed < MAX_TASKS_PER_TURN && (task = tasks.poll()) != null) {
+                    executed++;
+                    try {
+                        task.run();
+                    } catch (Exception e) {
+                        log.error("Error handling watch event", e);
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                scheduleIfIdle();
+            }
+        }
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            running.set(false);
+            throw new IllegalStateException("Could not create watch service", e);
+        }
+
+        AtomicInteger workerCount = new AtomicInteger(0);
+        ThreadFactory workerFactory = r -> {
+            Thread t = new Thread(r);
+            t.setName("media-watch-worker-" + workerCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        workers = Executors.newFixedThreadPool(Math.max(1, workerThreads), workerFactory);
+
+        eventLoop = new Thread(this::runEventLoop, "media-library-watcher");
+        eventLoop.setDaemon(true);
+        eventLoop.start();
+        log.info("Media library watcher started with {} worker threads", Math.max(1, workerThreads));
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (!running.compareAndSet(true, false)) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.warn("Error closing watch service", e);
+        }
+        eventLoop.interrupt();
+        workers.shutdownNow();
+        registrations.clear();
+        watchedDirectories.clear();
+        overflowCounts.clear();
+    }
+
+    /**
+     * 开始监听指定媒体库的整棵目录树；若该媒体库已在监听中，先释放旧的注册。
+     *
+     * @param library 媒体库
+     * @param handler 事件回调
+     */
+    public void watch(MediaLibrary library, EventHandler handler) {
+        unwatch(library.getId());
+        Registration registration = new Registration(library, handler);
+        registrations.put(library.getId(), registration);
+        try {
+            registerTree(registration, Paths.get(library.getPath()).toAbsolutePath());
+            log.info("Started watching library: {} ({} directories)", library.getName(), registration.keys.size());
+        } catch (IOException e) {
+            log.error("Could not start watching library: " + library.getName(), e);
+        }
+    }
+
+    /**
+     * 停止监听指定媒体库。
+     *
+     * @param libraryId 媒体库 ID
+     */
+    public void unwatch(Long libraryId) {
+        Registration registration = registrations.remove(libraryId);
+        if (registration == null) {
+            return;
+        }
+        for (WatchKey key : registration.keys) {
+            releaseKey(key, registration);
+        }
+        registration.keys.clear();
+        registration.directories.clear();
+        log.info("Stopped watching library with id: {}", libraryId);
+    }
+
+    /**
+     * 为已在监听中的媒体库补充注册一棵子树（已注册的目录不会重复计数），
+     * 用于溢出补偿扫描后补上丢失了 CREATE 事件的新目录。
+     *
+     * @param libraryId 媒体库 ID
+     * @param root      子树根目录
+     */
+    public void registerSubtree(Long libraryId, Path root) {
+        Registration registration = registrations.get(libraryId);
+        if (registration == null) {
+            return;
+        }
+        try {
+            registerTree(registration, root.toAbsolutePath());
+        } catch (IOException e) {
+            log.error("Error registering watched directory for library: {}", registration.library.getName(), e);
+        }
+    }
+
+    /**
+     * 各媒体库累计收到的事件溢出次数。
+     *
+     * @return 媒体库 ID -> 溢出次数
+     */
+    public Map<Long, Long> getOverflowCounts() {
+        Map<Long, Long> counts = new HashMap<>();
+        overflowCounts.forEach((libraryId, count) -> counts.put(libraryId, count.get()));
+        return counts;
+    }
+
+    /**
+     * 指定媒体库累计收到的事件溢出次数。
+     */
+    public long getOverflowCount(Long libraryId) {
+        AtomicLong count = overflowCounts.get(libraryId);
+        return count != null ? count.get() : 0;
+    }
+
+    /**
+     * 各媒体库当前监听的目录数。
+     *
+     * @return 媒体库 ID -> 目录数
+     */
+    public Map<Long, Integer> getWatchedDirectoryCounts() {
+        Map<Long, Integer> counts = new HashMap<>();
+        registrations.forEach((libraryId, registration) -> counts.put(libraryId, registration.keys.size()));
+        return counts;
+    }
+
+    /**
+     * 指定媒体库当前监听的目录数，未监听时返回 0。
+     */
+    public int getWatchedDirectoryCount(Long libraryId) {
+        Registration registration = registrations.get(libraryId);
+        return registration != null ? registration.keys.size() : 0;
+    }
+
+    private void runEventLoop() {
+        try {
+            while (running.get()) {
+                WatchKey key = watchService.take();
+                List<WatchEvent<?>> events = key.pollEvents();
+                boolean valid = key.reset();
+
+                List<WatchedDirectory> targets = watchedDirectories.get(key);
+                if (targets != null) {
+                    for (WatchedDirectory target : targets) {
+                        for (WatchEvent<?> event : events) {
+                            dispatch(target, event);
+                        }
+                    }
+                }
+
+                if (!valid) {
+                    List<WatchedDirectory> removed = watchedDirectories.remove(key);
+                    if (removed != null) {
+                        for (WatchedDirectory target : removed) {
+                            target.registration().keys.remove(key);
+                            target.registration().directories.remove(target.directory(), key);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("Media library watcher interrupted");
+        } catch (ClosedWatchServiceException e) {
+            log.info("Media library watcher closed");
+        }
+    }
+
+    private void dispatch(WatchedDirectory target, WatchEvent<?> event) {
+        Registration registration = target.registration();
+        if (registrations.get(registration.library.getId()) != registration) {
+            // 媒体库已停止监听或重新注册，丢弃旧注册的事件
+            return;
+        }
+
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            overflowCounts.computeIfAbsent(registration.library.getId(), id -> new AtomicLong()).incrementAndGet();
+            Path directory = target.directory();
+            registration.queue.submit(() -> registration.handler.onOverflow(registration.library, directory));
+            return;
+        }
+
+        Path fullPath = target.directory().resolve((Path) event.context());
+        if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+            if (registration.directories.containsKey(fullPath)) {
+                releaseTree(registration, fullPath);
+                registration.queue.submit(() -> registration.handler.onDirectoryDeleted(registration.library, fullPath));
+            } else {
+                registration.queue.submit(() -> registration.handler.onFileDeleted(registration.library, fullPath));
+            }
+            return;
+        }
+
+        if (Files.isDirectory(fullPath)) {
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                try {
+                    registerTree(registration, fullPath);
+                } catch (IOException e) {
+                    log.error("Error registering watched directory for library: {}", registration.library.getName(), e);
+                }
+                registration.queue.submit(() -> registration.handler.onDirectoryCreated(registration.library, fullPath));
+            }
+            return;
+        }
+        registration.queue.submit(() -> registration.handler.onFileChanged(registration.library, fullPath));
+    }
+
+    private void registerTree(Registration registration, Path root) throws IOException {
+        if (!Files.exists(root) || !Files.isDirectory(root)) {
+            return;
+        }
+
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(
+                        watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY
+                );
+                // 同一目录被多个（嵌套的）媒体库监听时会得到同一个 WatchKey
+                if (registration.keys.add(key)) {
+                    watchedDirectories.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>())
+                            .add(new WatchedDirectory(registration, dir));
+                }
+                registration.directories.put(dir, key);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * 注销某个目录及其所有子目录的监听。
+     */
+    private void releaseTree(Registration registration, Path root) {
+        List<Path> released = new ArrayList<>();
+        registration.directories.forEach((dir, key) -> {
+            if (dir.startsWith(root)) {
+                released.add(dir);
+            }
+        });
+        for (Path dir : released) {
+            WatchKey key = registration.directories.remove(dir);
+            if (key != null && registration.keys.remove(key)) {
+                releaseKey(key, registration);
+            }
+        }
+        log.debug("Released {} watched directories under {}", released.size(), root);
+    }
+
+    private void releaseKey(WatchKey key, Registration registration) {
+        watchedDirectories.computeIfPresent(key, (k, targets) -> {
+            targets.removeIf(target -> target.registration() == registration);
+            if (targets.isEmpty()) {
+                k.cancel();
+                return null;
+            }
+            return targets;
+        });
+    }
+}
@@ -37,6 +37,12 @@ public class MediaMatchBatchService {
 
     @Autowired
     private MediaHashService mediaHashService;
+
+    @Autowired
+    private MediaDuplicateIndex mediaDuplicateIndex;
+
+    @Autowired
+    private MediaMatchCacheService mediaMatchCacheService;
     
     @Autowired
     private xyz.ezsky.anilink.service.notification.EpisodeUpdateNotificationService episodeUpdateNotificationService;
@@ -122,6 +128,7 @@ public class MediaMatchBatchService {
                     if (hash != null) {
                         mediaFile.setHash(hash);
                         mediaFileRepository.save(mediaFile);
+                        mediaDuplicateIndex.onHashWritten(hash, mediaFile.getSize());
                         log.debug("Recalculated hash for file: {}", mediaFile.getFilePath());
                     }
                 } catch (Exception e) {
@@ -145,7 +152,14 @@ public class MediaMatchBatchService {
         }
 
         // 调用批量匹配接口
-        List<MatchResult> matchResults = dandanMatchService.batchMatch(fileInfos);
+        DandanMatchService.BatchMatchOutcome outcome = dandanMatchService.batchMatchWithStatus(fileInfos);
+        if (outcome.isRetryable()) {
+            // 接口暂时性故障不代表未匹配，保留原状态，待匹配的文件由匹配队列按退避计划重试
+            log.warn("Dandan batch match failed (status {}), skipping batch of {} files",
+                    outcome.statusCode(), batch.size());
+            return;
+        }
+        List<MatchResult> matchResults = outcome.results();
 
         // 更新匹配结果
         for (int i = 0; i < matchResults.size() && i < batch.size(); i++) {
@@ -160,6 +174,9 @@ public class MediaMatchBatchService {
                     mediaFile.setAnimeId(result.getAnimeId());
                     mediaFile.setAnimeTitle(result.getAnimeTitle());
                     mediaFile.setEpisodeTitle(result.getEpisodeTitle());
+                    mediaFile.setMatchAttempts(0);
+                    mediaFile.setNextMatchAttemptAt(null);
+                    mediaMatchCacheService.store(mediaFile.getHash(), mediaFile.getSize(), result);
                     log.debug("Matched file {} -> episodeId: {}", mediaFile.getFilePath(), result.getEpisodeId());
                     
                     // 保存到数据库
@@ -174,6 +191,8 @@ public class MediaMatchBatchService {
                 } else {
                     // 匹配失败
                     mediaFile.setMatchStatus(MatchStatus.NO_MATCH_FOUND);
+                    mediaFile.setMatchAttempts(0);
+                    mediaFile.setNextMatchAttemptAt(null);
                     log.debug("No match found for file: {}", mediaFile.getFilePath());
                     mediaFileRepository.save(mediaFile);
                 }
@@ -0,0 +1,199 @@
+package xyz.ezsky.anilink.service;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import xyz.ezsky.anilink.model.dto.MatchResult;
+import xyz.ezsky.anilink.model.entity.MediaFile;
+import xyz.ezsky.anilink.model.entity.MediaMatchCache;
+import xyz.ezsky.anilink.repository.MediaMatchCacheRepository;
+import xyz.ezsky.anilink.repository.base.LruCacheRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 匹配结果缓存服务。
+ *
+ * <p>以 (文件哈希, 文件大小) 为键保存弹弹返回的成功匹配结果。哈希由文件内容决定，
+ * 同一内容的文件无论路径、媒体库或是否曾被删除，都直接复用已知结果，只有未命中的文件才发往匹配接口。
+ * 只缓存成功结果：未匹配的内容可能在弹弹补充条目后能够匹配，每次仍需请求。
+ * 没有哈希（仅按文件名匹配）的文件不参与缓存。</p>
+ *
+ * <p>匹配队列对每个批次只做一次 {@link #lookupAll} 批量查询，命中的文件不再占用接口请求；
+ * 用户手工改绑说明该内容的自动匹配结果不可信，对应条目随之删除，之后同一内容的文件重新走匹配接口。
+ * 条目数上限与淘汰由 {@link LruCacheSupport} 负责。</p>
+ */
+@Log4j2
+@Service
+public class MediaMatchCacheService extends LruCacheSupport {
+
+    @Autowired
+    private MediaMatchCacheRepository mediaMatchCacheRepository;
+
+    @Value("${anilink.match.cache-enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${anilink.match.cache-max-entries:200000}")
+    private long maxEntries = 200000;
+
+    @Value("${anilink.match.cache-touch-interval-minutes:60}")
+    private long touchIntervalMinutes = 60;
+
+    public MediaMatchCacheService() {
+        super("match cache");
+    }
+
+    @Override
+    protected LruCacheRepository<?> cacheRepository() {
+        return mediaMatchCacheRepository;
+    }
+
+    /**
+     * 查找单个文件的缓存匹配结果
+     *
+     * @param hash 文件哈希，为空时不查找
+     * @param size 文件大小
+     * @return 缓存的匹配结果；未命中时返回 null
+     */
+    public MatchResult lookup(String hash, Long size) {
+        if (!enabled || hash == null || hash.isEmpty() || size == null) {
+            return null;
+        }
+        try {
+            MediaMatchCache cached = mediaMatchCacheRepository.findByHashAndSize(hash, size).orElse(null);
+            if (cached == null) {
+                recordMisses(1);
+                return null;
+            }
+            recordHits(1);
+            touchIfStale(List.of(cached));
+            return toResult(cached);
+        } catch (Exception e) {
+            log.warn("Match cache lookup failed for {}: {}", hash, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 用一条查询查找一批文件的缓存匹配结果
+     *
+     * @param files 待匹配的文件，没有哈希的文件跳过
+     * @return 文件 ID 到缓存匹配结果的映射，只包含命中的文件
+     */
+    public Map<Long, MatchResult> lookupAll(List<MediaFile> files) {
+        Map<Long, MatchResult> found = new HashMap<>();
+        if (!enabled) {
+            return found;
+        }
+        List<MediaFile> candidates = files.stream()
+                .filter(file -> file.getHash() != null && !file.getHash().isEmpty() && file.getSize() != null)
+                .toList();
+        if (candidates.isEmpty()) {
+            return found;
+        }
+        try {
+            Map<String, MediaMatchCache> byKey = new HashMap<>();
+            for (MediaMatchCache cached : mediaMatchCacheRepository.findByHashIn(
+                    candidates.stream().map(MediaFile::getHash).distinct().toList())) {
+                byKey.put(keyOf(cached.getHash(), cached.getSize()), cached);
+            }
+            List<MediaMatchCache> used = new ArrayList<>();
+            for (MediaFile file : candidates) {
+                MediaMatchCache cached = byKey.get(keyOf(file.getHash(), file.getSize()));
+                if (cached != null) {
+                    found.put(file.getId(), toResult(cached));
+                    used.add(cached);
+                }
+            }
+            recordHits(found.size());
+            recordMisses(candidates.size() - found.size());
+            touchIfStale(used);
+        } catch (Exception e) {
+            log.warn("Match cache lookup failed for {} files: {}", candidates.size(), e.getMessage());
+        }
+        return found;
+    }
+
+    /**
+     * 保存成功的匹配结果，已有条目时覆盖
+     *
+     * @param hash   文件哈希，为空时不保存
+     * @param size   文件大小
+     * @param result 匹配结果，未成功或缺少剧集编号时不保存
+     */
+    public void store(String hash, Long size, MatchResult result) {
+        if (!enabled || hash == null || hash.isEmpty() || size == null || result == null
+                || !Boolean.TRUE.equals(result.getSuccess())
+                || result.getEpisodeId() == null || result.getEpisodeId().isBlank()) {
+            return;
+        }
+        try {
+            MediaMatchCache entry = mediaMatchCacheRepository.findByHashAndSize(hash, size).orElseGet(MediaMatchCache::new);
+            entry.setHash(hash);
+            entry.setSize(size);
+            entry.setEpisodeId(result.getEpisodeId());
+            entry.setAnimeId(result.getAnimeId());
+            entry.setAnimeTitle(result.getAnimeTitle());
+            entry.setEpisodeTitle(result.getEpisodeTitle());
+            entry.setLastUsedAt(System.currentTimeMillis());
+            mediaMatchCacheRepository.save(entry);
+        } catch (DataIntegrityViolationException e) {
+            // 同一内容的多个副本在不同批次中并发匹配，已有条目即可
+            log.debug("Match cache entry already exists for {}", hash);
+        } catch (Exception e) {
+            log.warn("Failed to store match cache entry for {}: {}", hash, e.getMessage());
+        }
+    }
+
+    /**
+     * 删除缓存的匹配结果，用于该内容被手工改绑时
+     *
+     * @param hash 文件哈希
+     * @param size 文件大小
+     */
+    public void evict(String hash, Long size) {
+        if (!enabled || hash == null || hash.isEmpty() || size == null) {
+            return;
+        }
+        try {
+            mediaMatchCacheRepository.deleteByHashAndSize(hash, size);
+        } catch (Exception e) {
+            log.warn("Failed to evict match cache entry for {}: {}", hash, e.getMessage());
+        }
+    }
+
+    /**
+     * 按最近使用时间淘汰超出上限的条目
+     */
+    @Scheduled(fixedDelayString = "${anilink.match.cache-trim-interval-ms:600000}")
+    public void trim() {
+        if (enabled) {
+            trimToCapacity(maxEntries);
+        }
+    }
+
+    private void touchIfStale(List<MediaMatchCache> used) {
+        touchIfStale(used, MediaMatchCache::getId, MediaMatchCache::getLastUsedAt, touchIntervalMinutes);
+    }
+
+    private static MatchResult toResult(MediaMatchCache cached) {
+        MatchResult result = new MatchResult();
+        result.setSuccess(true);
+        result.setFileHash(cached.getHash());
+        result.setEpisodeId(cached.getEpisodeId());
+        result.setAnimeId(cached.getAnimeId());
+        result.setAnimeTitle(cached.getAnimeTitle());
+        result.setEpisodeTitle(cached.getEpisodeTitle());
+        return result;
+    }
+
+    private static String keyOf(String hash, Long size) {
+        return hash + "/" + size;
+    }
+}
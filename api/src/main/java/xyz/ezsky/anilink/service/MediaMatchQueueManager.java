@@ -4,7 +4,6 @@ import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
@@ -15,15 +14,25 @@ import xyz.ezsky.anilink.repository.MediaFileRepository;
 
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -34,6 +43,20 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * 1. 接收单个新增文件的匹配请求
  * 2. 将文件ID添加到队列
  * 3. 按固定间隔批量匹配，并在队列积压时尽快触发处理
+ * 4. 待匹配文件 ID 保存在内存队列中，数据库中的匹配状态仍是持久化的权威来源：
+ *    队列不足时按 ID 游标分段从数据库补充（启动恢复、入队溢出、定期对账），排空判断不再执行 COUNT
+ * 5. 缺少哈希的文件交给 {@link MediaHashStage} 按磁盘并行计算，哈希完成后立即触发下一批匹配，
+ *    匹配线程本身不做磁盘读取
+ * 6. 多个批量匹配请求同时在途，并发上限由 {@link MatchConcurrencyLimiter} 按延迟与限流/服务端错误自适应调整；
+ *    结果在请求线程中回写，调度线程同时继续发出新请求
+ * 7. 每个批次的结果由 {@link MediaMatchResultWriter} 以一次 JDBC 批量 UPDATE 写回，只修改匹配列
+ * 8. 接口暂时性故障（限流、5xx、网络或签名错误）不标记为未找到匹配，而是按指数退避加抖动持久化下一次尝试时间，
+ *    队列只取已到重试时间的记录；连续失败达到上限后标记为未找到匹配
+ * 9. 发出请求前先查 {@link MediaMatchCacheService}，按 (哈希, 大小) 命中的文件直接写回，不占用接口请求
+ * 10. 文件首次进入候选窗口时先由 {@link MediaEpisodeInferenceService} 按同目录已匹配文件的命名规律本地推断，
+ *     高置信度的文件直接写回，既不计算哈希也不请求接口
+ * 11. 内存队列按 {@link MatchPriority} 分为用户操作、目录监听、批量三个通道，候选窗口按权重分配份额，
+ *     高优先级文件先计算哈希、先发请求，批量积压仍按权重持续推进
  */
 @Log4j2
 @Service
@@ -48,7 +71,19 @@ public class MediaMatchQueueManager {
     private DandanMatchService dandanMatchService;
 
     @Autowired
-    private MediaHashService mediaHashService;
+    private MediaHashStage mediaHashStage;
+
+    @Autowired
+    private MediaDuplicateIndex mediaDuplicateIndex;
+
+    @Autowired
+    private MediaMatchResultWriter mediaMatchResultWriter;
+
+    @Autowired
+    private MediaMatchCacheService mediaMatchCacheService;
+
+    @Autowired
+    private MediaEpisodeInferenceService mediaEpisodeInferenceService;
     
     @Autowired
     private xyz.ezsky.anilink.service.notification.EpisodeUpdateNotificationService episodeUpdateNotificationService;
@@ -63,11 +98,127 @@ public class MediaMatchQueueManager {
     @Value("${anilink.match-queue.interval-seconds:10}")
     private int queueIntervalSeconds;
 
+    /**
+     * 每次查询的候选窗口为批次大小的倍数，使哈希阶段能提前为后续批次读盘
+     */
+    @Value("${anilink.match-queue.hash-lookahead:4}")
+    private int hashLookahead = 4;
+
+    @Value("${anilink.match-queue.max-in-memory:5000}")
+    private int maxInMemory = 5000;
+
+    @Value("${anilink.match-queue.refill-chunk:500}")
+    private int refillChunk = 500;
+
+    /**
+     * 定期从数据库对账一次，兜底未经 {@link #addToQueue(Long)} 变为待匹配的记录
+     */
+    @Value("${anilink.match-queue.resync-seconds:300}")
+    private int resyncSeconds = 300;
+
+    /**
+     * 存在未载入内存的积压时，{@link #getQueueSize()} 的 COUNT 结果缓存时长
+     */
+    @Value("${anilink.match-queue.count-cache-seconds:30}")
+    private int countCacheSeconds = 30;
+
+    /**
+     * 候选窗口中各优先级通道的份额权重
+     */
+    @Value("${anilink.match-queue.interactive-weight:6}")
+    private int interactiveWeight = 6;
+
+    @Value("${anilink.match-queue.watcher-weight:3}")
+    private int watcherWeight = 3;
+
+    @Value("${anilink.match-queue.bulk-weight:1}")
+    private int bulkWeight = 1;
+
+    /**
+     * 内存中的待匹配文件 ID，按优先级分通道、通道内按入队顺序排列（以自身为锁）
+     */
+    private final MatchLaneQueue pendingIds = new MatchLaneQueue();
+
+    /**
+     * 数据库补充的 ID 游标，一轮扫到末尾后归零
+     */
+    private long refillCursor;
+
+    /**
+     * 数据库中可能存在尚未载入内存的待匹配记录（启动时为 true 以恢复上次未完成的队列）
+     */
+    private boolean backlogPending = true;
+
+    /**
+     * 本轮补充期间内存队列曾经溢出，游标之前可能遗漏了记录
+     */
+    private boolean overflowDuringPass;
+
+    @Value("${anilink.match-queue.initial-concurrency:2}")
+    private int initialConcurrency = 2;
+
+    @Value("${anilink.match-queue.max-concurrency:8}")
+    private int maxConcurrency = 8;
+
+    /**
+     * 批次延迟超过该值时收缩并发
+     */
+    @Value("${anilink.match-queue.latency-target-ms:5000}")
+    private long latencyTargetMillis = 5000;
+
+    /**
+     * 暂时性故障后的首次重试间隔，之后每次翻倍
+     */
+    @Value("${anilink.match-queue.retry-base-seconds:60}")
+    private long retryBaseSeconds = 60;
+
+    @Value("${anilink.match-queue.retry-max-seconds:21600}")
+    private long retryMaxSeconds = 21600;
+
+    /**
+     * 连续暂时性失败达到该次数后不再重试，标记为未找到匹配（之后可手动重新匹配）
+     */
+    @Value("${anilink.match-queue.max-attempts:10}")
+    private int maxMatchAttempts = 10;
+
+    /**
+     * 已知最早的重试到期时间，到期后从头补充一轮（以 pendingIds 为锁）
+     */
+    private long nextRetryDueAt = Long.MAX_VALUE;
+
+    private MatchConcurrencyLimiter concurrencyLimiter;
+    private ExecutorService matchRequestExecutor;
+
+    private long lastResyncAt = System.currentTimeMillis();
+    private volatile long cachedBacklogCount;
+    private volatile long cachedBacklogCountAt;
+
+    /**
+     * 正在哈希阶段中的文件 ID
+     */
+    private final Set<Long> hashing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 哈希计算失败的文件 ID，按无哈希方式（仅文件名）参与匹配
+     */
+    private final Set<Long> hashUnavailable = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 已尝试过本地推断的文件 ID，避免每轮排空重复查询同目录文件
+     */
+    private final Set<Long> inferenceTried = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 已发出请求、结果尚未写回的文件 ID。此期间数据库中仍为待匹配，补充流程不得再次入队
+     */
+    private final Set<Long> inFlightIds = ConcurrentHashMap.newKeySet();
+
     private final AtomicInteger activeBatches = new AtomicInteger(0);
     private final AtomicLong totalEnqueued = new AtomicLong(0);
     private final AtomicLong totalProcessed = new AtomicLong(0);
     private final AtomicLong totalMatched = new AtomicLong(0);
     private final AtomicLong totalNoMatch = new AtomicLong(0);
+    private final AtomicLong totalInferred = new AtomicLong(0);
     private final AtomicLong totalFailed = new AtomicLong(0);
 
     /**
@@ -75,6 +226,21 @@ public class MediaMatchQueueManager {
      */
     @PostConstruct
     public void init() {
+        concurrencyLimiter = new MatchConcurrencyLimiter(initialConcurrency, 1, maxConcurrency, latencyTargetMillis);
+        AtomicInteger threadCounter = new AtomicInteger();
+        matchRequestExecutor = Executors.newFixedThreadPool(Math.max(1, maxConcurrency), r -> {
+            Thread t = new Thread(r, "media-match-request-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            Timestamp earliest = mediaFileRepository.findEarliestNextMatchAttemptAt(AUTO_PENDING_STATUSES);
+            if (earliest != null) {
+                nextRetryDueAt = earliest.getTime();
+            }
+        } catch (Exception e) {
+            log.warn("Failed to load pending match retries: {}", e.getMessage());
+        }
         startQueueProcessor();
         log.info("MediaMatchQueueManager initialized");
     }
@@ -85,17 +251,31 @@ public class MediaMatchQueueManager {
     @PreDestroy
     public void destroy() {
         stopQueueProcessor();
+        if (matchRequestExecutor != null) {
+            matchRequestExecutor.shutdownNow();
+        }
         log.info("MediaMatchQueueManager destroyed");
     }
 
     /**
-     * 将文件添加到匹配队列
+     * 将文件添加到匹配队列的批量通道
      * 
      * @param mediaFileId 待匹配文件的 ID
      */
     public void addToQueue(Long mediaFileId) {
+        addToQueue(mediaFileId, MatchPriority.BULK);
+    }
+
+    /**
+     * 将文件添加到匹配队列的指定通道，已在较低优先级通道中的文件会被提升
+     * 
+     * @param mediaFileId 待匹配文件的 ID
+     * @param priority    优先级通道
+     */
+    public void addToQueue(Long mediaFileId, MatchPriority priority) {
         totalEnqueued.incrementAndGet();
-        log.debug("Match trigger accepted for file: {}", mediaFileId);
+        offer(List.of(mediaFileId), priority);
+        log.debug("Match trigger accepted for file: {} ({})", mediaFileId, priority);
         scheduleImmediateDrain();
     }
 
@@ -112,14 +292,19 @@ public class MediaMatchQueueManager {
         );
 
         int enqueued = 0;
+        List<Long> ids = new ArrayList<>(candidates.size());
         for (MediaFile mediaFile : candidates) {
             mediaFile.setMatchStatus(MatchStatus.UNMATCHED);
+            mediaFile.setMatchAttempts(0);
+            mediaFile.setNextMatchAttemptAt(null);
             mediaFileRepository.save(mediaFile);
+            ids.add(mediaFile.getId());
             enqueued++;
         }
 
         if (enqueued > 0) {
             totalEnqueued.addAndGet(enqueued);
+            offer(ids, MatchPriority.INTERACTIVE);
             scheduleImmediateDrain();
         }
 
@@ -157,34 +342,345 @@ public class MediaMatchQueueManager {
      * 处理队列中的文件
      */
     private void processQueue() {
-        List<MediaFile> mediaFiles = mediaFileRepository
-                .findByMatchStatusIn(AUTO_PENDING_STATUSES, PageRequest.of(0, batchSize, Sort.by(Sort.Direction.ASC, "id")))
-                .getContent();
+        synchronized (pendingIds) {
+            long now = System.currentTimeMillis();
+            if (now - lastResyncAt >= TimeUnit.SECONDS.toMillis(resyncSeconds)) {
+                lastResyncAt = now;
+                backlogPending = true;
+            }
+            if (now >= nextRetryDueAt) {
+                // 游标之前也可能有到期记录，本轮结束后从头再扫一轮
+                nextRetryDueAt = Long.MAX_VALUE;
+                backlogPending = true;
+                overflowDuringPass = true;
+            }
+        }
+        if (dispatchBatch() && hasPendingWork()) {
+            // 当前批次完成后，如果还有积压，继续快速排空，避免必须等待下一个固定周期。
+            scheduleImmediateDrain();
+        }
+    }
 
-        if (mediaFiles.isEmpty()) {
-            return;
+    /**
+     * 将文件 ID 放入内存队列的指定通道；超出通道容量的部分留在数据库中，之后由补充流程载入批量通道
+     */
+    private void offer(List<Long> mediaFileIds, MatchPriority priority) {
+        synchronized (pendingIds) {
+            for (Long id : mediaFileIds) {
+                if (id == null || inFlightIds.contains(id)) {
+                    continue;
+                }
+                if (!pendingIds.offer(id, priority, maxInMemory)) {
+                    backlogPending = true;
+                    overflowDuringPass = true;
+                }
+            }
         }
+    }
+
+    private Map<MatchPriority, Integer> laneWeights() {
+        Map<MatchPriority, Integer> weights = new EnumMap<>(MatchPriority.class);
+        weights.put(MatchPriority.INTERACTIVE, interactiveWeight);
+        weights.put(MatchPriority.WATCHER, watcherWeight);
+        weights.put(MatchPriority.BULK, bulkWeight);
+        return weights;
+    }
+
+    private boolean hasPendingWork() {
+        synchronized (pendingIds) {
+            return !pendingIds.isEmpty() || backlogPending;
+        }
+    }
+
+    /**
+     * 内存队列低于一个候选窗口且数据库可能有积压时，按 ID 游标补充一段
+     */
+    private void refillIfLow(int windowSize) {
+        long cursor;
+        synchronized (pendingIds) {
+            if (!backlogPending || pendingIds.size() >= windowSize) {
+                return;
+            }
+            cursor = refillCursor;
+        }
+
+        int chunk = Math.max(windowSize, refillChunk);
+        List<Long> ids = mediaFileRepository.findIdsByMatchStatusInAfter(
+                AUTO_PENDING_STATUSES, cursor, new Timestamp(System.currentTimeMillis()), PageRequest.of(0, chunk));
+        offer(ids, MatchPriority.BULK);
+
+        synchronized (pendingIds) {
+            if (ids.size() < chunk) {
+                // 已扫到末尾；期间发生过溢出则从头再扫一轮
+                refillCursor = 0;
+                backlogPending = overflowDuringPass;
+                overflowDuringPass = false;
+            } else {
+                refillCursor = ids.get(ids.size() - 1);
+            }
+        }
+        if (!ids.isEmpty()) {
+            log.debug("Refilled match queue with {} files from database", ids.size());
+        }
+    }
 
-        log.info("Processing {} files from match queue", mediaFiles.size());
-        activeBatches.incrementAndGet();
+    /**
+     * 在并发上限内发出已具备哈希的批次，缺少哈希的文件提交到哈希阶段。
+     *
+     * @return 是否有进展（发出了请求或清理了过期条目）
+     */
+    private boolean dispatchBatch() {
+        int windowSize = batchSize * Math.max(Math.max(1, hashLookahead), maxConcurrency);
+        refillIfLow(windowSize);
+
+        List<Long> windowIds;
+        Set<Long> urgent = new HashSet<>();
+        synchronized (pendingIds) {
+            windowIds = pendingIds.window(windowSize, laneWeights());
+            // 在途批次中的文件不应仍在队列中，出现时直接移除
+            List<Long> inFlight = windowIds.stream().filter(inFlightIds::contains).toList();
+            if (!inFlight.isEmpty()) {
+                inFlight.forEach(pendingIds::remove);
+                windowIds = windowIds.stream().filter(id -> !inFlightIds.contains(id)).toList();
+            }
+            for (Long id : windowIds) {
+                if (pendingIds.priorityOf(id) != MatchPriority.BULK) {
+                    urgent.add(id);
+                }
+            }
+        }
+        if (windowIds.isEmpty()) {
+            return false;
+        }
 
+        Map<Long, MediaFile> loaded = new HashMap<>();
+        mediaFileRepository.findAllById(windowIds).forEach(mediaFile -> loaded.put(mediaFile.getId(), mediaFile));
+
+        List<MediaFile> live = new ArrayList<>();
+        List<Long> stale = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Long id : windowIds) {
+            MediaFile mediaFile = loaded.get(id);
+            if (mediaFile == null || mediaFile.getMatchStatus() != MatchStatus.UNMATCHED) {
+                // 已删除、已匹配或转为其他状态，数据库状态为准
+                stale.add(id);
+                continue;
+            }
+            if (mediaFile.getNextMatchAttemptAt() != null && mediaFile.getNextMatchAttemptAt().getTime() > now) {
+                // 等待退避的记录到期后由补充流程重新载入
+                stale.add(id);
+                continue;
+            }
+            live.add(mediaFile);
+        }
+
+        // 本地推断：每个文件只尝试一次，命中的文件直接写回并移出队列
+        List<MediaFile> untried = live.stream().filter(mediaFile -> inferenceTried.add(mediaFile.getId())).toList();
+        if (!untried.isEmpty()) {
+            Map<Long, MatchResult> inferred = mediaEpisodeInferenceService.infer(untried);
+            if (!inferred.isEmpty()) {
+                List<MediaMatchResultWriter.Matched> matched = new ArrayList<>();
+                for (MediaFile mediaFile : untried) {
+                    MatchResult result = inferred.get(mediaFile.getId());
+                    if (result != null) {
+                        matched.add(new MediaMatchResultWriter.Matched(mediaFile, result));
+                        log.info("Inferred file {} from siblings -> episodeId: {}",
+                                mediaFile.getFilePath(), result.getEpisodeId());
+                    }
+                }
+                totalInferred.addAndGet(writeResults(matched, List.of()));
+                live.removeIf(mediaFile -> inferred.containsKey(mediaFile.getId()));
+                stale.addAll(inferred.keySet());
+            }
+        }
+
+        List<MediaFile> ready = new ArrayList<>();
+        boolean windowHashing = false;
+        for (MediaFile mediaFile : live) {
+            Long id = mediaFile.getId();
+            if (!hasHash(mediaFile) && !hashUnavailable.contains(id) && !hashing.contains(id)) {
+                submitHash(mediaFile, urgent.contains(id));
+            }
+            // 哈希阶段拒绝提交的文件已标记为无哈希，本轮即可按文件名匹配
+            if (hasHash(mediaFile) || hashUnavailable.contains(id)) {
+                ready.add(mediaFile);
+            } else {
+                windowHashing |= hashing.contains(id);
+            }
+        }
+        if (!stale.isEmpty()) {
+            synchronized (pendingIds) {
+                stale.forEach(pendingIds::remove);
+            }
+            stale.forEach(hashUnavailable::remove);
+            stale.forEach(inferenceTried::remove);
+        }
+
+        int dispatched = 0;
+        int index = 0;
+        while (index < ready.size() && activeBatches.get() < concurrencyLimiter.getLimit()) {
+            List<MediaFile> batch = new ArrayList<>(ready.subList(index, Math.min(index + batchSize, ready.size())));
+            // 批次未满且本窗口仍有文件在计算哈希时等待凑满，哈希完成后会再次触发；
+            // 含用户操作或监听文件的批次立即发出，不被批量通道的读盘拖住
+            if (batch.size() < batchSize && windowHashing
+                    && batch.stream().noneMatch(mediaFile -> urgent.contains(mediaFile.getId()))) {
+                break;
+            }
+            index += batch.size();
+            submitBatch(batch);
+            dispatched++;
+        }
+        return dispatched > 0 || !stale.isEmpty();
+    }
+
+    /**
+     * 将一个批次交给请求线程池，调度线程不等待结果
+     */
+    private void submitBatch(List<MediaFile> batch) {
+        List<Long> ids = batch.stream().map(MediaFile::getId).toList();
+        synchronized (pendingIds) {
+            ids.forEach(pendingIds::remove);
+            inFlightIds.addAll(ids);
+        }
+        int inFlight = activeBatches.incrementAndGet();
+        log.info("Processing {} files from match queue ({} requests in flight, limit {})",
+                batch.size(), inFlight, concurrencyLimiter.getLimit());
         try {
-            // 处理批次
-            processBatch(mediaFiles);
+            matchRequestExecutor.execute(() -> runBatch(batch, ids));
+        } catch (RejectedExecutionException e) {
+            activeBatches.decrementAndGet();
+            ids.forEach(inFlightIds::remove);
+            offer(ids, MatchPriority.BULK);
+        }
+    }
 
+    private void runBatch(List<MediaFile> batch, List<Long> ids) {
+        boolean completed = false;
+        try {
+            completed = processBatch(batch);
         } catch (Exception e) {
             log.error("Error processing match queue", e);
             totalFailed.incrementAndGet();
         } finally {
             activeBatches.decrementAndGet();
+            // 结果已写回（或重试计划已确定），之后的入队以数据库状态为准
+            ids.forEach(inFlightIds::remove);
+            // 重试的文件回到队列时重新推断，期间可能已有更多同目录文件完成匹配
+            ids.forEach(inferenceTried::remove);
+            if (completed) {
+                ids.forEach(hashUnavailable::remove);
+                scheduleImmediateDrain();
+            } else {
+                // 接口暂时性故障：按退避计划持久化下一次尝试时间，避免接口故障时空转
+                scheduleRetry(batch);
+            }
+        }
+    }
 
-            boolean hasMore = mediaFileRepository.countByMatchStatusIn(AUTO_PENDING_STATUSES) > 0;
+    /**
+     * 将文件提交到哈希阶段，完成后保存哈希并触发一次排空
+     *
+     * @param urgent 来自用户操作或监听通道，在磁盘读取通道中优先执行
+     */
+    private void submitHash(MediaFile mediaFile, boolean urgent) {
+        Long mediaFileId = mediaFile.getId();
+        if (!Files.exists(Paths.get(mediaFile.getFilePath()))) {
+            log.warn("File no longer exists: {}", mediaFile.getFilePath());
+            markNoMatchPreservingMetadata(mediaFile);
+            return;
+        }
 
-            // 当前批次完成后，如果还有积压，继续快速排空，避免必须等待下一个固定周期。
-            if (hasMore) {
+        hashing.add(mediaFileId);
+        CompletableFuture<String> pending;
+        try {
+            pending = mediaHashStage.submit(Paths.get(mediaFile.getFilePath()), urgent);
+        } catch (RejectedExecutionException e) {
+            // 哈希线程池饱和或正在关闭：不留在哈希中集合，按文件名参与匹配
+            log.warn("Hash stage rejected {}, matching by file name: {}", mediaFile.getFilePath(), e.getMessage());
+            hashing.remove(mediaFileId);
+            hashUnavailable.add(mediaFileId);
+            return;
+        }
+        pending.whenComplete((hash, error) -> {
+            try {
+                if (hash != null) {
+                    saveHashOnly(mediaFile, hash);
+                    log.debug("Calculated hash for file: {}", mediaFile.getFilePath());
+                } else {
+                    log.warn("Failed to calculate hash for {}: {}", mediaFile.getFilePath(),
+                            error != null ? error.getMessage() : "no result");
+                    hashUnavailable.add(mediaFileId);
+                }
+            } catch (Exception e) {
+                log.warn("Failed to save hash for {}: {}", mediaFile.getFilePath(), e.getMessage());
+                hashUnavailable.add(mediaFileId);
+            } finally {
+                hashing.remove(mediaFileId);
                 scheduleImmediateDrain();
             }
+        });
+    }
+
+    /**
+     * 为暂时性失败的批次写入下一次尝试时间；写入失败时退回内存队列，等下一个固定周期。
+     * 重试次数用尽的文件标记为未找到匹配，避免永久性错误的请求无限重试
+     */
+    private void scheduleRetry(List<MediaFile> batch) {
+        long now = System.currentTimeMillis();
+        long earliest = Long.MAX_VALUE;
+        List<MediaFile> exhausted = new ArrayList<>();
+        List<MediaFile> retry = new ArrayList<>();
+        for (MediaFile mediaFile : batch) {
+            int attempts = (mediaFile.getMatchAttempts() == null ? 0 : mediaFile.getMatchAttempts()) + 1;
+            if (attempts >= maxMatchAttempts) {
+                exhausted.add(mediaFile);
+                continue;
+            }
+            retry.add(mediaFile);
+            long dueAt = now + retryDelayMillis(attempts, TimeUnit.SECONDS.toMillis(retryBaseSeconds),
+                    TimeUnit.SECONDS.toMillis(retryMaxSeconds), ThreadLocalRandom.current().nextDouble());
+            mediaFile.setMatchAttempts(attempts);
+            mediaFile.setNextMatchAttemptAt(new Timestamp(dueAt));
+            earliest = Math.min(earliest, dueAt);
+        }
+
+        if (!exhausted.isEmpty()) {
+            log.warn("Giving up on {} files after {} failed match attempts", exhausted.size(), maxMatchAttempts);
+            writeResults(List.of(), exhausted);
+        }
+        if (retry.isEmpty()) {
+            return;
         }
+
+        try {
+            mediaMatchResultWriter.writeRetry(retry);
+        } catch (Exception e) {
+            log.warn("Failed to persist match retry schedule: {}", e.getMessage());
+            offer(retry.stream().map(MediaFile::getId).toList(), MatchPriority.BULK);
+            return;
+        }
+        synchronized (pendingIds) {
+            nextRetryDueAt = Math.min(nextRetryDueAt, earliest);
+        }
+        log.info("Deferred {} files after transient match failure, next attempt in {} s",
+                retry.size(), TimeUnit.MILLISECONDS.toSeconds(earliest - now));
+    }
+
+    /**
+     * 第 n 次重试的等待时长：基础间隔按 2^(n-1) 增长并封顶，取其一半固定加一半随机（equal jitter），
+     * 避免同一次故障中失败的文件在同一时刻集中重试
+     *
+     * @param attempts 连续失败次数，从 1 开始
+     * @param random   [0, 1) 的随机数
+     */
+    static long retryDelayMillis(int attempts, long baseMillis, long maxMillis, double random) {
+        int exponent = Math.min(Math.max(0, attempts - 1), 30);
+        long delay = Math.min(maxMillis, baseMillis << exponent);
+        return delay / 2 + (long) (random * (delay / 2));
+    }
+
+    private static boolean hasHash(MediaFile mediaFile) {
+        return mediaFile.getHash() != null && !mediaFile.getHash().isEmpty();
     }
 
     private void scheduleImmediateDrain() {
@@ -193,14 +689,16 @@ public class MediaMatchQueueManager {
         }
 
         scheduledExecutor.execute(() -> {
+            boolean dispatched = false;
             try {
-                processQueue();
+                dispatched = dispatchBatch();
+            } catch (Exception e) {
+                log.error("Error processing match queue", e);
             } finally {
                 immediateDrainScheduled.set(false);
 
-                boolean hasMore = mediaFileRepository.countByMatchStatusIn(AUTO_PENDING_STATUSES) > 0;
-
-                if (hasMore) {
+                // 仅在本轮有进展时继续排空，其余情况等待哈希完成或下一个固定周期
+                if (dispatched && hasPendingWork()) {
                     scheduleImmediateDrain();
                 }
             }
@@ -209,43 +707,35 @@ public class MediaMatchQueueManager {
 
     /**
      * 处理单个批次的文件
+     *
+     * @return false 表示接口限流或故障，批次未处理，应稍后重试
      */
-    private void processBatch(List<MediaFile> batch) {
+    private boolean processBatch(List<MediaFile> batch) {
         List<Map<String, Object>> fileInfos = new ArrayList<>();
         List<MediaFile> requestFiles = new ArrayList<>();
+        List<MediaFile> candidates = new ArrayList<>();
+        List<MediaFile> missing = new ArrayList<>();
 
         for (MediaFile mediaFile : batch) {
-            Long mediaFileId = mediaFile.getId();
-
             // 检查文件是否存在
             if (!Files.exists(Paths.get(mediaFile.getFilePath()))) {
                 log.warn("File no longer exists: {}", mediaFile.getFilePath());
-                markNoMatchPreservingMetadata(mediaFileId);
-                totalProcessed.incrementAndGet();
-                totalNoMatch.incrementAndGet();
+                missing.add(mediaFile);
                 continue;
             }
 
-            // 确保hash已计算
-            if (mediaFile.getHash() == null || mediaFile.getHash().isEmpty()) {
-                mediaFileRepository.findById(mediaFileId).ifPresent(latest -> {
-                    if (latest.getHash() != null && !latest.getHash().isEmpty()) {
-                        mediaFile.setHash(latest.getHash());
-                    }
-                });
-            }
+            candidates.add(mediaFile);
+        }
 
-            if (mediaFile.getHash() == null || mediaFile.getHash().isEmpty()) {
-                try {
-                    String hash = mediaHashService.calculateHash(Paths.get(mediaFile.getFilePath()));
-                    if (hash != null) {
-                        mediaFile.setHash(hash);
-                        saveHashOnly(mediaFileId, hash);
-                        log.debug("Calculated hash for file: {}", mediaFile.getFilePath());
-                    }
-                } catch (Exception e) {
-                    log.warn("Failed to calculate hash for {}: {}", mediaFile.getFilePath(), e.getMessage());
-                }
+        // 先查匹配缓存，只有未命中的文件发往匹配接口
+        Map<Long, MatchResult> cached = mediaMatchCacheService.lookupAll(candidates);
+        List<MediaMatchResultWriter.Matched> matched = new ArrayList<>();
+        for (MediaFile mediaFile : candidates) {
+            MatchResult cachedResult = cached.get(mediaFile.getId());
+            if (cachedResult != null) {
+                matched.add(new MediaMatchResultWriter.Matched(mediaFile, cachedResult));
+                log.info("Matched file {} from cache -> episodeId: {}", mediaFile.getFilePath(), cachedResult.getEpisodeId());
+                continue;
             }
 
             // 准备匹配信息
@@ -259,54 +749,112 @@ public class MediaMatchQueueManager {
         }
 
         if (fileInfos.isEmpty()) {
-            log.warn("No valid file info to match in queue batch");
-            return;
+            if (matched.isEmpty()) {
+                log.warn("No valid file info to match in queue batch");
+            }
+            writeResults(matched, missing);
+            return true;
         }
 
         // 调用批量匹配接口
-        List<MatchResult> matchResults = dandanMatchService.batchMatch(fileInfos);
+        long start = System.currentTimeMillis();
+        DandanMatchService.BatchMatchOutcome outcome = dandanMatchService.batchMatchWithStatus(fileInfos);
+        long latency = System.currentTimeMillis() - start;
+        if (outcome.isRetryable()) {
+            if (outcome.isCongestion()) {
+                concurrencyLimiter.onCongestion(latency);
+            }
+            log.warn("Dandan batch match throttled or failed (status {}), concurrency limit now {}",
+                    outcome.statusCode(), concurrencyLimiter.getLimit());
+            // 缓存命中与已不存在的文件不受接口故障影响，先行写回；其余文件按退避计划重试
+            writeResults(matched, missing);
+            return false;
+        }
+        concurrencyLimiter.onSuccess(latency);
+        List<MatchResult> matchResults = outcome.results();
 
-        // 更新匹配结果
+        // 更新匹配结果：整批收集后一次写回
+        List<MediaFile> noMatch = new ArrayList<>(missing);
         for (int i = 0; i < matchResults.size() && i < requestFiles.size(); i++) {
             MatchResult result = matchResults.get(i);
             MediaFile mediaFile = requestFiles.get(i);
 
-            try {
-                if (result.getSuccess() != null && result.getSuccess()) {
-                    saveMatchedResultPreservingMetadata(mediaFile.getId(), result);
-                    log.info("Matched file {} -> episodeId: {}", mediaFile.getFilePath(), result.getEpisodeId());
-                    totalMatched.incrementAndGet();
-                } else {
-                    markNoMatchPreservingMetadata(mediaFile.getId());
-                    log.debug("No match found for file: {}", mediaFile.getFilePath());
-                    totalNoMatch.incrementAndGet();
-                }
-                totalProcessed.incrementAndGet();
-
-            } catch (Exception e) {
-                log.error("Error updating match result for file: {}", mediaFile.getFilePath(), e);
-                totalFailed.incrementAndGet();
+            if (result.getSuccess() != null && result.getSuccess()) {
+                matched.add(new MediaMatchResultWriter.Matched(mediaFile, result));
+                mediaMatchCacheService.store(mediaFile.getHash(), mediaFile.getSize(), result);
+                log.info("Matched file {} -> episodeId: {}", mediaFile.getFilePath(), result.getEpisodeId());
+            } else {
+                noMatch.add(mediaFile);
+                log.debug("No match found for file: {}", mediaFile.getFilePath());
             }
         }
+        writeResults(matched, noMatch);
 
         if (matchResults.size() < requestFiles.size()) {
             long notReturned = requestFiles.size() - matchResults.size();
             totalFailed.addAndGet(notReturned);
             log.warn("Match results size mismatch, missing {} results in current batch", notReturned);
         }
+        return true;
+    }
+
+    /**
+     * 内存队列中指定通道的文件数
+     */
+    public int getLaneSize(MatchPriority priority) {
+        synchronized (pendingIds) {
+            return pendingIds.size(priority);
+        }
     }
 
     /**
      * 获取队列中当前的文件数量（用于监控）
      */
     public int getQueueSize() {
-        return (int) mediaFileRepository.countByMatchStatusIn(AUTO_PENDING_STATUSES);
+        synchronized (pendingIds) {
+            if (!backlogPending) {
+                return pendingIds.size();
+            }
+        }
+        // 数据库中仍有未载入的积压时才计数，且结果按间隔缓存，避免界面轮询反复全表 COUNT
+        long now = System.currentTimeMillis();
+        if (now - cachedBacklogCountAt >= TimeUnit.SECONDS.toMillis(countCacheSeconds)) {
+            cachedBacklogCount = mediaFileRepository.countByMatchStatusIn(AUTO_PENDING_STATUSES);
+            cachedBacklogCountAt = now;
+        }
+        return (int) cachedBacklogCount;
     }
 
+    /**
+     * 正在哈希阶段中等待读盘的文件数
+     */
+    public int getHashPending() {
+        return hashing.size();
+    }
+
+    /**
+     * 在途的批量匹配请求数
+     */
     public int getActiveBatches() {
         return activeBatches.get();
     }
 
+    /**
+     * 当前自适应并发上限
+     */
+    public int getConcurrencyLimit() {
+        return concurrencyLimiter != null ? concurrencyLimiter.getLimit() : 0;
+    }
+
+    /**
+     * 最近批量匹配请求延迟的分位数（毫秒）
+     *
+     * @param percentile 分位（0~100）
+     */
+    public long getBatchLatencyPercentile(double percentile) {
+        return concurrencyLimiter != null ? concurrencyLimiter.getLatencyPercentile(percentile) : 0;
+    }
+
     public int getBatchSize() {
         return batchSize;
     }
@@ -331,47 +879,63 @@ public class MediaMatchQueueManager {
         return totalNoMatch.get();
     }
 
+    /**
+     * 通过同目录命名规律本地推断完成的匹配数
+     */
+    public long getTotalInferred() {
+        return totalInferred.get();
+    }
+
     public long getTotalFailed() {
         return totalFailed.get();
     }
 
-    private void saveHashOnly(Long mediaFileId, String hash) {
-        if (mediaFileId == null || hash == null || hash.isEmpty()) {
+    private void saveHashOnly(MediaFile mediaFile, String hash) {
+        if (mediaFile.getId() == null || hash == null || hash.isEmpty()) {
             return;
         }
 
-        mediaFileRepository.findById(mediaFileId).ifPresent(latest -> {
-            latest.setHash(hash);
-            mediaFileRepository.save(latest);
-        });
+        if (mediaFileRepository.updateHashIfMissing(mediaFile.getId(), hash) > 0) {
+            mediaFile.setHash(hash);
+            mediaDuplicateIndex.onHashWritten(hash, mediaFile.getSize());
+        }
     }
 
-    private void markNoMatchPreservingMetadata(Long mediaFileId) {
-        if (mediaFileId == null) {
+    private void markNoMatchPreservingMetadata(MediaFile mediaFile) {
+        if (mediaFile.getId() == null) {
             return;
         }
 
-        mediaFileRepository.findById(mediaFileId).ifPresent(latest -> {
-            latest.setMatchStatus(MatchStatus.NO_MATCH_FOUND);
-            mediaFileRepository.save(latest);
-        });
+        writeResults(List.of(), List.of(mediaFile));
     }
 
-    private void saveMatchedResultPreservingMetadata(Long mediaFileId, MatchResult result) {
-        if (mediaFileId == null || result == null) {
-            return;
+    /**
+     * 批量写回匹配结果并按实际写入的记录更新统计，写入成功的匹配结果异步通知追番用户
+     *
+     * @return 实际写入的匹配成功文件数
+     */
+    private int writeResults(List<MediaMatchResultWriter.Matched> matched, List<MediaFile> noMatch) {
+        if (matched.isEmpty() && noMatch.isEmpty()) {
+            return 0;
         }
 
-        mediaFileRepository.findById(mediaFileId).ifPresent(latest -> {
-            latest.setMatchStatus(MatchStatus.MATCHED);
-            latest.setEpisodeId(result.getEpisodeId());
-            latest.setAnimeId(result.getAnimeId());
-            latest.setAnimeTitle(result.getAnimeTitle());
-            latest.setEpisodeTitle(result.getEpisodeTitle());
-            mediaFileRepository.save(latest);
-            
-            // 异步通知追番用户
-            episodeUpdateNotificationService.notifyFollowingUsersAsync(latest);
-        });
+        int total = matched.size() + noMatch.size();
+        MediaMatchResultWriter.Written written;
+        try {
+            written = mediaMatchResultWriter.write(matched, noMatch);
+        } catch (Exception e) {
+            log.error("Error writing back {} match results", total, e);
+            totalFailed.addAndGet(total);
+            return 0;
+        }
+
+        // 请求期间已被修改或重置的记录未写入，不计入匹配统计
+        totalMatched.addAndGet(written.matched().size());
+        totalNoMatch.addAndGet(written.noMatch());
+        totalProcessed.addAndGet(total);
+        for (MediaFile mediaFile : written.matched()) {
+            episodeUpdateNotificationService.notifyFollowingUsersAsync(mediaFile);
+        }
+        return written.matched().size();
     }
 }
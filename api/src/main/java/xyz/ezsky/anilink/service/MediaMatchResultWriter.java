@@ -0,0 +1,145 @@
+package xyz.ezsky.anilink.service;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import xyz.ezsky.anilink.model.dto.MatchResult;
+import xyz.ezsky.anilink.model.entity.MatchStatus;
+import xyz.ezsky.anilink.model.entity.MediaFile;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 匹配结果批量回写。
+ *
+ * <p>一个匹配批次的结果通过 JDBC 批量 UPDATE 一次性写回，只修改匹配相关的列，不加载实体，
+ * 也不会覆盖扫描、元数据提取等并发写入的其他列。更新条件要求记录仍处于待匹配状态，
+ * 且哈希与修改时间仍是发出请求时的值：请求在途期间被手动修改的记录不再是待匹配状态，
+ * 被扫描重置的记录（内容变化后同样回到待匹配、哈希清空）修改时间已变，旧内容的结果都不会写入。
+ * 条件不再成立的记录视为未写入。</p>
+ *
+ * <p>接口暂时性故障时只写回重试次数与下一次尝试时间，匹配状态保持待匹配。</p>
+ */
+@Log4j2
+@Service
+public class MediaMatchResultWriter {
+
+    /**
+     * 记录仍待匹配，且内容仍是请求时的内容（按名称匹配时哈希为空）
+     */
+    private static final String PENDING_GUARD = "id = ? AND match_status = ? "
+            + "AND hash IS NOT DISTINCT FROM ? AND last_modified = ?";
+
+    private static final String MATCHED_SQL = "UPDATE media_file SET match_status = ?, episode_id = ?, anime_id = ?, "
+            + "anime_title = ?, episode_title = ?, match_attempts = 0, next_match_attempt_at = NULL "
+            + "WHERE " + PENDING_GUARD;
+
+    private static final String NO_MATCH_SQL = "UPDATE media_file SET match_status = ?, match_attempts = 0, "
+            + "next_match_attempt_at = NULL WHERE " + PENDING_GUARD;
+
+    private static final String RETRY_SQL = "UPDATE media_file SET match_attempts = ?, next_match_attempt_at = ? "
+            + "WHERE " + PENDING_GUARD;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * 已匹配的文件及其结果
+     */
+    public record Matched(MediaFile mediaFile, MatchResult result) {
+    }
+
+    /**
+     * 实际写入的结果
+     *
+     * @param matched 写入的匹配成功文件（实体已同步为匹配结果）
+     * @param noMatch 写入为未找到匹配的文件数
+     */
+    public record Written(List<MediaFile> matched, int noMatch) {
+    }
+
+    /**
+     * 批量写回一个批次的匹配结果
+     *
+     * @param matched 匹配成功的文件，实体上的哈希与修改时间须为发出请求时的值
+     * @param noMatch 未匹配到结果的文件，要求同上
+     * @return 实际写入的结果，用于统计与后续通知
+     */
+    @Transactional
+    public Written write(List<Matched> matched, List<MediaFile> noMatch) {
+        int pending = MatchStatus.UNMATCHED.ordinal();
+        List<MediaFile> written = new ArrayList<>(matched.size());
+        int noMatchWritten = 0;
+
+        if (!matched.isEmpty()) {
+            List<Object[]> args = new ArrayList<>(matched.size());
+            for (Matched item : matched) {
+                MatchResult result = item.result();
+                args.add(new Object[]{MatchStatus.MATCHED.ordinal(), result.getEpisodeId(), result.getAnimeId(),
+                        result.getAnimeTitle(), result.getEpisodeTitle(), item.mediaFile().getId(), pending,
+                        item.mediaFile().getHash(), item.mediaFile().getLastModified()});
+            }
+            int[] counts = jdbcTemplate.batchUpdate(MATCHED_SQL, args);
+            for (int i = 0; i < matched.size(); i++) {
+                if (!isUpdated(counts, i)) {
+                    continue;
+                }
+                MediaFile mediaFile = matched.get(i).mediaFile();
+                MatchResult result = matched.get(i).result();
+                mediaFile.setMatchStatus(MatchStatus.MATCHED);
+                mediaFile.setEpisodeId(result.getEpisodeId());
+                mediaFile.setAnimeId(result.getAnimeId());
+                mediaFile.setAnimeTitle(result.getAnimeTitle());
+                mediaFile.setEpisodeTitle(result.getEpisodeTitle());
+                written.add(mediaFile);
+            }
+        }
+
+        if (!noMatch.isEmpty()) {
+            List<Object[]> args = new ArrayList<>(noMatch.size());
+            for (MediaFile mediaFile : noMatch) {
+                args.add(new Object[]{MatchStatus.NO_MATCH_FOUND.ordinal(), mediaFile.getId(), pending,
+                        mediaFile.getHash(), mediaFile.getLastModified()});
+            }
+            int[] counts = jdbcTemplate.batchUpdate(NO_MATCH_SQL, args);
+            for (int i = 0; i < noMatch.size(); i++) {
+                if (isUpdated(counts, i)) {
+                    noMatchWritten++;
+                }
+            }
+        }
+
+        int skipped = matched.size() + noMatch.size() - written.size() - noMatchWritten;
+        if (skipped > 0) {
+            log.debug("Skipped {} match results for files no longer pending or changed since the request", skipped);
+        }
+        return new Written(written, noMatchWritten);
+    }
+
+    /**
+     * 批量写回暂时性故障后的重试计划，取实体上的重试次数与下一次尝试时间
+     *
+     * @param files 本批次中需要稍后重试的文件
+     */
+    @Transactional
+    public void writeRetry(List<MediaFile> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        List<Object[]> args = new ArrayList<>(files.size());
+        for (MediaFile mediaFile : files) {
+            args.add(new Object[]{mediaFile.getMatchAttempts(), mediaFile.getNextMatchAttemptAt(),
+                    mediaFile.getId(), MatchStatus.UNMATCHED.ordinal(), mediaFile.getHash(), mediaFile.getLastModified()});
+        }
+        jdbcTemplate.batchUpdate(RETRY_SQL, args);
+    }
+
+    private static boolean isUpdated(int[] counts, int index) {
+        // 部分驱动批量执行时不返回逐条行数
+        return index < counts.length && (counts[index] > 0 || counts[index] == Statement.SUCCESS_NO_INFO);
+    }
+}
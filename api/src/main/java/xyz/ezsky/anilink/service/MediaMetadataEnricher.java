@@ -4,6 +4,7 @@ import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import xyz.ezsky.anilink.model.dto.MediaMetadata;
+import xyz.ezsky.anilink.model.dto.MediaProbeResult;
 import xyz.ezsky.anilink.model.entity.MediaFile;
 
 import java.nio.file.Path;
@@ -17,6 +18,9 @@ import java.nio.file.Paths;
  * 2. 合并技术信息到 MediaFile 实体
  * 3. 抽取并落地内封字幕
  * 
+ * 每个文件只调用一次 FFprobe，探测结果在技术信息解析与内封字幕抽取之间共用；
+ * 完成日志按阶段列出耗时，便于定位慢存储上的瓶颈。
+ * 
  * 使用异步队列支持大规模并发处理，避免阻塞主扫描线程。
  */
 @Log4j2
@@ -57,8 +61,9 @@ public class MediaMetadataEnricher {
         long startTime = System.currentTimeMillis();
 
         try {
-            // 第一步：调用 FFprobe 提取视频技术信息
-            MediaMetadata metadata = mediaProbeService.parseMediaInfo(filePath);
+            // 第一步：调用 FFprobe 提取视频技术信息，探测结果供后续阶段复用
+            MediaProbeResult probe = mediaProbeService.probe(filePath);
+            MediaMetadata metadata = mediaProbeService.parseMediaInfo(probe);
 
             if (metadata != null && metadata.isSuccess()) {
                 // 将元数据合并到 MediaFile 实体
@@ -68,19 +73,27 @@ public class MediaMetadataEnricher {
             }
 
             // 第二步：针对 MKV 文件抽取内封字幕（图片字幕按原格式导出）
-            mediaSubtitleService.extractSubtitlesIfMkv(mediaFile);
+            long stageStart = System.currentTimeMillis();
+            mediaSubtitleService.extractSubtitlesIfMkv(mediaFile, probe);
+            long embeddedSubtitleMs = System.currentTimeMillis() - stageStart;
 
             // 第三步：扫描外部字幕文件
+            stageStart = System.currentTimeMillis();
             mediaSubtitleService.scanExternalSubtitles(mediaFile);
+            long externalSubtitleMs = System.currentTimeMillis() - stageStart;
 
             // 第四步：生成视频缩略图
+            stageStart = System.currentTimeMillis();
             mediaThumbnailService.generateThumbnail(mediaFile);
+            long thumbnailMs = System.currentTimeMillis() - stageStart;
 
             // 第五步：标记已获取元数据
             mediaFile.setMetadataFetched(true);
 
             long duration = System.currentTimeMillis() - startTime;
-            log.info("Enriched metadata for file in {} ms: {}", duration, filePath);
+            log.info("Enriched metadata for file in {} ms (probe={} ms, embeddedSubtitles={} ms, "
+                            + "externalSubtitles={} ms, thumbnail={} ms): {}",
+                    duration, probe.getElapsedMs(), embeddedSubtitleMs, externalSubtitleMs, thumbnailMs, filePath);
 
         } catch (Exception e) {
             log.error("Error enriching metadata for file: {}", filePath, e);
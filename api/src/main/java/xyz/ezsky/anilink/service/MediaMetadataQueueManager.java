@@ -8,12 +8,21 @@ import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import xyz.ezsky.anilink.repository.MediaFileRepository;
 import xyz.ezsky.anilink.model.entity.MediaFile;
+import xyz.ezsky.anilink.model.entity.MatchStatus;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.Set;
 
 /**
@@ -21,6 +30,13 @@ import java.util.Set;
  *
  * 设计目标：新增文件只负责落库，不直接堆积内存任务；
  * 由后台按批次从数据库拉取 metadataFetched=false 的文件并并发处理。
+ *
+ * 每批名额由 {@link MetadataFairScheduler} 按媒体库权重分配（加权亏空轮询），各库分别按 ID 顺序拉取，
+ * 导入超大媒体库时其他库的新文件仍按各自份额持续推进。权重通过
+ * {@code anilink.metadata.library-weights}（形如 {@code 3:4,7:1}，即库 ID:权重）配置，未配置的库权重为 1。
+ *
+ * 各库尚未提交的待处理数按间隔从数据库统计一次，期间在本地维护：提交时扣减、库取空时移除、
+ * 有新文件的库在触发时补入，导入期间的频繁触发不会让每轮调度都重新执行分组统计。
  */
 @Log4j2
 @Service
@@ -49,6 +65,78 @@ public class MediaMetadataQueueManager implements Closeable {
     @Value("${anilink.metadata.dispatch-batch-size:20}")
     private int dispatchBatchSize;
 
+    @Value("${anilink.metadata.library-weights:}")
+    private String libraryWeightsConfig = "";
+
+    /**
+     * 各库待处理数重新统计的间隔，调度与进度查询共用
+     */
+    @Value("${anilink.metadata.pending-count-cache-seconds:10}")
+    private int pendingCountCacheSeconds = 10;
+
+    /**
+     * 吞吐统计的滑动窗口
+     */
+    private static final long THROUGHPUT_WINDOW_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final MetadataFairScheduler fairScheduler = new MetadataFairScheduler();
+    private final Map<Long, Integer> libraryWeights = new HashMap<>();
+    private final Map<Long, LibraryStats> libraryStats = new ConcurrentHashMap<>();
+    /**
+     * 各库尚未提交的待处理数（不含执行中），统计之间在本地增减
+     */
+    private volatile Map<Long, Long> pendingByLibrary = new ConcurrentHashMap<>();
+    private volatile long pendingByLibraryAt;
+
+    /**
+     * 单个媒体库的运行时统计
+     */
+    private static final class LibraryStats {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final Deque<Long> completions = new ConcurrentLinkedDeque<>();
+
+        private void complete(boolean success) {
+            inFlight.decrementAndGet();
+            if (!success) {
+                failed.incrementAndGet();
+                return;
+            }
+            processed.incrementAndGet();
+            long now = System.currentTimeMillis();
+            completions.addLast(now);
+            prune(now);
+        }
+
+        private double throughputPerMinute() {
+            prune(System.currentTimeMillis());
+            return completions.size() * (double) TimeUnit.MINUTES.toMillis(1) / THROUGHPUT_WINDOW_MS;
+        }
+
+        private void prune(long now) {
+            Long oldest;
+            while ((oldest = completions.peekFirst()) != null && now - oldest > THROUGHPUT_WINDOW_MS) {
+                completions.pollFirst();
+            }
+        }
+    }
+
+    /**
+     * 单个媒体库的元数据处理进度
+     *
+     * @param libraryId           媒体库 ID
+     * @param weight              调度权重
+     * @param pending             待处理文件数（含执行中）
+     * @param inFlight            已提交、尚未完成的文件数
+     * @param processed           自启动以来处理成功的文件数
+     * @param failed              自启动以来处理失败的文件数
+     * @param throughputPerMinute 最近一分钟的处理速度（个/分钟）
+     */
+    public record LibraryProgress(Long libraryId, int weight, long pending, int inFlight,
+                                  long processed, long failed, double throughputPerMinute) {
+    }
+
     public MediaMetadataQueueManager(
             @Value("${anilink.metadata.thread-pool-size:0}") int configuredThreadPoolSize,
             @Value("${anilink.metadata.max-thread-pool-size:4}") int maxThreadPoolSize,
@@ -94,6 +182,7 @@ public class MediaMetadataQueueManager implements Closeable {
 
     @PostConstruct
     public void init() {
+        parseLibraryWeights();
         dispatcher.scheduleAtFixedRate(
                 this::dispatchFromDatabase,
                 dispatchIntervalSeconds,
@@ -115,6 +204,20 @@ public class MediaMetadataQueueManager implements Closeable {
         scheduleImmediateDispatch();
     }
 
+    /**
+     * 指定媒体库有新的待处理文件，触发一次尽快调度。
+     *
+     * 该库在下次统计前至少按一批待处理计入调度，实际数量以拉取结果为准。
+     *
+     * @param libraryId 媒体库 ID
+     */
+    public void triggerProcessing(Long libraryId) {
+        if (libraryId != null) {
+            pendingByLibrary.merge(libraryId, (long) Math.max(1, dispatchBatchSize), Math::max);
+        }
+        scheduleImmediateDispatch();
+    }
+
     private void scheduleImmediateDispatch() {
         if (!immediateDispatchScheduled.compareAndSet(false, true)) {
             return;
@@ -140,34 +243,76 @@ public class MediaMetadataQueueManager implements Closeable {
         }
 
         int fetchSize = Math.max(1, Math.min(dispatchBatchSize, availableSlots));
-        int querySize = Math.max(fetchSize * 3, fetchSize);
-        var page = mediaFileRepository.findByMetadataFetchedFalse(
-            PageRequest.of(0, querySize, Sort.by(Sort.Direction.ASC, "id"))
-        );
+        Map<Long, Long> pending = loadPendingByLibrary();
+        Map<Long, Long> available = new LinkedHashMap<>();
+        pending.forEach((libraryId, count) -> available.put(libraryId, Math.max(0, count)));
 
-        if (page.isEmpty()) {
+        Map<Long, Integer> allocation = fairScheduler.allocate(available, fetchSize, this::weightOf);
+        if (allocation.isEmpty()) {
             return;
         }
 
         int submitted = 0;
-        for (MediaFile mediaFile : page.getContent()) {
-            if (submitted >= fetchSize) {
-                break;
-            }
-
-            Long mediaFileId = mediaFile.getId();
-            if (mediaFileId == null || !inFlightIds.add(mediaFileId)) {
+        boolean saturated = false;
+        for (Map.Entry<Long, Integer> entry : allocation.entrySet()) {
+            Long libraryId = entry.getKey();
+            int quota = entry.getValue();
+            if (saturated) {
+                // 执行队列已满，未使用的名额退回调度器，保持各库的长期份额
+                fairScheduler.refund(libraryId, quota);
                 continue;
             }
+            // 执行中的文件仍未标记完成，多取这部分以跳过它们
+            int querySize = quota + inFlightOf(libraryId);
+            // 仍在写入的文件由 MediaFileStabilityGate 在稳定后放行
+            List<MediaFile> candidates = mediaFileRepository.findByLibraryIdAndMetadataFetchedFalseAndMatchStatusNot(
+                    libraryId, MatchStatus.PENDING_STABLE,
+                    PageRequest.of(0, querySize, Sort.by(Sort.Direction.ASC, "id"))).getContent();
+            boolean drained = candidates.size() < querySize;
+
+            int taken = 0;
+            int leftover = 0;
+            for (MediaFile mediaFile : candidates) {
+                Long mediaFileId = mediaFile.getId();
+                if (mediaFileId == null || inFlightIds.contains(mediaFileId)) {
+                    continue;
+                }
+                if (taken >= quota || saturated) {
+                    leftover++;
+                    continue;
+                }
+                if (!inFlightIds.add(mediaFileId)) {
+                    continue;
+                }
 
-            try {
-                executor.execute(new MetadataExtractionTask(mediaFile));
-                totalSubmitted.incrementAndGet();
-                submitted++;
-            } catch (RejectedExecutionException ignored) {
-                // 执行队列已满，等待下一轮调度。
-                inFlightIds.remove(mediaFileId);
-                break;
+                LibraryStats stats = statsOf(libraryId);
+                stats.inFlight.incrementAndGet();
+                try {
+                    executor.execute(new MetadataExtractionTask(mediaFile, libraryId));
+                    totalSubmitted.incrementAndGet();
+                    taken++;
+                } catch (RejectedExecutionException ignored) {
+                    // 执行队列已满，等待下一轮调度。
+                    stats.inFlight.decrementAndGet();
+                    inFlightIds.remove(mediaFileId);
+                    saturated = true;
+                    leftover++;
+                }
+            }
+            submitted += taken;
+            if (taken < quota && saturated) {
+                fairScheduler.refund(libraryId, quota - taken);
+            }
+            if (drained) {
+                // 已取到该库全部待处理文件，剩余数即为拉取结果中未提交的部分
+                if (leftover > 0) {
+                    pendingByLibrary.put(libraryId, (long) leftover);
+                } else {
+                    pendingByLibrary.remove(libraryId);
+                }
+            } else {
+                long used = taken;
+                pendingByLibrary.computeIfPresent(libraryId, (id, count) -> Math.max(0, count - used));
             }
         }
 
@@ -177,11 +322,92 @@ public class MediaMetadataQueueManager implements Closeable {
         }
     }
 
+    /**
+     * 各媒体库的待处理数（含执行中）、执行中数量与吞吐，按媒体库 ID 升序
+     */
+    public List<LibraryProgress> getLibraryProgress() {
+        Map<Long, Long> pending = loadPendingByLibrary();
+        List<Long> libraryIds = new ArrayList<>(pending.keySet());
+        for (Long libraryId : libraryStats.keySet()) {
+            if (!pending.containsKey(libraryId)) {
+                libraryIds.add(libraryId);
+            }
+        }
+        libraryIds.sort(Long::compare);
+
+        List<LibraryProgress> progress = new ArrayList<>(libraryIds.size());
+        for (Long libraryId : libraryIds) {
+            LibraryStats stats = libraryStats.get(libraryId);
+            int inFlight = stats == null ? 0 : stats.inFlight.get();
+            progress.add(new LibraryProgress(libraryId, weightOf(libraryId), pending.getOrDefault(libraryId, 0L) + inFlight,
+                    inFlight,
+                    stats == null ? 0 : stats.processed.get(),
+                    stats == null ? 0 : stats.failed.get(),
+                    stats == null ? 0 : stats.throughputPerMinute()));
+        }
+        return progress;
+    }
+
+    private Map<Long, Long> loadPendingByLibrary() {
+        long now = System.currentTimeMillis();
+        if (now - pendingByLibraryAt < TimeUnit.SECONDS.toMillis(pendingCountCacheSeconds)) {
+            return pendingByLibrary;
+        }
+        Map<Long, Long> counts = new ConcurrentHashMap<>();
+        for (MediaFileRepository.LibraryPendingView view
+                : mediaFileRepository.countPendingMetadataByLibrary(MatchStatus.PENDING_STABLE)) {
+            if (view.getLibraryId() != null && view.getPending() != null) {
+                // 统计结果包含执行中的文件，扣除后即为尚未提交的数量
+                long remaining = view.getPending() - inFlightOf(view.getLibraryId());
+                if (remaining > 0) {
+                    counts.put(view.getLibraryId(), remaining);
+                }
+            }
+        }
+        pendingByLibrary = counts;
+        pendingByLibraryAt = now;
+        return counts;
+    }
+
+    private void parseLibraryWeights() {
+        libraryWeights.clear();
+        if (libraryWeightsConfig == null || libraryWeightsConfig.isBlank()) {
+            return;
+        }
+        for (String entry : libraryWeightsConfig.split(",")) {
+            String[] parts = entry.trim().split(":");
+            try {
+                if (parts.length != 2) {
+                    throw new NumberFormatException(entry);
+                }
+                libraryWeights.put(Long.parseLong(parts[0].trim()), Math.max(1, Integer.parseInt(parts[1].trim())));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring invalid metadata library weight entry: '{}'", entry.trim());
+            }
+        }
+        if (!libraryWeights.isEmpty()) {
+            log.info("Metadata library weights: {}", libraryWeights);
+        }
+    }
+
+    private int weightOf(Long libraryId) {
+        return libraryWeights.getOrDefault(libraryId, 1);
+    }
+
+    private int inFlightOf(Long libraryId) {
+        LibraryStats stats = libraryStats.get(libraryId);
+        return stats == null ? 0 : stats.inFlight.get();
+    }
+
+    private LibraryStats statsOf(Long libraryId) {
+        return libraryStats.computeIfAbsent(libraryId, id -> new LibraryStats());
+    }
+
     /**
      * 获取队列中待处理的任务数
      */
     public int getQueueSize() {
-        return (int) mediaFileRepository.countByMetadataFetchedFalse();
+        return (int) mediaFileRepository.countByMetadataFetchedFalseAndMatchStatusNot(MatchStatus.PENDING_STABLE);
     }
 
     /**
@@ -242,14 +468,17 @@ public class MediaMetadataQueueManager implements Closeable {
      */
     class MetadataExtractionTask implements Runnable {
         private final MediaFile mediaFile;
+        private final Long libraryId;
 
-        MetadataExtractionTask(MediaFile mediaFile) {
+        MetadataExtractionTask(MediaFile mediaFile, Long libraryId) {
             this.mediaFile = mediaFile;
+            this.libraryId = libraryId;
         }
 
         @Override
         public void run() {
             Long mediaFileId = mediaFile.getId();
+            boolean success = false;
             try {
                 mediaMetadataEnricher.enrichMediaFileSync(mediaFile);
                 if (mediaFileId != null) {
@@ -259,10 +488,12 @@ public class MediaMetadataQueueManager implements Closeable {
                     });
                 }
                 totalProcessed.incrementAndGet();
+                success = true;
             } catch (Exception e) {
                 totalFailed.incrementAndGet();
                 log.error("Metadata extraction task failed for file: {}", mediaFile.getFilePath(), e);
             } finally {
+                statsOf(libraryId).complete(success);
                 if (mediaFileId != null) {
                     inFlightIds.remove(mediaFileId);
                 }
@@ -0,0 +1,267 @@
+package xyz.ezsky.anilink.service;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import xyz.ezsky.anilink.model.entity.MediaFile;
+import xyz.ezsky.anilink.model.entity.MediaLibrary;
+import xyz.ezsky.anilink.model.vo.PathIndexStatsVO;
+import xyz.ezsky.anilink.repository.MediaFileRepository;
+import xyz.ezsky.anilink.repository.MediaLibraryRepository;
+
+import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 媒体库路径索引。
+ *
+ * <p>按媒体库在内存中维护 文件路径 -> (id, 大小, 修改时间, 文件标识) 的紧凑映射，首次访问时通过投影查询加载，
+ * 之后由写入方（{@link MediaFileBatchWriter}、删除接口等）在提交后同步更新。
+ * 扫描和文件监听据此判断文件是否已入库、是否发生变化，不再为单个路径加载整个库的实体。</p>
+ *
+ * <p>同一媒体库的读写与重建在该库的索引对象上串行执行，保证重建期间提交的变更不会被旧数据覆盖。</p>
+ */
+@Log4j2
+@Service
+public class MediaPathIndex {
+
+    /**
+     * 单条索引的估算开销：HashMap 节点（32）+ 桶数组槽位（8）+ Entry 对象（40）+ String 对象头（40）
+     * + 文件标识字符串（约 64）
+     */
+    private static final long ENTRY_OVERHEAD_BYTES = 184;
+
+    @Autowired
+    private MediaFileRepository mediaFileRepository;
+
+    @Autowired
+    private MediaLibraryRepository mediaLibraryRepository;
+
+    private final Map<Long, LibraryIndex> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * 索引中的单个文件。
+     *
+     * @param id           媒体文件 ID
+     * @param size         文件大小
+     * @param lastModified 文件修改时间（毫秒）
+     * @param fileKey      文件系统标识（如 inode），未知时为 null
+     */
+    public record Entry(long id, long size, long lastModified, String fileKey) {
+
+        /**
+         * 判断文件属性是否与索引一致
+         */
+        public boolean matches(long size, long lastModified) {
+            return this.size == size && this.lastModified == lastModified;
+        }
+
+        /**
+         * 文件身份：文件标识 + 大小 + 修改时间，用于识别重命名/移动；文件标识未知时为 null
+         */
+        public String identity() {
+            return identityOf(fileKey, size, lastModified);
+        }
+    }
+
+    /**
+     * 文件系统标识（如 Linux 上的设备号+inode），文件系统不支持时为 null
+     */
+    public static String fileKeyOf(BasicFileAttributes attrs) {
+        Object fileKey = attrs.fileKey();
+        return fileKey != null ? fileKey.toString() : null;
+    }
+
+    /**
+     * 组合文件身份，文件标识为 null 时返回 null（无法可靠识别移动）。
+     *
+     * @param fileKey      文件系统标识
+     * @param size         文件大小
+     * @param lastModified 文件修改时间（毫秒）
+     * @return 身份字符串
+     */
+    public static String identityOf(String fileKey, long size, long lastModified) {
+        return fileKey != null ? fileKey + "/" + size + "/" + lastModified : null;
+    }
+
+    private static final class LibraryIndex {
+        private final Map<String, Entry> entries = new HashMap<>();
+        private boolean loaded;
+        private long builtAt;
+    }
+
+    /**
+     * 查询指定路径的索引项。
+     *
+     * @param libraryId 媒体库 ID
+     * @param filePath  文件绝对路径
+     * @return 索引项，不存在时返回 null
+     */
+    public Entry get(Long libraryId, String filePath) {
+        LibraryIndex index = indexOf(libraryId);
+        synchronized (index) {
+            ensureLoaded(libraryId, index);
+            return index.entries.get(filePath);
+        }
+    }
+
+    /**
+     * 获取指定媒体库索引的副本，供一次扫描内批量比对。
+     *
+     * @param libraryId 媒体库 ID
+     * @return 文件路径 -> 索引项
+     */
+    public Map<String, Entry> snapshot(Long libraryId) {
+        LibraryIndex index = indexOf(libraryId);
+        synchronized (index) {
+            ensureLoaded(libraryId, index);
+            return new HashMap<>(index.entries);
+        }
+    }
+
+    /**
+     * 获取某个目录下（含所有子目录）的索引项副本。
+     *
+     * @param libraryId 媒体库 ID
+     * @param dirPath   目录绝对路径
+     * @return 文件路径 -> 索引项
+     */
+    public Map<String, Entry> entriesUnder(Long libraryId, String dirPath) {
+        String prefix = dirPath.endsWith(File.separator) ? dirPath : dirPath + File.separator;
+        LibraryIndex index = indexOf(libraryId);
+        synchronized (index) {
+            ensureLoaded(libraryId, index);
+            Map<String, Entry> entries = new HashMap<>();
+            index.entries.forEach((path, entry) -> {
+                if (path.startsWith(prefix)) {
+                    entries.put(path, entry);
+                }
+            });
+            return entries;
+        }
+    }
+
+    /**
+     * 记录已落库的媒体文件（新增或更新）。
+     */
+    public void put(MediaFile mediaFile) {
+        if (mediaFile.getId() == null || mediaFile.getLibrary() == null) {
+            return;
+        }
+        LibraryIndex index = indexOf(mediaFile.getLibrary().getId());
+        synchronized (index) {
+            // 未加载的索引在首次访问时从数据库读取，无需在此写入
+            if (index.loaded) {
+                index.entries.put(mediaFile.getFilePath(),
+                        new Entry(mediaFile.getId(), mediaFile.getSize(), mediaFile.getLastModified(), mediaFile.getFileKey()));
+            }
+        }
+    }
+
+    /**
+     * 直接替换已落库文件的索引条目，用于只更新个别列（如补写文件标识）而未加载实体的场景。
+     */
+    public void put(Long libraryId, String filePath, Entry entry) {
+        LibraryIndex index = indexOf(libraryId);
+        synchronized (index) {
+            if (index.loaded) {
+                index.entries.put(filePath, entry);
+            }
+        }
+    }
+
+    /**
+     * 移除已删除的媒体文件。
+     */
+    public void remove(Long libraryId, String filePath) {
+        LibraryIndex index = indexes.get(libraryId);
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            index.entries.remove(filePath);
+        }
+    }
+
+    /**
+     * 丢弃指定媒体库的索引（如媒体库被删除）。
+     */
+    public void evict(Long libraryId) {
+        indexes.remove(libraryId);
+    }
+
+    /**
+     * 从数据库重建指定媒体库的索引。
+     *
+     * @param libraryId 媒体库 ID
+     * @return 重建后的文件数
+     */
+    public int rebuild(Long libraryId) {
+        LibraryIndex index = indexOf(libraryId);
+        synchronized (index) {
+            index.loaded = false;
+            ensureLoaded(libraryId, index);
+            return index.entries.size();
+        }
+    }
+
+    /**
+     * 从数据库重建所有媒体库的索引。
+     */
+    public void rebuildAll() {
+        for (MediaLibrary library : mediaLibraryRepository.findAll()) {
+            rebuild(library.getId());
+        }
+    }
+
+    /**
+     * 获取已加载索引的条目数与估算内存占用。
+     */
+    public List<PathIndexStatsVO> getStats() {
+        List<PathIndexStatsVO> stats = new ArrayList<>();
+        indexes.forEach((libraryId, index) -> {
+            synchronized (index) {
+                if (!index.loaded) {
+                    return;
+                }
+                long bytes = 0;
+                for (String path : index.entries.keySet()) {
+                    // 路径字符串按 UTF-16 保守估算
+                    bytes += ENTRY_OVERHEAD_BYTES + 2L * path.length();
+                }
+                stats.add(PathIndexStatsVO.builder()
+                        .libraryId(libraryId)
+                        .entries(index.entries.size())
+                        .estimatedBytes(bytes)
+                        .builtAt(index.builtAt)
+                        .build());
+            }
+        });
+        return stats;
+    }
+
+    private LibraryIndex indexOf(Long libraryId) {
+        return indexes.computeIfAbsent(libraryId, id -> new LibraryIndex());
+    }
+
+    private void ensureLoaded(Long libraryId, LibraryIndex index) {
+        if (index.loaded) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        index.entries.clear();
+        for (MediaFileRepository.PathView view : mediaFileRepository.findPathViewsByLibraryId(libraryId)) {
+            index.entries.put(view.getFilePath(),
+                    new Entry(view.getId(), view.getSize(), view.getLastModified(), view.getFileKey()));
+        }
+        index.loaded = true;
+        index.builtAt = System.currentTimeMillis();
+        log.info("Built path index for library {}: {} entries in {} ms",
+                libraryId, index.entries.size(), index.builtAt - start);
+    }
+}
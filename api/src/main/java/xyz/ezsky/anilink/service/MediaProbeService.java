@@ -5,6 +5,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
 import xyz.ezsky.anilink.model.dto.MediaMetadata;
+import xyz.ezsky.anilink.model.dto.MediaProbeResult;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -25,6 +26,7 @@ import java.util.List;
  * - 使用流式读取避免大块 JSON 加载到内存
  * - 并发调用使用共享的 ObjectMapper
  * - 错误处理基于超时和进程退出状态
+ * - 每个文件只启动一次 FFprobe，{@link MediaProbeResult} 供技术信息解析与内封字幕抽取共用
  */
 @Log4j2
 @Service
@@ -39,12 +41,47 @@ public class MediaProbeService {
      * @return MediaMetadata 对象，包含所有提取的信息或错误信息
      */
     public MediaMetadata parseMediaInfo(Path filePath) {
+        return parseMediaInfo(probe(filePath));
+    }
+
+    /**
+     * 探测视频文件的格式与全部流信息
+     *
+     * @param filePath 视频文件的绝对路径
+     * @return 探测结果，失败时 success 为 false
+     */
+    public MediaProbeResult probe(Path filePath) {
+        long startTime = System.currentTimeMillis();
         try {
             JsonNode ffprobeOutput = executeFFprobe(filePath.toAbsolutePath().toString());
+            return MediaProbeResult.builder()
+                    .success(ffprobeOutput != null)
+                    .root(ffprobeOutput)
+                    .errorMessage(ffprobeOutput == null ? "FFprobe output is null" : null)
+                    .elapsedMs(System.currentTimeMillis() - startTime)
+                    .build();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failedProbe(e, startTime);
+        } catch (Exception e) {
+            log.error("Error probing media file: {}", filePath, e);
+            return failedProbe(e, startTime);
+        }
+    }
+
+    /**
+     * 从已有的探测结果中解析元数据
+     *
+     * @param probe 探测结果
+     * @return MediaMetadata 对象，包含所有提取的信息或错误信息
+     */
+    public MediaMetadata parseMediaInfo(MediaProbeResult probe) {
+        try {
+            JsonNode ffprobeOutput = probe.isSuccess() ? probe.getRoot() : null;
             if (ffprobeOutput == null) {
                 return MediaMetadata.builder()
                         .success(false)
-                        .errorMessage("FFprobe output is null")
+                        .errorMessage(probe.getErrorMessage() != null ? probe.getErrorMessage() : "FFprobe output is null")
                         .build();
             }
 
@@ -62,7 +99,7 @@ public class MediaProbeService {
             metadata.setSuccess(true);
             return metadata;
         } catch (Exception e) {
-            log.error("Error parsing media info for file: {}", filePath, e);
+            log.error("Error parsing media info", e);
             return MediaMetadata.builder()
                     .success(false)
                     .errorMessage(e.getMessage())
@@ -70,6 +107,14 @@ public class MediaProbeService {
         }
     }
 
+    private MediaProbeResult failedProbe(Exception e, long startTime) {
+        return MediaProbeResult.builder()
+                .success(false)
+                .errorMessage(e.getMessage())
+                .elapsedMs(System.currentTimeMillis() - startTime)
+                .build();
+    }
+
     /**
      * 执行 FFprobe 命令并解析 JSON 输出
      *
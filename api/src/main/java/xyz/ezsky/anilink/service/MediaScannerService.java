@@ -3,25 +3,28 @@ package xyz.ezsky.anilink.service;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import xyz.ezsky.anilink.model.entity.MediaDirectorySnapshot;
 import xyz.ezsky.anilink.model.entity.MediaFile;
 import xyz.ezsky.anilink.model.entity.MediaLibrary;
 import xyz.ezsky.anilink.model.entity.MatchStatus;
 import xyz.ezsky.anilink.repository.MediaFileRepository;
 import xyz.ezsky.anilink.repository.MediaLibraryRepository;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 /**
  * 媒体库扫描与监控服务。
@@ -29,8 +32,8 @@ import java.util.stream.Collectors;
  * <p>该服务负责：</p>
  * <ul>
  *   <li>扫描数据库中已注册的媒体库并索引视频文件（如 mp4/mkv/avi/mov）。</li>
- *   <li>在首次扫描后启动对媒体库目录的文件系统监听，处理新增、修改和删除事件。</li>
- *   <li>对文件修改采用延迟合并策略以避免短时间内的重复处理。</li>
+ *   <li>在首次扫描后启动对媒体库目录的文件系统监听（见 {@link MediaLibraryWatcher}），处理新增、修改和删除事件。</li>
+ *   <li>文件修改经 {@link MediaFileEventDebouncer} 合并，静默期过后按批处理，避免写入过程中的重复处理。</li>
  * </ul>
  *
  * 注意：实现依赖 Spring 管理的 {@code MediaLibraryRepository} 和 {@code MediaFileRepository}。
@@ -46,46 +49,146 @@ public class MediaScannerService {
     private MediaFileRepository mediaFileRepository;
 
     @Autowired
-    private MediaMetadataQueueManager metadataQueueManager;
+    private MediaLibraryWalker mediaLibraryWalker;
 
     @Autowired
-    private MediaSubtitleService mediaSubtitleService;
+    private MediaFileBatchWriter mediaFileBatchWriter;
 
     @Autowired
-    private MediaMatchQueueManager mediaMatchQueueManager;
+    private MediaDirectorySnapshotService mediaDirectorySnapshotService;
 
+    @Autowired
+    private MediaPathIndex mediaPathIndex;
+
+    @Autowired
+    private MediaLibraryWatcher mediaLibraryWatcher;
+
+    @Autowired
+    private MediaLibraryPoller mediaLibraryPoller;
+
+    @Autowired
+    private MediaFileEventDebouncer mediaFileEventDebouncer;
+
+    @Autowired
+    private MediaFileStabilityGate mediaFileStabilityGate;
+
+    // 仅执行扫描任务；文件监听由 MediaLibraryWatcher 的独立线程负责，不会占满该线程池
     private final ExecutorService executorService = Executors.newFixedThreadPool(4);
     private final ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
-    private final Map<Path, ScheduledFuture<?>> scheduledTasks = new ConcurrentHashMap<>();
-    private final Map<Long, WatchService> watchServices = new ConcurrentHashMap<>();
-    private final Map<Long, Map<WatchKey, Path>> watchKeyPaths = new ConcurrentHashMap<>();
+    private final Map<Long, Object> scanLocks = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Path>> pendingRescanDirs = new ConcurrentHashMap<>();
+    private final Map<String, PendingMove> pendingMoves = new ConcurrentHashMap<>();
 
     /**
-     * 扫描所有已注册的媒体库。
+     * 监听到删除后等待配对新文件的秒数，需大于新增事件的去抖延迟
+     */
+    private static final long MOVE_CORRELATION_SECONDS = 10;
+
+    /**
+     * 监听到删除、等待与新出现文件配对的记录
+     *
+     * @param libraryId 所属媒体库 ID
+     * @param oldPath   删除前的绝对路径
+     * @param entry     删除前的索引项
+     */
+    private record PendingMove(Long libraryId, String oldPath, MediaPathIndex.Entry entry) {
+    }
+
+    /**
+     * 收到 OVERFLOW 或轮询变化后等待的秒数，期间同一媒体库的后续通知合并为一次重扫
+     */
+    private static final long DIRECTORY_RESCAN_DELAY_SECONDS = 2;
+
+    private final MediaLibraryWatcher.EventHandler watchEventHandler = new MediaLibraryWatcher.EventHandler() {
+        @Override
+        public void onFileChanged(MediaLibrary library, Path file) {
+            mediaFileEventDebouncer.submit(library, file, MediaScannerService.this::processChangedFiles);
+        }
+
+        @Override
+        public void onFileDeleted(MediaLibrary library, Path file) {
+            deleteFile(library, file.toAbsolutePath().toString());
+        }
+
+        @Override
+        public void onDirectoryCreated(MediaLibrary library, Path directory) {
+            // 移入的目录已带有文件，不会再逐个产生事件，按子树增量扫描（可与移出的记录配对）
+            scheduleDirectoryRescan(library, directory);
+        }
+
+        @Override
+        public void onDirectoryDeleted(MediaLibrary library, Path directory) {
+            deleteDirectory(library, directory.toAbsolutePath().toString());
+        }
+
+        @Override
+        public void onOverflow(MediaLibrary library, Path directory) {
+            log.warn("Watch events overflowed for library {}: {}", library.getName(), directory);
+            scheduleDirectoryRescan(library, directory);
+        }
+    };
+
+    private final MediaLibraryPoller.ChangeHandler pollChangeHandler = this::scheduleDirectoryRescan;
+
+    /**
+     * 完整扫描所有已注册的媒体库。
      *
      * <p>该方法会并发提交每个媒体库的扫描任务到内部线程池。</p>
      */
     public void scanAllLibraries() {
+        scanAllLibraries(true);
+    }
+
+    /**
+     * 扫描所有已注册的媒体库。
+     *
+     * @param fullScan true 表示忽略目录快照完整扫描；false 表示只列出快照发生变化的目录
+     */
+    public void scanAllLibraries(boolean fullScan) {
         List<MediaLibrary> libraries = mediaLibraryRepository.findAll();
         for (MediaLibrary library : libraries) {
-            scanLibraryAsync(library);
+            scanLibraryAsync(library, fullScan);
         }
     }
 
     /**
-     * 异步扫描指定媒体库。
+     * 异步完整扫描指定媒体库。
      */
     public void scanLibraryAsync(MediaLibrary library) {
-        executorService.submit(() -> scanLibrary(library));
+        scanLibraryAsync(library, true);
     }
 
     /**
-     * 扫描指定的媒体库目录，将发现的视频文件记录到数据库，并移除数据库中已删除的文件记录。
+     * 异步扫描指定媒体库。
+     */
+    public void scanLibraryAsync(MediaLibrary library, boolean fullScan) {
+        executorService.submit(() -> scanLibrary(library, fullScan));
+    }
+
+    /**
+     * 完整扫描指定的媒体库目录。
      *
      * @param library 要扫描的媒体库实体（包含路径信息）
      */
     public void scanLibrary(MediaLibrary library) {
-        log.info("Scanning library: {}", library.getName());
+        scanLibrary(library, true);
+    }
+
+    /**
+     * 扫描指定的媒体库目录，将发现的视频文件记录到数据库，并移除数据库中已删除的文件记录。
+     *
+     * <p>目录遍历按媒体库配置的并行度执行（见 {@link MediaLibraryWalker}），并行与顺序两种模式的处理结果一致。</p>
+     * <p>新增、更新与删除统一经过 {@link MediaFileBatchWriter} 分批落库，避免逐行提交。</p>
+     * <p>已有记录通过 {@link MediaPathIndex} 比对，只有大小或修改时间变化的文件才会加载实体。</p>
+     * <p>增量模式下只列出目录快照发生变化的目录：
+     * 列过的目录中未再出现的记录、以及所在目录已不存在的记录会被删除，未变化目录下的记录保持不变。
+     * 原地覆盖写入不会改变目录修改时间，这类变化由文件监听或完整扫描负责。</p>
+     *
+     * @param library  要扫描的媒体库实体（包含路径信息）
+     * @param fullScan true 表示完整扫描（仍会刷新目录快照）
+     */
+    public void scanLibrary(MediaLibrary library, boolean fullScan) {
+        log.info("Scanning library: {} ({})", library.getName(), fullScan ? "full" : "incremental");
         try {
             Path libraryPath = Paths.get(library.getPath());
             if (!Files.exists(libraryPath) || !Files.isDirectory(libraryPath)) {
@@ -112,28 +215,7 @@ public class MediaScannerService {
                 log.warn("Failed to update library status to OK for {}", library.getName(), ex);
             }
 
-            List<MediaFile> existingFiles = mediaFileRepository.findByLibraryId(library.getId());
-            Map<String, MediaFile> existingFilesMap = existingFiles.stream()
-                    .collect(Collectors.toMap(MediaFile::getFilePath, Function.identity()));
-
-            Files.walkFileTree(libraryPath, new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                    if (isVideoFile(file)) {
-                        processFile(library, file, attrs, existingFilesMap);
-                    }
-                    return FileVisitResult.CONTINUE;
-                }
-            });
-
-            // 删除数据库中已不存在的文件记录
-            for (MediaFile mediaFile : existingFiles) {
-                if (!Files.exists(Paths.get(mediaFile.getFilePath()))) {
-                    mediaSubtitleService.cleanupByMediaFileId(mediaFile.getId());
-                    mediaFileRepository.delete(mediaFile);
-                    log.info("Removed deleted file: {}", mediaFile.getFilePath());
-                }
-            }
+            scanTree(library, libraryPath, fullScan, Set.of());
 
             // 扫描完成后启动对该库的监听
             startWatching(library);
@@ -143,43 +225,176 @@ public class MediaScannerService {
         }
     }
 
+    /**
+     * 扫描媒体库中的一棵目录子树（可为媒体库根目录），同一媒体库的扫描串行执行。
+     *
+     * @param library     所属媒体库
+     * @param scanRoot    子树根目录
+     * @param fullScan    true 表示忽略目录快照
+     * @param forceListed 即使快照未变化也必须列出内容的目录（绝对路径）
+     * @throws IOException 遍历失败
+     */
+    private void scanTree(MediaLibrary library, Path scanRoot, boolean fullScan, Set<String> forceListed) throws IOException {
+        String rootKey = scanRoot.toAbsolutePath().toString();
+        boolean wholeLibrary = Paths.get(library.getPath()).toAbsolutePath().equals(scanRoot.toAbsolutePath());
+        String label = wholeLibrary ? "library " + library.getName() : "library " + library.getName() + " subtree " + rootKey;
+
+        synchronized (scanLocks.computeIfAbsent(library.getId(), id -> new Object())) {
+            Map<String, MediaDirectorySnapshot> snapshots = mediaDirectorySnapshotService.load(library.getId());
+            Map<String, MediaLibraryWalker.DirectoryState> previous = new HashMap<>();
+            if (!fullScan) {
+                previous.putAll(mediaDirectorySnapshotService.toStates(snapshots));
+                previous.keySet().removeAll(forceListed);
+            }
+
+            // 遍历阶段（可并行）只负责列目录和读取属性，结果按路径排序后再顺序交给新增/更新逻辑。
+            int parallelism = mediaLibraryWalker.resolveParallelism(library.getScanParallelism());
+            long walkStart = System.currentTimeMillis();
+            MediaLibraryWalker.WalkResult walkResult = mediaLibraryWalker.walk(scanRoot, parallelism, this::isVideoFile, previous);
+            List<MediaLibraryWalker.ScannedFile> scannedFiles = walkResult.files();
+
+            Set<String> visitedDirs = new HashSet<>();
+            Set<String> listedDirs = new HashSet<>();
+            for (MediaLibraryWalker.VisitedDirectory directory : walkResult.directories()) {
+                visitedDirs.add(directory.path());
+                if (directory.listed()) {
+                    listedDirs.add(directory.path());
+                }
+            }
+            log.info("Walked {} with parallelism {}: listed {} of {} directories, {} video files in {} ms",
+                    label, parallelism, listedDirs.size(), visitedDirs.size(), scannedFiles.size(),
+                    System.currentTimeMillis() - walkStart);
+
+            if (fullScan && wholeLibrary) {
+                // 完整扫描顺带从数据库重建路径索引，修正可能的偏差
+                mediaPathIndex.rebuild(library.getId());
+            }
+            Map<String, MediaPathIndex.Entry> indexed = mediaPathIndex.snapshot(library.getId());
+            if (!wholeLibrary) {
+                // 子树扫描只比对子树内的记录
+                String prefix = rootKey + File.separator;
+                indexed.keySet().removeIf(path -> !path.startsWith(prefix));
+            }
+            Set<String> scannedPaths = new HashSet<>(scannedFiles.size());
+            for (MediaLibraryWalker.ScannedFile scannedFile : scannedFiles) {
+                scannedPaths.add(scannedFile.path().toAbsolutePath().toString());
+            }
+
+            // 数据库中已不存在的文件记录：所在目录已列出但文件未出现，或所在目录已不存在。
+            // 有文件身份的记录先留作移动候选，与本次新出现的文件配对后只更新路径。
+            Map<String, String> removedByIdentity = new HashMap<>();
+            List<String> removedPaths = new ArrayList<>();
+            for (Map.Entry<String, MediaPathIndex.Entry> entry : indexed.entrySet()) {
+                String filePath = entry.getKey();
+                Path parent = Paths.get(filePath).getParent();
+                String parentDir = parent != null ? parent.toString() : "";
+                boolean removed = listedDirs.contains(parentDir)
+                        ? !scannedPaths.contains(filePath)
+                        : !visitedDirs.contains(parentDir);
+                if (removed) {
+                    String identity = entry.getValue().identity();
+                    if (identity == null || removedByIdentity.putIfAbsent(identity, filePath) != null) {
+                        removedPaths.add(filePath);
+                    }
+                }
+            }
+
+            long persistStart = System.currentTimeMillis();
+            try (MediaFileBatchWriter.Sink sink = mediaFileBatchWriter.openSink(label)) {
+                for (MediaLibraryWalker.ScannedFile scannedFile : scannedFiles) {
+                    String filePath = scannedFile.path().toAbsolutePath().toString();
+                    MediaPathIndex.Entry entry = indexed.get(filePath);
+                    if (entry == null && !removedByIdentity.isEmpty()) {
+                        String oldPath = removedByIdentity.remove(identityOf(scannedFile.attrs()));
+                        if (oldPath != null && moveFile(library, indexed.get(oldPath), oldPath, scannedFile.path(), sink)) {
+                            continue;
+                        }
+                        if (oldPath != null) {
+                            removedPaths.add(oldPath);
+                        }
+                    }
+                    if (entry == null) {
+                        // 监听到删除、仍在配对窗口内的记录（如整个目录移到本子树下）
+                        PendingMove pendingMove = takePendingMove(library, scannedFile.attrs());
+                        if (pendingMove != null
+                                && moveFile(library, pendingMove.entry(), pendingMove.oldPath(), scannedFile.path(), sink)) {
+                            continue;
+                        }
+                    }
+                    processFile(library, scannedFile.path(), scannedFile.attrs(), entry, sink);
+                }
+
+                // 未配对的移动候选按删除处理
+                removedPaths.addAll(removedByIdentity.values());
+                for (String filePath : removedPaths) {
+                    sink.delete(library.getId(), indexed.get(filePath).id(), filePath);
+                }
+
+                sink.flush();
+                long elapsed = Math.max(1, System.currentTimeMillis() - walkStart);
+                log.info("Scanned {}: {} files in {} ms ({} files/s), added={}, updated={}, moved={}, removed={}, persist={} ms",
+                        label, scannedFiles.size(), elapsed,
+                        String.format("%.1f", scannedFiles.size() * 1000d / elapsed),
+                        sink.getInserted(), sink.getUpdated(), sink.getMoved(), sink.getDeleted(),
+                        System.currentTimeMillis() - persistStart);
+
+                // 只有在文件记录全部落库后才推进快照，否则下次扫描会跳过写入失败的目录
+                if (sink.getFailed() == 0) {
+                    mediaDirectorySnapshotService.save(library.getId(), snapshots, walkResult.directories(), walkStart,
+                            wholeLibrary ? null : rootKey);
+                } else {
+                    log.warn("Skipped directory snapshot update for {} because {} media files failed to persist",
+                            label, sink.getFailed());
+                }
+            }
+        }
+    }
+
     /**
      * 处理单个文件：如果已存在则比较并更新元数据，否则新增记录。
      * 
      * 基础信息（文件路径、大小、修改时间）直接保存。
      * 完整的技术元数据（分辨率、编码等）通过异步队列在后台处理。
+     * 大小和修改时间与索引一致时直接跳过，不访问数据库。
+     * 刚修改过的文件标记为 {@link MatchStatus#PENDING_STABLE}，稳定后才进入 hash/匹配/元数据队列。
      *
-     * @param library          所属的媒体库实体
-     * @param file             要处理的文件路径
-     * @param attrs            文件属性（如大小、最后修改时间）
-     * @param existingFilesMap 当前媒体库中已存在文件的映射（filePath -> MediaFile）
+     * @param library 所属的媒体库实体
+     * @param file    要处理的文件路径
+     * @param attrs   文件属性（如大小、最后修改时间）
+     * @param indexed 路径索引中该文件的记录，未入库时为 null
+     * @param sink    批量写入缓冲区，落库及入队由其在批次提交后完成
      */
-    private void processFile(MediaLibrary library, Path file, BasicFileAttributes attrs, Map<String, MediaFile> existingFilesMap) {
+    private void processFile(MediaLibrary library, Path file, BasicFileAttributes attrs,
+                             MediaPathIndex.Entry indexed, MediaFileBatchWriter.Sink sink) {
         String filePath = file.toAbsolutePath().toString();
-        MediaFile existingFile = existingFilesMap.get(filePath);
+        String fileKey = MediaPathIndex.fileKeyOf(attrs);
+        if (indexed != null && indexed.matches(attrs.size(), attrs.lastModifiedTime().toMillis())) {
+            if (indexed.fileKey() == null && fileKey != null) {
+                // 升级前入库的记录没有文件标识，列目录时补上，之后即可识别移动
+                sink.backfillFileKey(library.getId(), filePath, indexed, fileKey);
+            }
+            return;
+        }
 
+        boolean settled = mediaFileStabilityGate.isSettled(attrs);
+        MediaFile existingFile = indexed != null ? mediaFileRepository.findById(indexed.id()).orElse(null) : null;
         if (existingFile != null) {
-            if (existingFile.getLastModified() != attrs.lastModifiedTime().toMillis() || existingFile.getSize() != attrs.size()) {
-                existingFile.setLastModified(attrs.lastModifiedTime().toMillis());
-                existingFile.setSize(attrs.size());
-                // 重置元数据提取标志，以便重新提取
-                existingFile.setMetadataFetched(false);
-                // 文件内容变化后，清空旧 hash/匹配结果，避免后续匹配误用历史数据。
-                existingFile.setHash(null);
-                existingFile.setMatchStatus(MatchStatus.UNMATCHED);
-                existingFile.setEpisodeId(null);
-                existingFile.setAnimeId(null);
-                existingFile.setAnimeTitle(null);
-                existingFile.setEpisodeTitle(null);
-                mediaFileRepository.save(existingFile);
-                log.info("Updated file: {}", filePath);
-
-                // 文件记录更新后立即入匹配队列，避免等待 FFprobe 链路。
-                mediaMatchQueueManager.addToQueue(existingFile.getId());
-                
-                // 仅触发后台处理器；具体任务由处理器按库内待处理文件分批拉取。
-                metadataQueueManager.triggerProcessing();
-            }
+            existingFile.setLastModified(attrs.lastModifiedTime().toMillis());
+            existingFile.setSize(attrs.size());
+            existingFile.setFileKey(fileKey);
+            // 重置元数据提取标志，以便重新提取
+            existingFile.setMetadataFetched(false);
+            // 文件内容变化后，清空旧 hash/匹配结果，避免后续匹配误用历史数据。
+            existingFile.setHash(null);
+            existingFile.setMatchStatus(settled ? MatchStatus.UNMATCHED : MatchStatus.PENDING_STABLE);
+            existingFile.setMatchAttempts(0);
+            existingFile.setNextMatchAttemptAt(null);
+            existingFile.setEpisodeId(null);
+            existingFile.setAnimeId(null);
+            existingFile.setAnimeTitle(null);
+            existingFile.setEpisodeTitle(null);
+            sink.update(existingFile);
+            log.info("Updated file: {}", filePath);
         } else {
             MediaFile newMediaFile = new MediaFile();
             newMediaFile.setLibrary(library);
@@ -187,188 +402,276 @@ public class MediaScannerService {
             newMediaFile.setFileName(file.getFileName().toString());
             newMediaFile.setLastModified(attrs.lastModifiedTime().toMillis());
             newMediaFile.setSize(attrs.size());
+            newMediaFile.setFileKey(fileKey);
             newMediaFile.setMetadataFetched(false);  // 标记待提取元数据
-            MediaFile savedFile = mediaFileRepository.save(newMediaFile);
+            if (!settled) {
+                // 仍可能在写入，稳定后由 MediaFileStabilityGate 放行到各队列
+                newMediaFile.setMatchStatus(MatchStatus.PENDING_STABLE);
+            }
+            sink.insert(newMediaFile);
             log.info("Added new file: {}", filePath);
+        }
+    }
 
-            // 新文件落库后立即入匹配队列，匹配所需字段由匹配队列自行补齐（hash）。
-            mediaMatchQueueManager.addToQueue(savedFile.getId());
-            
-            // 仅触发后台处理器；具体任务由处理器按库内待处理文件分批拉取。
-            metadataQueueManager.triggerProcessing();
+    /**
+     * 将已入库的记录改为新路径（重命名/移动），保留 hash、匹配结果、元数据与字幕。
+     *
+     * @param library 所属媒体库
+     * @param moved   移动前路径的索引项
+     * @param oldPath 移动前的绝对路径
+     * @param newFile 移动后的文件
+     * @param sink    批量写入缓冲区
+     * @return 记录已不存在时返回 false，由调用方按新文件处理
+     */
+    private boolean moveFile(MediaLibrary library, MediaPathIndex.Entry moved, String oldPath, Path newFile,
+                             MediaFileBatchWriter.Sink sink) {
+        MediaFile existingFile = mediaFileRepository.findById(moved.id()).orElse(null);
+        if (existingFile == null) {
+            return false;
         }
+        existingFile.setFilePath(newFile.toAbsolutePath().toString());
+        existingFile.setFileName(newFile.getFileName().toString());
+        sink.move(existingFile, oldPath);
+        log.debug("Detected move in library {}: {} -> {}", library.getName(), oldPath, existingFile.getFilePath());
+        return true;
+    }
+
+    private static String identityOf(BasicFileAttributes attrs) {
+        return MediaPathIndex.identityOf(MediaPathIndex.fileKeyOf(attrs), attrs.size(), attrs.lastModifiedTime().toMillis());
     }
 
     /**
-     * 为指定的媒体库目录启动文件系统监听（CREATE/DELETE/MODIFY）。
+     * 按媒体库的检测方式启动变更检测。
      *
-     * <p>监听到事件后会根据事件类型决定是立即删除数据库记录还是对文件进行延迟合并处理。</p>
+     * <p>NATIVE：由 {@link MediaLibraryWatcher} 的单一事件循环线程监听（CREATE/DELETE/MODIFY），不占用扫描线程池；
+     * 删除事件经过移动配对窗口后删除数据库记录，新增/修改事件经去抖合并后批量处理。</p>
+     *
+     * <p>POLLING：由 {@link MediaLibraryPoller} 定期比对目录快照，发生变化的目录走与事件溢出相同的增量重扫。</p>
      *
      * @param library 需要监控的媒体库实体
      */
     private void startWatching(MediaLibrary library) {
-        try {
-            // 避免重复监听造成资源泄漏
-            stopWatching(library.getId());
+        if (library.getWatchMode() == MediaLibrary.WatchMode.POLLING) {
+            mediaLibraryWatcher.unwatch(library.getId());
+            mediaLibraryPoller.poll(library, pollChangeHandler);
+        } else {
+            mediaLibraryPoller.unpoll(library.getId());
+            mediaLibraryWatcher.watch(library, watchEventHandler);
+        }
+    }
 
-            WatchService watchService = FileSystems.getDefault().newWatchService();
-            Path path = Paths.get(library.getPath());
-            Map<WatchKey, Path> keyMap = new ConcurrentHashMap<>();
-            registerAllDirectories(path, watchService, keyMap);
+    /**
+     * 停止对指定媒体库的变更检测（文件系统监听或轮询）并释放资源。
+     *
+     * @param libraryId 媒体库在数据库中的 ID
+     */
+    public void stopWatching(Long libraryId) {
+        mediaLibraryWatcher.unwatch(libraryId);
+        mediaLibraryPoller.unpoll(libraryId);
+    }
 
-            watchServices.put(library.getId(), watchService);
-            watchKeyPaths.put(library.getId(), keyMap);
+    /**
+     * 简单的文件类型判断，仅识别常见的视频扩展名（不区分大小写）。
+     *
+     * @param file 待判断的文件路径
+     * @return 如果是支持的视频文件返回 true，否则返回 false
+     */
+    private boolean isVideoFile(Path file) {
+        String fileName = file.toString().toLowerCase();
+        return fileName.endsWith(".mp4") || fileName.endsWith(".mkv") || fileName.endsWith(".avi") || fileName.endsWith(".mov");
+    }
 
-            executorService.submit(() -> {
+    /**
+     * 静默期已过的一批变更文件：在同一个写入缓冲区中新增、更新或识别为移动，一次提交。
+     *
+     * <p>去抖由 {@link MediaFileEventDebouncer} 完成，持续写入中的文件不会在此出现。</p>
+     *
+     * @param library 所属媒体库
+     * @param files   要处理的文件路径
+     */
+    private void processChangedFiles(MediaLibrary library, List<Path> files) {
+        try (MediaFileBatchWriter.Sink sink = mediaFileBatchWriter.openSink(library.getName(), MatchPriority.WATCHER)) {
+            for (Path file : files) {
+                if (!isVideoFile(file) || !Files.exists(file)) {
+                    continue;
+                }
                 try {
-                    WatchKey key;
-                    while ((key = watchService.take()) != null) {
-                        Path watchedPath = keyMap.get(key);
-                        if (watchedPath == null) {
-                            key.reset();
-                            continue;
-                        }
-
-                        for (WatchEvent<?> event : key.pollEvents()) {
-                            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
-                                continue;
-                            }
-
-                            Path changedFile = (Path) event.context();
-                            Path fullPath = watchedPath.resolve(changedFile);
-
-                            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(fullPath)) {
-                                registerAllDirectories(fullPath, watchService, keyMap);
-                                continue;
-                            }
-
-                            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
-                                deleteFile(fullPath.toAbsolutePath().toString());
-                            } else {
-                                if (!Files.isDirectory(fullPath)) {
-                                    scheduleFileProcessing(library, fullPath);
-                                }
-                            }
-                        }
-
-                        if (!key.reset()) {
-                            keyMap.remove(key);
-                            if (keyMap.isEmpty()) {
-                                break;
-                            }
-                        }
+                    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                    String filePath = file.toAbsolutePath().toString();
+                    MediaPathIndex.Entry indexed = mediaPathIndex.get(library.getId(), filePath);
+                    PendingMove pendingMove = indexed == null ? takePendingMove(library, attrs) : null;
+                    if (pendingMove == null
+                            || !moveFile(library, pendingMove.entry(), pendingMove.oldPath(), file, sink)) {
+                        processFile(library, file, attrs, indexed, sink);
                     }
-                } catch (InterruptedException e) {
-                    log.info("Watch service interrupted for library: {}", library.getName());
-                } catch (ClosedWatchServiceException ignored) {
-                    log.info("Watch service closed for library: {}", library.getName());
                 } catch (IOException e) {
-                    log.error("Error registering watched directory for library: {}", library.getName(), e);
+                    log.error("Error processing file: " + file, e);
                 }
-            });
-            log.info("Started watching library: {}", library.getName());
-        } catch (IOException e) {
-            log.error("Could not start watch service for library: " + library.getName(), e);
+            }
         }
     }
 
     /**
-     * 停止对指定媒体库的文件系统监听并释放资源。
+     * 安排一次目录增量重扫（监听事件溢出或轮询发现目录变化）：延迟窗口内同一媒体库的多次通知合并为一个任务，
+     * 只扫描通知的目录（合并到最上层目录），通知的目录本身强制重新列出内容。
      *
-     * @param libraryId 媒体库在数据库中的 ID
+     * @param library   所属媒体库
+     * @param directory 需要重扫的目录
      */
-    public void stopWatching(Long libraryId) {
-        WatchService watchService = watchServices.get(libraryId);
-        if (watchService != null) {
-            try {
-                watchService.close();
-                watchServices.remove(libraryId);
-                watchKeyPaths.remove(libraryId);
-                log.info("Stopped watching library with id: {}", libraryId);
-            } catch (IOException e) {
-                log.error("Error stopping watch service for library id: " + libraryId, e);
-            }
+    private void scheduleDirectoryRescan(MediaLibrary library, Path directory) {
+        Set<Path> pending = pendingRescanDirs.computeIfAbsent(library.getId(), id -> new HashSet<>());
+        boolean first;
+        synchronized (pending) {
+            first = pending.isEmpty();
+            pending.add(directory.toAbsolutePath());
+        }
+        if (first) {
+            log.info("Scheduling directory rescan for library {}", library.getName());
+            scheduledExecutor.schedule(() -> executorService.submit(() -> runDirectoryRescan(library)),
+                    DIRECTORY_RESCAN_DELAY_SECONDS, TimeUnit.SECONDS);
         }
     }
 
-    private void registerAllDirectories(Path root, WatchService watchService, Map<WatchKey, Path> keyMap) throws IOException {
-        if (!Files.exists(root) || !Files.isDirectory(root)) {
+    private void runDirectoryRescan(MediaLibrary library) {
+        Set<Path> pending = pendingRescanDirs.get(library.getId());
+        if (pending == null) {
             return;
         }
+        List<Path> dirs;
+        synchronized (pending) {
+            dirs = new ArrayList<>(pending);
+            pending.clear();
+        }
 
-        Files.walkFileTree(root, new SimpleFileVisitor<>() {
-            @Override
-            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-                WatchKey key = dir.register(
-                        watchService,
-                        StandardWatchEventKinds.ENTRY_CREATE,
-                        StandardWatchEventKinds.ENTRY_DELETE,
-                        StandardWatchEventKinds.ENTRY_MODIFY
-                );
-                keyMap.put(key, dir);
-                return FileVisitResult.CONTINUE;
+        Path libraryRoot = Paths.get(library.getPath()).toAbsolutePath();
+        Set<String> forceListed = new HashSet<>();
+        List<Path> roots = new ArrayList<>();
+        dirs.sort(null);
+        for (Path dir : dirs) {
+            forceListed.add(dir.toString());
+            // 目录可能已被删除，退回到媒体库内最近的现存上级目录
+            Path existing = dir;
+            while (existing != null && !Files.isDirectory(existing)) {
+                existing = existing.getParent();
             }
-        });
+            if (existing == null || !existing.startsWith(libraryRoot)) {
+                existing = libraryRoot;
+            }
+            Path candidate = existing;
+            if (roots.stream().noneMatch(candidate::startsWith)) {
+                roots.removeIf(root -> root.startsWith(candidate));
+                roots.add(candidate);
+            }
+        }
+
+        log.info("Rescanning {} changed directories of library {} as {} subtrees",
+                dirs.size(), library.getName(), roots.size());
+        for (Path root : roots) {
+            try {
+                scanTree(library, root, false, forceListed);
+                mediaLibraryWatcher.registerSubtree(library.getId(), root);
+            } catch (IOException e) {
+                log.error("Error rescanning directory {} of library {}", root, library.getName(), e);
+            }
+        }
     }
 
     /**
-     * 简单的文件类型判断，仅识别常见的视频扩展名（不区分大小写）。
+     * 处理监听到的删除：有文件身份的记录先保留一个配对窗口，窗口内出现同一身份的新文件视为移动，
+     * 超时未配对再删除数据库记录；无文件身份的记录立即删除。
      *
-     * @param file 待判断的文件路径
-     * @return 如果是支持的视频文件返回 true，否则返回 false
+     * @param library  所属媒体库
+     * @param filePath 被删除文件的绝对路径字符串
      */
-    private boolean isVideoFile(Path file) {
-        String fileName = file.toString().toLowerCase();
-        return fileName.endsWith(".mp4") || fileName.endsWith(".mkv") || fileName.endsWith(".avi") || fileName.endsWith(".mov");
+    private void deleteFile(MediaLibrary library, String filePath) {
+        MediaPathIndex.Entry indexed = mediaPathIndex.get(library.getId(), filePath);
+        if (indexed == null) {
+            // 可能是未注册监听的目录（如监听注册前已存在又被删除），按目录前缀处理
+            deleteDirectory(library, filePath);
+            return;
+        }
+        deleteEntries(library, Map.of(filePath, indexed));
     }
 
     /**
-     * 对文件变更进行延迟处理：如果在延迟期间出现新的变更事件，会取消之前的计划并重新计时，
-     * 以实现去抖（debounce）效果，避免重复处理短时间内的多个文件事件。
-     * 
-     * 延迟处理完成后，提交异步元数据提取任务。
+     * 处理目录被删除或移出：目录下所有记录按路径前缀一次取出，与单个文件删除一样先进入移动配对窗口，
+     * 窗口结束后未配对的记录在同一个写入缓冲区中批量删除（批量字幕清理 + DELETE ... WHERE id IN）。
      *
      * @param library 所属媒体库
-     * @param file    要处理的文件路径
+     * @param dirPath 被删除目录的绝对路径
      */
-    private void scheduleFileProcessing(MediaLibrary library, Path file) {
-        if (scheduledTasks.containsKey(file)) {
-            scheduledTasks.get(file).cancel(false);
+    private void deleteDirectory(MediaLibrary library, String dirPath) {
+        Map<String, MediaPathIndex.Entry> entries = mediaPathIndex.entriesUnder(library.getId(), dirPath);
+        if (entries.isEmpty()) {
+            return;
         }
+        log.info("Directory removed from library {}: {} ({} media files)", library.getName(), dirPath, entries.size());
+        deleteEntries(library, entries);
+    }
 
-        ScheduledFuture<?> future = scheduledExecutor.schedule(() -> {
-            try {
-                if (Files.exists(file)) {
-                    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
-                    if (isVideoFile(file)) {
-                        List<MediaFile> existingFiles = mediaFileRepository.findByLibraryId(library.getId());
-                        Map<String, MediaFile> existingFilesMap = existingFiles.stream()
-                                .collect(Collectors.toMap(MediaFile::getFilePath, Function.identity()));
-                        String filePath = file.toAbsolutePath().toString();
-                        
-                        // 注意：无论是新文件还是修改的文件，匹配队列将在元数据提取完成后自动添加
-                        processFile(library, file, attrs, existingFilesMap);
-                    }
-                }
-            } catch (IOException e) {
-                log.error("Error processing file: " + file, e);
+    private void deleteEntries(MediaLibrary library, Map<String, MediaPathIndex.Entry> entries) {
+        List<String> immediate = new ArrayList<>();
+        Map<String, PendingMove> parked = new HashMap<>();
+        List<String> replaced = new ArrayList<>();
+        entries.forEach((filePath, indexed) -> {
+            String identity = indexed.identity();
+            if (identity == null) {
+                immediate.add(filePath);
+                return;
             }
-            scheduledTasks.remove(file);
-        }, 5, TimeUnit.SECONDS); // 5秒延迟
-
-        scheduledTasks.put(file, future);
+            String key = library.getId() + ":" + identity;
+            PendingMove pendingMove = new PendingMove(library.getId(), filePath, indexed);
+            PendingMove previous = pendingMoves.put(key, pendingMove);
+            if (previous != null) {
+                replaced.add(previous.oldPath());
+            }
+            parked.put(key, pendingMove);
+        });
+        immediate.addAll(replaced);
+        deleteIndexedFiles(library, immediate);
+
+        if (!parked.isEmpty()) {
+            scheduledExecutor.schedule(() -> {
+                List<String> expired = new ArrayList<>();
+                parked.forEach((key, pendingMove) -> {
+                    if (pendingMoves.remove(key, pendingMove)) {
+                        expired.add(pendingMove.oldPath());
+                    }
+                });
+                deleteIndexedFiles(library, expired);
+            }, MOVE_CORRELATION_SECONDS, TimeUnit.SECONDS);
+        }
     }
 
     /**
-     * 删除数据库中指定路径的文件记录（若存在）。
-     *
-     * @param filePath 要删除的文件的绝对路径字符串
+     * 取出与新文件身份相同、等待配对的删除记录。
      */
-    private void deleteFile(String filePath) {
-        mediaFileRepository.findByFilePath(filePath).ifPresent(mediaFile -> {
-            mediaSubtitleService.cleanupByMediaFileId(mediaFile.getId());
-            mediaFileRepository.delete(mediaFile);
-            log.info("Removed deleted file: {}", filePath);
-        });
+    private PendingMove takePendingMove(MediaLibrary library, BasicFileAttributes attrs) {
+        String identity = identityOf(attrs);
+        if (identity == null || pendingMoves.isEmpty()) {
+            return null;
+        }
+        PendingMove pendingMove = pendingMoves.remove(library.getId() + ":" + identity);
+        if (pendingMove != null && mediaPathIndex.get(library.getId(), pendingMove.oldPath()) == null) {
+            // 配对窗口内记录已被扫描等其他途径处理
+            return null;
+        }
+        return pendingMove;
+    }
+
+    private void deleteIndexedFiles(MediaLibrary library, List<String> filePaths) {
+        if (filePaths.isEmpty()) {
+            return;
+        }
+        try (MediaFileBatchWriter.Sink sink = mediaFileBatchWriter.openSink(library.getName())) {
+            for (String filePath : filePaths) {
+                MediaPathIndex.Entry indexed = mediaPathIndex.get(library.getId(), filePath);
+                if (indexed == null || Files.exists(Paths.get(filePath))) {
+                    // 记录已被其他途径处理，或原路径已出现新文件（由新增事件更新）
+                    continue;
+                }
+                sink.delete(library.getId(), indexed.id(), filePath);
+            }
+        }
     }
 }
@@ -11,6 +11,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import xyz.ezsky.anilink.model.dto.MediaProbeResult;
 import xyz.ezsky.anilink.model.dto.MediaSubtitleAdminDTO;
 import xyz.ezsky.anilink.model.dto.MediaSubtitleDTO;
 import xyz.ezsky.anilink.model.entity.MediaFile;
@@ -25,6 +26,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
@@ -84,6 +86,16 @@ public class MediaSubtitleService {
     }
 
     public void extractSubtitlesIfMkv(MediaFile mediaFile) {
+        extractSubtitlesIfMkv(mediaFile, null);
+    }
+
+    /**
+     * 抽取 MKV 内封字幕，字幕流信息取自已有的探测结果
+     *
+     * @param mediaFile 媒体文件
+     * @param probe     同一文件的 FFprobe 探测结果；为 null 或探测失败时单独探测字幕流
+     */
+    public void extractSubtitlesIfMkv(MediaFile mediaFile, MediaProbeResult probe) {
         if (mediaFile == null || mediaFile.getId() == null || mediaFile.getFilePath() == null) {
             return;
         }
@@ -103,7 +115,9 @@ public class MediaSubtitleService {
 
         cleanupByMediaFileId(mediaFile.getId());
 
-        List<SubtitleStreamInfo> subtitleStreams = probeSubtitleStreams(sourcePath);
+        List<SubtitleStreamInfo> subtitleStreams = probe != null && probe.isSuccess() && probe.getRoot() != null
+                ? parseSubtitleStreams(probe.getRoot())
+                : probeSubtitleStreams(sourcePath);
         if (subtitleStreams.isEmpty()) {
             log.debug("No subtitle stream found in MKV file: {}", sourcePath);
             return;
@@ -184,6 +198,34 @@ public class MediaSubtitleService {
         mediaSubtitleRepository.deleteByMediaFileId(mediaFileId);
     }
 
+    /**
+     * 批量清理多个媒体文件的字幕：删除抽取出的内嵌字幕文件，并用一条语句删除字幕记录。
+     *
+     * @param mediaFileIds 媒体文件 ID 集合
+     */
+    public void cleanupByMediaFileIds(Collection<Long> mediaFileIds) {
+        if (mediaFileIds == null || mediaFileIds.isEmpty()) {
+            return;
+        }
+        List<MediaSubtitle> subtitles = mediaSubtitleRepository.findByMediaFileIdIn(mediaFileIds);
+        for (MediaSubtitle subtitle : subtitles) {
+            if (subtitle.getFilePath() == null || subtitle.getFilePath().isEmpty()) {
+                continue;
+            }
+            // 只删除内嵌字幕提取出来的文件，外部字幕不删除
+            if (subtitle.getIsExternal() != null && !subtitle.getIsExternal()) {
+                try {
+                    Files.deleteIfExists(Paths.get(subtitle.getFilePath()));
+                } catch (Exception e) {
+                    log.warn("Failed to delete subtitle file: {}", subtitle.getFilePath(), e);
+                }
+            }
+        }
+        if (!subtitles.isEmpty()) {
+            mediaSubtitleRepository.deleteByMediaFileIdIn(mediaFileIds);
+        }
+    }
+
     /**
      * 扫描视频文件同目录下的外部字幕文件
      */
@@ -360,44 +402,47 @@ public class MediaSubtitleService {
                 return List.of();
             }
 
-            JsonNode root = OBJECT_MAPPER.readTree(output);
-            JsonNode streamsNode = root.get("streams");
-            if (streamsNode == null || !streamsNode.isArray()) {
-                return List.of();
-            }
+            return parseSubtitleStreams(OBJECT_MAPPER.readTree(output));
+        } catch (Exception e) {
+            log.error("Failed to probe subtitle streams for file: {}", sourcePath, e);
+            return List.of();
+        }
+    }
 
-            List<SubtitleStreamInfo> result = new ArrayList<>();
-            for (JsonNode stream : streamsNode) {
-                String codecType = stream.path("codec_type").asText("");
-                if (!Objects.equals(codecType, "subtitle")) {
-                    continue;
-                }
+    private List<SubtitleStreamInfo> parseSubtitleStreams(JsonNode root) {
+        JsonNode streamsNode = root.get("streams");
+        if (streamsNode == null || !streamsNode.isArray()) {
+            return List.of();
+        }
 
-                int streamIndex = stream.path("index").asInt(-1);
-                if (streamIndex < 0) {
-                    continue;
-                }
+        List<SubtitleStreamInfo> result = new ArrayList<>();
+        for (JsonNode stream : streamsNode) {
+            String codecType = stream.path("codec_type").asText("");
+            if (!Objects.equals(codecType, "subtitle")) {
+                continue;
+            }
 
-                String codecName = stream.path("codec_name").asText("subrip");
-                JsonNode tagsNode = stream.path("tags");
-                String language = tagsNode.path("language").asText("");
-                if (language.isBlank()) {
-                    language = null;
-                }
+            int streamIndex = stream.path("index").asInt(-1);
+            if (streamIndex < 0) {
+                continue;
+            }
 
-                String title = tagsNode.path("title").asText("");
-                String trackName = title.isBlank() ? null : title;
-                if (trackName == null) {
-                    trackName = language != null ? language : "track";
-                }
+            String codecName = stream.path("codec_name").asText("subrip");
+            JsonNode tagsNode = stream.path("tags");
+            String language = tagsNode.path("language").asText("");
+            if (language.isBlank()) {
+                language = null;
+            }
 
-                result.add(new SubtitleStreamInfo(streamIndex, trackName, language, codecName));
+            String title = tagsNode.path("title").asText("");
+            String trackName = title.isBlank() ? null : title;
+            if (trackName == null) {
+                trackName = language != null ? language : "track";
             }
-            return result;
-        } catch (Exception e) {
-            log.error("Failed to probe subtitle streams for file: {}", sourcePath, e);
-            return List.of();
+
+            result.add(new SubtitleStreamInfo(streamIndex, trackName, language, codecName));
         }
+        return result;
     }
 
     private boolean extractSubtitleStream(Path sourcePath, int streamIndex, Path outputPath) {
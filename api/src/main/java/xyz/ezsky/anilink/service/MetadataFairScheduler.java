@@ -0,0 +1,109 @@
+package xyz.ezsky.anilink.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * 元数据调度的按媒体库公平分配（加权亏空轮询）。
+ *
+ * <p>每轮调度按权重把可用名额分给有待处理文件的媒体库，每个库累积的份额（亏空值）跨轮保留，
+ * 小数部分不会丢失；名额不足一整份时剩余名额按轮转起点逐个分配，长期来看各库获得的名额与权重成比例。
+ * 待处理文件不足份额的库清空亏空值，不为空闲期积累额度。一个库的大量积压不会阻塞其他库。</p>
+ *
+ * <p>非线程安全，由单线程的调度器调用。</p>
+ */
+class MetadataFairScheduler {
+
+    private final Map<Long, Double> deficits = new HashMap<>();
+    private int rotation;
+
+    /**
+     * 分配本轮名额
+     *
+     * @param available 各媒体库本轮可调度的文件数（不含执行中的文件）
+     * @param slots     本轮可用名额
+     * @param weightOf  媒体库权重，小于 1 时按 1 计
+     * @return 媒体库 ID 到本轮名额的映射，按媒体库 ID 升序，只包含分到名额的库
+     */
+    Map<Long, Integer> allocate(Map<Long, Long> available, int slots, ToIntFunction<Long> weightOf) {
+        List<Long> active = new ArrayList<>();
+        available.forEach((libraryId, count) -> {
+            if (count != null && count > 0) {
+                active.add(libraryId);
+            }
+        });
+        active.sort(Long::compare);
+        deficits.keySet().retainAll(active);
+
+        Map<Long, Integer> granted = new LinkedHashMap<>();
+        if (active.isEmpty() || slots <= 0) {
+            return granted;
+        }
+
+        long totalWeight = 0;
+        for (Long libraryId : active) {
+            totalWeight += weight(weightOf, libraryId);
+        }
+
+        int remaining = slots;
+        for (Long libraryId : active) {
+            double deficit = deficits.getOrDefault(libraryId, 0d)
+                    + (double) slots * weight(weightOf, libraryId) / totalWeight;
+            long capacity = available.get(libraryId);
+            int grant = (int) Math.min(Math.min((long) Math.floor(deficit), capacity), remaining);
+            if (grant > 0) {
+                granted.put(libraryId, grant);
+                remaining -= grant;
+            }
+            // 积压不足份额的库不累积额度
+            deficits.put(libraryId, grant >= capacity ? 0d : deficit - grant);
+        }
+
+        // 取整后剩余的名额从轮转起点开始逐个分配，预支的份额记为负亏空
+        int start = Math.floorMod(rotation++, active.size());
+        boolean progressed = true;
+        while (remaining > 0 && progressed) {
+            progressed = false;
+            for (int i = 0; i < active.size() && remaining > 0; i++) {
+                Long libraryId = active.get((start + i) % active.size());
+                int current = granted.getOrDefault(libraryId, 0);
+                if (current >= available.get(libraryId)) {
+                    continue;
+                }
+                granted.put(libraryId, current + 1);
+                deficits.computeIfPresent(libraryId, (id, deficit) -> deficit - 1);
+                remaining--;
+                progressed = true;
+            }
+        }
+
+        Map<Long, Integer> ordered = new LinkedHashMap<>();
+        for (Long libraryId : active) {
+            Integer grant = granted.get(libraryId);
+            if (grant != null) {
+                ordered.put(libraryId, grant);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * 退回本轮分到但未能使用的名额（如执行队列已满），下一轮按亏空值补回
+     *
+     * @param libraryId 媒体库 ID
+     * @param unused    未使用的名额
+     */
+    void refund(Long libraryId, int unused) {
+        if (unused > 0) {
+            deficits.merge(libraryId, (double) unused, Double::sum);
+        }
+    }
+
+    private static int weight(ToIntFunction<Long> weightOf, Long libraryId) {
+        return Math.max(1, weightOf.applyAsInt(libraryId));
+    }
+}
@@ -62,6 +62,12 @@ public class ResourceDownloadService {
     @Autowired
     private MediaScannerService mediaScannerService;
 
+    @Autowired
+    private MediaHashService mediaHashService;
+
+    @Autowired
+    private MediaDuplicateIndex mediaDuplicateIndex;
+
     @Autowired
     private SiteConfigService siteConfigService;
 
@@ -729,11 +735,21 @@ public class ResourceDownloadService {
             return;
         }
         MediaLibrary library = task.getLibrary();
-        mediaScannerService.scanLibrary(library);
+        // 主文件刚写入/迁移完成，数据仍在页缓存中，此时计算匹配哈希不再读盘；
+        // 结果同时写入哈希缓存，匹配队列抢先处理该文件时也能直接命中
+        String hash = hashFinalFile(task);
+
+        // 移入媒体库会改变目标目录的修改时间，增量扫描即可发现新文件
+        mediaScannerService.scanLibrary(library, false);
 
         if (task.getFinalPath() != null && !task.getFinalPath().isBlank()) {
             Optional<MediaFile> mediaFileOpt = mediaFileRepository.findByFilePath(task.getFinalPath());
             mediaFileOpt.ifPresent(mediaFile -> {
+                if (hash != null && (mediaFile.getHash() == null || mediaFile.getHash().isEmpty())) {
+                    if (mediaFileRepository.updateHashIfMissing(mediaFile.getId(), hash) > 0) {
+                        mediaDuplicateIndex.onHashWritten(hash, mediaFile.getSize());
+                    }
+                }
                 task.setMediaFileId(mediaFile.getId());
                 taskRepository.save(task);
                 broadcastProgress();
@@ -741,6 +757,17 @@ public class ResourceDownloadService {
         }
     }
 
+    private String hashFinalFile(ResourceDownloadTask task) {
+        if (task.getFinalPath() == null || task.getFinalPath().isBlank()) {
+            return null;
+        }
+        Path finalPath = Paths.get(task.getFinalPath());
+        if (!Files.isRegularFile(finalPath)) {
+            return null;
+        }
+        return mediaHashService.calculateHash(finalPath);
+    }
+
     private Path uniquePath(Path path) {
         if (!Files.exists(path)) {
             return path;
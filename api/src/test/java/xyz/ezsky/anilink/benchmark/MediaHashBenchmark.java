@@ -0,0 +1,119 @@
+package xyz.ezsky.anilink.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import xyz.ezsky.anilink.service.MediaHashService;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文件前 16MB MD5 计算的基准测试：原 {@code FileInputStream} + 8KB 缓冲 + {@code String.format} 实现
+ * 对比 {@link MediaHashService} 的直接缓冲区与内存映射两种读取方式。
+ *
+ * <p>默认在临时目录生成 1GB 样本文件（前 16MB 为随机数据，其余为稀疏区域）；
+ * 设置系统属性 {@code anilink.bench.file} 可改用真实视频文件。样本位于页缓存中，结果反映的是系统调用与 CPU 开销。</p>
+ *
+ * <p>运行：{@code mvn test-compile} 后以测试 classpath 执行本类的 main 方法。</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MediaHashBenchmark {
+
+    private static final long HASH_SIZE = 16 * 1024 * 1024;
+
+    @Param({"1024"})
+    public int fileSizeMb;
+
+    private Path sample;
+    private boolean generated;
+    private final MediaHashService hashService = new MediaHashService();
+
+    @Setup(Level.Trial)
+    public void createSample() throws IOException {
+        String configured = System.getProperty("anilink.bench.file");
+        if (configured != null && !configured.isBlank()) {
+            sample = Paths.get(configured);
+            return;
+        }
+        sample = Files.createTempFile("anilink-hash-bench", ".mkv");
+        generated = true;
+        byte[] chunk = new byte[1024 * 1024];
+        Random random = new Random(42);
+        try (RandomAccessFile file = new RandomAccessFile(sample.toFile(), "rw")) {
+            for (long written = 0; written < HASH_SIZE; written += chunk.length) {
+                random.nextBytes(chunk);
+                file.write(chunk);
+            }
+            file.setLength((long) fileSizeMb * 1024 * 1024);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteSample() throws IOException {
+        if (generated) {
+            Files.deleteIfExists(sample);
+        }
+    }
+
+    @Benchmark
+    public String legacyStream() throws Exception {
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        try (FileInputStream fis = new FileInputStream(sample.toFile())) {
+            byte[] buffer = new byte[8192];
+            long bytesRead = 0;
+            int len;
+            while ((len = fis.read(buffer)) != -1 && bytesRead < HASH_SIZE) {
+                int bytesToProcess = (int) Math.min(len, HASH_SIZE - bytesRead);
+                md.update(buffer, 0, bytesToProcess);
+                bytesRead += bytesToProcess;
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    @Benchmark
+    public String channelDirect() {
+        return hashService.calculateHash(sample, MediaHashService.ReadMode.DIRECT);
+    }
+
+    @Benchmark
+    public String channelMapped() {
+        return hashService.calculateHash(sample, MediaHashService.ReadMode.MMAP);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MediaHashBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,56 @@
+package xyz.ezsky.anilink.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 验证 AIMD 并发上限的增长、收缩和延迟分位数。
+ */
+class MatchConcurrencyLimiterTest {
+
+    @Test
+    void limitGrowsAdditivelyAndHalvesOnCongestion() {
+        MatchConcurrencyLimiter limiter = new MatchConcurrencyLimiter(2, 1, 8, 1000);
+
+        // 每轮满并发（limit 次成功）约增加 1
+        for (int i = 0; i < 2; i++) {
+            limiter.onSuccess(100);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(2);
+        for (int i = 0; i < 3; i++) {
+            limiter.onSuccess(100);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(3);
+
+        limiter.onCongestion(100);
+        assertThat(limiter.getLimit()).isEqualTo(1);
+        limiter.onCongestion(100);
+        assertThat(limiter.getLimit()).isEqualTo(1);
+    }
+
+    @Test
+    void limitIsBoundedAndShrinksWhenLatencyExceedsTarget() {
+        MatchConcurrencyLimiter limiter = new MatchConcurrencyLimiter(4, 1, 4, 1000);
+        for (int i = 0; i < 100; i++) {
+            limiter.onSuccess(100);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(4);
+
+        limiter.onSuccess(5000);
+        assertThat(limiter.getLimit()).isEqualTo(3);
+    }
+
+    @Test
+    void latencyPercentilesUseRecentSamples() {
+        MatchConcurrencyLimiter limiter = new MatchConcurrencyLimiter(1, 1, 1, 0);
+        assertThat(limiter.getLatencyPercentile(50)).isZero();
+
+        for (long latency = 1; latency <= 100; latency++) {
+            limiter.onSuccess(latency);
+        }
+        assertThat(limiter.getLatencyPercentile(50)).isEqualTo(50);
+        assertThat(limiter.getLatencyPercentile(90)).isEqualTo(90);
+        assertThat(limiter.getLatencyPercentile(99)).isEqualTo(99);
+    }
+}
@@ -0,0 +1,74 @@
+package xyz.ezsky.anilink.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 验证分通道队列的加权取窗口、跨通道提升以及低优先级通道不被饿死。
+ */
+class MatchLaneQueueTest {
+
+    private static final Map<MatchPriority, Integer> WEIGHTS = Map.of(
+            MatchPriority.INTERACTIVE, 6, MatchPriority.WATCHER, 3, MatchPriority.BULK, 1);
+
+    @Test
+    void bulkLaneKeepsItsShareUnderInteractiveFlood() {
+        MatchLaneQueue queue = new MatchLaneQueue();
+        for (long id = 1; id <= 100; id++) {
+            queue.offer(id, MatchPriority.INTERACTIVE, 1000);
+        }
+        for (long id = 1001; id <= 1100; id++) {
+            queue.offer(id, MatchPriority.BULK, 1000);
+        }
+
+        List<Long> window = queue.window(10, WEIGHTS);
+
+        assertThat(window).hasSize(10);
+        // 权重份额 8 + 1，余下 1 个名额按优先级补给交互通道
+        assertThat(window.subList(0, 9)).allMatch(id -> id <= 100);
+        assertThat(window.get(9)).isEqualTo(1001L);
+    }
+
+    @Test
+    void unusedShareIsGivenToOtherLanesInPriorityOrder() {
+        MatchLaneQueue queue = new MatchLaneQueue();
+        queue.offer(1L, MatchPriority.INTERACTIVE, 1000);
+        for (long id = 1001; id <= 1020; id++) {
+            queue.offer(id, MatchPriority.BULK, 1000);
+        }
+
+        List<Long> window = queue.window(10, WEIGHTS);
+
+        assertThat(window).hasSize(10);
+        assertThat(window.get(0)).isEqualTo(1L);
+        assertThat(window.subList(1, 10)).allMatch(id -> id > 1000);
+    }
+
+    @Test
+    void offerPromotesButNeverDemotes() {
+        MatchLaneQueue queue = new MatchLaneQueue();
+        queue.offer(1L, MatchPriority.BULK, 1000);
+        queue.offer(1L, MatchPriority.INTERACTIVE, 1000);
+        queue.offer(1L, MatchPriority.WATCHER, 1000);
+
+        assertThat(queue.priorityOf(1L)).isEqualTo(MatchPriority.INTERACTIVE);
+        assertThat(queue.size()).isEqualTo(1);
+        assertThat(queue.size(MatchPriority.BULK)).isZero();
+
+        queue.remove(1L);
+        assertThat(queue.isEmpty()).isTrue();
+    }
+
+    @Test
+    void fullLaneRejectsNewIdsOnly() {
+        MatchLaneQueue queue = new MatchLaneQueue();
+        assertThat(queue.offer(1L, MatchPriority.BULK, 1)).isTrue();
+        assertThat(queue.offer(2L, MatchPriority.BULK, 1)).isFalse();
+        assertThat(queue.offer(2L, MatchPriority.INTERACTIVE, 1)).isTrue();
+        assertThat(queue.offer(1L, MatchPriority.BULK, 1)).isTrue();
+    }
+}
@@ -0,0 +1,190 @@
+package xyz.ezsky.anilink.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import xyz.ezsky.anilink.model.vo.DuplicateVO;
+import xyz.ezsky.anilink.repository.MediaFileRepository;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 验证重复文件索引的聚合构建、增量更新、分页报告以及硬链接不计为可回收副本。
+ */
+class MediaDuplicateIndexTest {
+
+    private static final long GB = 1024L * 1024 * 1024;
+
+    private final MediaFileRepository repository = mock(MediaFileRepository.class);
+    private final MediaDuplicateIndex index = new MediaDuplicateIndex();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(index, "mediaFileRepository", repository);
+    }
+
+    @Test
+    void reportIsBuiltFromOneAggregateQueryAndSortedByReclaimableBytes() {
+        when(repository.findDuplicateGroups()).thenReturn(List.of(group("small", GB, 2, 2), group("large", 2 * GB, 3, 3)));
+        when(repository.findDuplicateMembersByHashIn(anyCollection())).thenReturn(List.of(
+                member(1L, 1L, "large", 2 * GB), member(2L, 2L, "large", 2 * GB), member(3L, 2L, "large", 2 * GB)));
+
+        DuplicateVO.Report report = index.getReport(0, 1);
+
+        assertThat(report.getGroupCount()).isEqualTo(2);
+        assertThat(report.getDuplicateFiles()).isEqualTo(5);
+        assertThat(report.getReclaimableBytes()).isEqualTo(GB + 4 * GB);
+        assertThat(report.getGroups().getContent()).singleElement().satisfies(group -> {
+            assertThat(group.getHash()).isEqualTo("large");
+            assertThat(group.getReclaimableBytes()).isEqualTo(4 * GB);
+            assertThat(group.getFiles()).extracting(DuplicateVO.File::getId).containsExactly(1L, 2L, 3L);
+        });
+        assertThat(report.getGroups().isHasNext()).isTrue();
+        verify(repository).findDuplicateGroups();
+    }
+
+    @Test
+    void hashWritesUpdateGroupsIncrementally() {
+        when(repository.findDuplicateGroups()).thenReturn(List.of());
+        index.rebuild();
+
+        when(repository.findDuplicateGroup("abc", GB)).thenReturn(Optional.of(group("abc", GB, 2, 2)));
+        index.onHashWritten("abc", GB);
+        when(repository.findDuplicateMembersByHashIn(anyCollection())).thenReturn(List.of(
+                member(1L, 1L, "abc", GB), member(2L, 1L, "abc", GB)));
+        assertThat(index.getReport(0, 20).getGroupCount()).isEqualTo(1);
+
+        when(repository.findDuplicateGroup("abc", GB)).thenReturn(Optional.of(group("abc", GB, 1, 1)));
+        index.onHashWritten("abc", GB);
+        assertThat(index.getReport(0, 20).getGroupCount()).isZero();
+    }
+
+    @Test
+    void hardlinksAreNotCountedAsReclaimableCopies() {
+        // 下载目录与媒体库中的同一 inode，外加另一份独立拷贝
+        when(repository.findDuplicateGroups()).thenReturn(List.of(group("linked", GB, 3, 2)));
+        when(repository.findDuplicateMembersByHashIn(anyCollection())).thenReturn(List.of(
+                member(1L, 1L, "linked", GB, "inode-1"), member(2L, 2L, "linked", GB, "inode-1"),
+                member(3L, 2L, "linked", GB, "inode-3")));
+
+        DuplicateVO.Report report = index.getReport(0, 20);
+
+        assertThat(report.getReclaimableBytes()).isEqualTo(GB);
+        assertThat(report.getGroups().getContent()).singleElement().satisfies(group -> {
+            assertThat(group.getCopies()).isEqualTo(3);
+            assertThat(group.getPhysicalCopies()).isEqualTo(2);
+            assertThat(group.getReclaimableBytes()).isEqualTo(GB);
+            assertThat(group.getFiles()).extracting(DuplicateVO.File::isHardlinked).containsExactly(true, true, false);
+        });
+    }
+
+    @Test
+    void groupsMadeOnlyOfHardlinksAreLeftOutOfTheReport() {
+        when(repository.findDuplicateGroups()).thenReturn(List.of());
+        index.rebuild();
+
+        when(repository.findDuplicateGroup("linked", GB)).thenReturn(Optional.of(group("linked", GB, 2, 1)));
+        index.onHashWritten("linked", GB);
+        assertThat(index.getReport(0, 20).getGroupCount()).isZero();
+
+        // 索引中的分组过期后全部成为硬链接，展示时移出
+        when(repository.findDuplicateGroups()).thenReturn(List.of(group("linked", GB, 2, 2)));
+        index.rebuild();
+        when(repository.findDuplicateMembersByHashIn(anyCollection())).thenReturn(List.of(
+                member(1L, 1L, "linked", GB, "inode-1"), member(2L, 2L, "linked", GB, "inode-1")));
+        assertThat(index.getReport(0, 20).getGroups().getContent()).isEmpty();
+        assertThat(index.getReport(0, 20).getGroupCount()).isZero();
+    }
+
+    // 投影用普通实现而非 mock，可以直接写在 thenReturn 中而不会嵌套打桩
+    private static MediaFileRepository.DuplicateGroupView group(String hash, long size, long copies, long physicalCopies) {
+        return new GroupView(hash, size, copies, physicalCopies);
+    }
+
+    private static MediaFileRepository.DuplicateMemberView member(Long id, Long libraryId, String hash, long size) {
+        return member(id, libraryId, hash, size, "inode-" + id);
+    }
+
+    private static MediaFileRepository.DuplicateMemberView member(Long id, Long libraryId, String hash, long size,
+                                                                  String fileKey) {
+        return new MemberView(id, libraryId, hash, size, fileKey);
+    }
+
+    private record GroupView(String hash, Long size, Long copies, Long physicalCopies)
+            implements MediaFileRepository.DuplicateGroupView {
+        @Override
+        public String getHash() {
+            return hash;
+        }
+
+        @Override
+        public Long getSize() {
+            return size;
+        }
+
+        @Override
+        public Long getCopies() {
+            return copies;
+        }
+
+        @Override
+        public Long getPhysicalCopies() {
+            return physicalCopies;
+        }
+    }
+
+    private record MemberView(Long id, Long libraryId, String hash, Long size, String fileKey)
+            implements MediaFileRepository.DuplicateMemberView {
+        @Override
+        public Long getId() {
+            return id;
+        }
+
+        @Override
+        public Long getLibraryId() {
+            return libraryId;
+        }
+
+        @Override
+        public String getFilePath() {
+            return "/library-" + libraryId + "/" + id + ".mkv";
+        }
+
+        @Override
+        public String getFileName() {
+            return id + ".mkv";
+        }
+
+        @Override
+        public String getHash() {
+            return hash;
+        }
+
+        @Override
+        public Long getSize() {
+            return size;
+        }
+
+        @Override
+        public String getFileKey() {
+            return fileKey;
+        }
+
+        @Override
+        public String getAnimeTitle() {
+            return null;
+        }
+
+        @Override
+        public String getEpisodeTitle() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package xyz.ezsky.anilink.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import xyz.ezsky.anilink.model.dto.MatchResult;
+import xyz.ezsky.anilink.model.entity.MatchStatus;
+import xyz.ezsky.anilink.model.entity.MediaFile;
+import xyz.ezsky.anilink.model.entity.MediaLibrary;
+import xyz.ezsky.anilink.repository.MediaFileRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 验证按同目录已匹配文件的命名模板与缓存剧集列表推断剧集，以及低置信度时放弃推断。
+ */
+class MediaEpisodeInferenceServiceTest {
+
+    private static final String DIR = "/media/anime/Frieren";
+    private static final long ANIME_ID = 17345L;
+
+    private final MediaFileRepository repository = mock(MediaFileRepository.class);
+    private final AnimeService animeService = mock(AnimeService.class);
+    private final MediaEpisodeInferenceService service = new MediaEpisodeInferenceService();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "mediaFileRepository", repository);
+        ReflectionTestUtils.setField(service, "animeService", animeService);
+        when(animeService.getCachedRawJsonByAnimeId(ANIME_ID)).thenReturn(bangumiJson(12));
+    }
+
+    @Test
+    void episodeIsInferredFromMatchedSiblingsAndCachedEpisodeList() {
+        siblings(sibling("[Sub] Frieren - 10 [1080p].mkv", 10), sibling("[Sub] Frieren - 11 [1080p].mkv", 11));
+
+        Map<Long, MatchResult> inferred = service.infer(List.of(file(1L, "[Sub] Frieren - 12 [1080p].mkv")));
+
+        assertThat(inferred).containsOnlyKeys(1L);
+        assertThat(inferred.get(1L).getEpisodeId()).isEqualTo("173450012");
+        assertThat(inferred.get(1L).getEpisodeTitle()).isEqualTo("第12话");
+        assertThat(inferred.get(1L).getAnimeId()).isEqualTo(ANIME_ID);
+    }
+
+    @Test
+    void differentTemplateOrTooFewSiblingsIsNotInferred() {
+        siblings(sibling("[Sub] Frieren - 10 [1080p].mkv", 10), sibling("[Other] Frieren 11 (720p).mkv", 11));
+
+        assertThat(service.infer(List.of(file(1L, "[Sub] Frieren - 12 [1080p].mkv")))).isEmpty();
+    }
+
+    @Test
+    void differentSeasonWithSameTemplateIsNotInferred() {
+        siblings(sibling("Show S01E01.mkv", 1), sibling("Show S01E02.mkv", 2), sibling("Show S01E03.mkv", 3));
+
+        Map<Long, MatchResult> inferred = service.infer(List.of(
+                file(1L, "Show S02E01.mkv"), file(2L, "Show S01E04.mkv")));
+
+        assertThat(inferred).containsOnlyKeys(2L);
+        assertThat(inferred.get(2L).getEpisodeId()).isEqualTo(episodeId(4));
+    }
+
+    @Test
+    void missingEpisodeListIsNotInferred() {
+        when(animeService.getCachedRawJsonByAnimeId(ANIME_ID)).thenReturn(null);
+        siblings(sibling("[Sub] Frieren - 10 [1080p].mkv", 10), sibling("[Sub] Frieren - 11 [1080p].mkv", 11));
+
+        assertThat(service.infer(List.of(file(1L, "[Sub] Frieren - 12 [1080p].mkv")))).isEmpty();
+    }
+
+    @Test
+    void ambiguousNumberPositionIsRejected() {
+        // 唯一的已匹配文件中季数与集数相同，无法确定集数位置
+        List<MediaEpisodeInferenceService.Template> templates = List.of(
+                MediaEpisodeInferenceService.templateOf("Show S01E01.mkv"));
+        assertThat(MediaEpisodeInferenceService.episodePosition(templates, List.of(1))).isEqualTo(-1);
+
+        List<MediaEpisodeInferenceService.Template> resolved = List.of(
+                MediaEpisodeInferenceService.templateOf("Show S01E01.mkv"),
+                MediaEpisodeInferenceService.templateOf("Show S01E02.mkv"));
+        assertThat(MediaEpisodeInferenceService.episodePosition(resolved, List.of(1, 2))).isEqualTo(1);
+        assertThat(MediaEpisodeInferenceService.templateOf("[Sub] Show - 03 [1080p].mkv").numbers())
+                .containsExactly("03", "1080");
+    }
+
+    private void siblings(MediaFileRepository.MatchedSiblingView... views) {
+        when(repository.findSiblingsByPathPrefix(eq(1L), eq(DIR + "/%"), eq(MatchStatus.MATCHED)))
+                .thenReturn(List.of(views));
+    }
+
+    private static MediaFile file(Long id, String fileName) {
+        MediaLibrary library = new MediaLibrary();
+        library.setId(1L);
+        MediaFile file = new MediaFile();
+        file.setId(id);
+        file.setLibrary(library);
+        file.setFileName(fileName);
+        file.setFilePath(DIR + "/" + fileName);
+        return file;
+    }
+
+    private static MediaFileRepository.MatchedSiblingView sibling(String fileName, int episode) {
+        MediaFileRepository.MatchedSiblingView view = mock(MediaFileRepository.MatchedSiblingView.class);
+        when(view.getFilePath()).thenReturn(DIR + "/" + fileName);
+        when(view.getFileName()).thenReturn(fileName);
+        when(view.getEpisodeId()).thenReturn(episodeId(episode));
+        when(view.getAnimeId()).thenReturn(ANIME_ID);
+        when(view.getAnimeTitle()).thenReturn("葬送的芙莉莲");
+        return view;
+    }
+
+    private static String episodeId(int episode) {
+        return String.valueOf(ANIME_ID * 10000 + episode);
+    }
+
+    private static String bangumiJson(int episodes) {
+        List<String> items = new ArrayList<>();
+        for (int i = 1; i <= episodes; i++) {
+            items.add("{\"episodeId\":" + episodeId(i) + ",\"episodeTitle\":\"第" + i + "话\",\"episodeNumber\":\"" + i + "\"}");
+        }
+        items.add("{\"episodeId\":" + episodeId(9001) + ",\"episodeTitle\":\"特别篇\",\"episodeNumber\":\"S1\"}");
+        return "{\"bangumi\":{\"animeId\":" + ANIME_ID + ",\"episodes\":[" + String.join(",", items) + "]},\"success\":true}";
+    }
+}
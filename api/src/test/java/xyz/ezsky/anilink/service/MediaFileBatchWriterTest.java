@@ -0,0 +1,109 @@
+package xyz.ezsky.anilink.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import xyz.ezsky.anilink.model.entity.MatchStatus;
+import xyz.ezsky.anilink.model.entity.MediaFile;
+import xyz.ezsky.anilink.model.entity.MediaLibrary;
+import xyz.ezsky.anilink.repository.MediaFileRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * 验证批量保存回滚后逐条保存时新增记录按新增持久化且计数正确，以及文件标识补写不加载实体、不触发队列。
+ */
+class MediaFileBatchWriterTest {
+
+    private final MediaFileRepository repository = mock(MediaFileRepository.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final MediaMatchQueueManager matchQueue = mock(MediaMatchQueueManager.class);
+    private final MediaMetadataQueueManager metadataQueue = mock(MediaMetadataQueueManager.class);
+    private final MediaPathIndex pathIndex = mock(MediaPathIndex.class);
+    private final MediaFileBatchWriter writer = new MediaFileBatchWriter();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(writer, "mediaFileRepository", repository);
+        ReflectionTestUtils.setField(writer, "mediaSubtitleService", mock(MediaSubtitleService.class));
+        ReflectionTestUtils.setField(writer, "mediaMatchQueueManager", matchQueue);
+        ReflectionTestUtils.setField(writer, "metadataQueueManager", metadataQueue);
+        ReflectionTestUtils.setField(writer, "mediaPathIndex", pathIndex);
+        ReflectionTestUtils.setField(writer, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(writer, "mediaFileStabilityGate", mock(MediaFileStabilityGate.class));
+        ReflectionTestUtils.setField(writer, "batchSize", 10);
+    }
+
+    @Test
+    void fallbackPersistsNewEntitiesAfterRolledBackBatch() {
+        MediaFile created = file(null, "/media/new.mkv");
+        MediaFile existing = file(42L, "/media/old.mkv");
+
+        // 批量保存已为新增实体分配雪花 ID 后回滚
+        when(repository.saveAll(anyList())).thenAnswer(invocation -> {
+            created.setId(9001L);
+            throw new DataIntegrityViolationException("duplicate file_path");
+        });
+        List<Long> idsSeenBySave = new ArrayList<>();
+        when(repository.save(any(MediaFile.class))).thenAnswer(invocation -> {
+            MediaFile mediaFile = invocation.getArgument(0);
+            idsSeenBySave.add(mediaFile.getId());
+            if (mediaFile.getId() == null) {
+                mediaFile.setId(9002L);
+            }
+            return mediaFile;
+        });
+
+        MediaFileBatchWriter.Sink sink = writer.openSink("test");
+        sink.insert(created);
+        sink.update(existing);
+        sink.flush();
+
+        assertThat(idsSeenBySave).containsExactly(null, 42L);
+        assertThat(sink.getInserted()).isEqualTo(1);
+        assertThat(sink.getUpdated()).isEqualTo(1);
+        assertThat(sink.getFailed()).isZero();
+    }
+
+    @Test
+    void fileKeyBackfillIsBatchedWithoutQueueing() {
+        MediaFileBatchWriter.Sink sink = writer.openSink("test");
+        sink.backfillFileKey(1L, "/media/a.mkv", new MediaPathIndex.Entry(11L, 100L, 1000L, null), "inode-a");
+        sink.backfillFileKey(1L, "/media/b.mkv", new MediaPathIndex.Entry(12L, 200L, 2000L, null), "inode-b");
+        sink.flush();
+
+        verify(jdbcTemplate).batchUpdate(argThat((String sql) -> sql.startsWith("UPDATE media_file SET file_key")),
+                argThat((List<Object[]> args) -> args.size() == 2
+                        && "inode-a".equals(args.get(0)[0]) && Long.valueOf(11L).equals(args.get(0)[1])));
+        verify(pathIndex).put(eq(1L), eq("/media/b.mkv"), eq(new MediaPathIndex.Entry(12L, 200L, 2000L, "inode-b")));
+        verify(repository, never()).findById(anyLong());
+        verify(repository, never()).saveAll(anyList());
+        verifyNoInteractions(matchQueue, metadataQueue);
+    }
+
+    private static MediaFile file(Long id, String path) {
+        MediaLibrary library = new MediaLibrary();
+        library.setId(1L);
+        MediaFile file = new MediaFile();
+        file.setId(id);
+        file.setLibrary(library);
+        file.setFilePath(path);
+        file.setMatchStatus(MatchStatus.UNMATCHED);
+        return file;
+    }
+}
@@ -0,0 +1,99 @@
+package xyz.ezsky.anilink.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import xyz.ezsky.anilink.model.entity.MediaLibrary;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 验证时间轮去抖器合并重复事件并按媒体库批量交付。
+ */
+class MediaFileEventDebouncerTest {
+
+    private MediaFileEventDebouncer debouncer;
+    private final List<List<Path>> batches = new CopyOnWriteArrayList<>();
+    private final MediaFileEventDebouncer.BatchHandler handler = (library, files) -> batches.add(List.copyOf(files));
+
+    @BeforeEach
+    void setUp() {
+        debouncer = new MediaFileEventDebouncer();
+        ReflectionTestUtils.setField(debouncer, "quietMillis", 200L);
+        ReflectionTestUtils.setField(debouncer, "tickMillis", 10L);
+        debouncer.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        debouncer.shutdown();
+    }
+
+    @Test
+    void repeatedEventsForOnePathAreDeliveredOnce() throws Exception {
+        MediaLibrary library = library(1L);
+        Path file = Path.of("/media/library/episode-01.mkv");
+
+        for (int i = 0; i < 10_000; i++) {
+            debouncer.submit(library, file, handler);
+        }
+        assertThat(debouncer.getPendingCount()).isEqualTo(1);
+
+        awaitBatches(1);
+        Thread.sleep(300);
+        assertThat(batches).containsExactly(List.of(file));
+        assertThat(debouncer.getPendingCount()).isZero();
+        assertThat(debouncer.getCoalescedEvents()).isEqualTo(9_999);
+    }
+
+    @Test
+    void pathStaysPendingWhileEventsKeepArriving() throws Exception {
+        MediaLibrary library = library(1L);
+        Path file = Path.of("/media/library/downloading.mkv");
+
+        long until = System.currentTimeMillis() + 600;
+        while (System.currentTimeMillis() < until) {
+            debouncer.submit(library, file, handler);
+            Thread.sleep(50);
+        }
+        assertThat(batches).isEmpty();
+
+        awaitBatches(1);
+        assertThat(batches).containsExactly(List.of(file));
+    }
+
+    @Test
+    void readyPathsAreGroupedByLibrary() throws Exception {
+        MediaLibrary first = library(1L);
+        MediaLibrary second = library(2L);
+
+        debouncer.submit(first, Path.of("/a/1.mkv"), handler);
+        debouncer.submit(first, Path.of("/a/2.mkv"), handler);
+        debouncer.submit(second, Path.of("/b/1.mkv"), handler);
+
+        awaitBatches(2);
+        Thread.sleep(300);
+        assertThat(batches.stream().mapToInt(List::size).sum()).isEqualTo(3);
+        // 同一批次内的文件都属于同一个媒体库
+        assertThat(batches).allMatch(batch -> batch.stream().map(Path::getParent).distinct().count() == 1);
+    }
+
+    private MediaLibrary library(Long id) {
+        MediaLibrary library = new MediaLibrary();
+        library.setId(id);
+        library.setName("library-" + id);
+        return library;
+    }
+
+    private void awaitBatches(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (batches.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
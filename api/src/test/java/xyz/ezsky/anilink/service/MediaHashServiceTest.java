@@ -0,0 +1,103 @@
+package xyz.ezsky.anilink.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 验证两种读取方式的哈希结果与直接对前 16MB 计算 MD5 一致，以及按文件身份复用缓存。
+ */
+class MediaHashServiceTest {
+
+    private static final int HASH_SIZE = 16 * 1024 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private final MediaHashService hashService = new MediaHashService();
+
+    @Test
+    void smallFileHashesWholeContent() throws Exception {
+        byte[] content = randomBytes(3 * 1024 * 1024 + 17);
+        Path file = Files.write(tempDir.resolve("small.mkv"), content);
+
+        assertHashes(file, md5(content, content.length));
+    }
+
+    @Test
+    void largeFileHashesFirstSixteenMegabytes() throws Exception {
+        byte[] head = randomBytes(HASH_SIZE + 4096);
+        Path file = tempDir.resolve("large.mkv");
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.write(head);
+            raf.setLength(64L * 1024 * 1024);
+        }
+
+        assertHashes(file, md5(head, HASH_SIZE));
+    }
+
+    @Test
+    void emptyFileAndMissingFile() throws Exception {
+        Path empty = Files.createFile(tempDir.resolve("empty.mkv"));
+
+        assertHashes(empty, md5(new byte[0], 0));
+        assertThat(hashService.calculateHash(tempDir.resolve("missing.mkv"))).isNull();
+    }
+
+    @Test
+    void hardlinkReusesCachedHashWithoutReading() throws Exception {
+        byte[] content = randomBytes(1024 * 1024);
+        Path original = Files.write(tempDir.resolve("download.mkv"), content);
+        Path link = Files.createLink(tempDir.resolve("linked.mkv"), original);
+        String expected = md5(content, content.length);
+
+        MediaHashCacheService cache = mock(MediaHashCacheService.class);
+        ReflectionTestUtils.setField(hashService, "mediaHashCacheService", cache);
+
+        assertThat(hashService.calculateHash(original)).isEqualTo(expected);
+        ArgumentCaptor<String> fileKey = ArgumentCaptor.forClass(String.class);
+        verify(cache).store(fileKey.capture(), eq((long) content.length), anyLong(), eq(expected));
+        assertThat(fileKey.getValue()).isNotNull();
+
+        // 硬链接与原文件共享文件标识，命中缓存后直接返回
+        when(cache.lookup(eq(fileKey.getValue()), eq((long) content.length), anyLong())).thenReturn("cached");
+        assertThat(hashService.calculateHash(link)).isEqualTo("cached");
+        verify(cache, never()).store(anyString(), anyLong(), anyLong(), eq("cached"));
+    }
+
+    private void assertHashes(Path file, String expected) {
+        assertThat(hashService.calculateHash(file, MediaHashService.ReadMode.DIRECT)).isEqualTo(expected);
+        assertThat(hashService.calculateHash(file, MediaHashService.ReadMode.MMAP)).isEqualTo(expected);
+        // 复用的线程上下文不能残留上一次的数据
+        assertThat(hashService.calculateHash(file, MediaHashService.ReadMode.DIRECT)).isEqualTo(expected);
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String md5(byte[] content, int length) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        md.update(content, 0, length);
+        return HexFormat.of().formatHex(md.digest());
+    }
+}
@@ -0,0 +1,77 @@
+package xyz.ezsky.anilink.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 验证哈希阶段按文件系统限制并发读取数，并把结果交还调用方。
+ */
+class MediaHashStageTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final MediaHashStage stage = new MediaHashStage();
+
+    @AfterEach
+    void tearDown() {
+        stage.shutdown();
+    }
+
+    @Test
+    void readersOnOneFileSystemAreLimited() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        MediaHashService slowHashService = new MediaHashService() {
+            @Override
+            public String calculateHash(Path filePath) {
+                int now = running.incrementAndGet();
+                maxRunning.accumulateAndGet(now, Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    running.decrementAndGet();
+                }
+                return filePath.getFileName().toString();
+            }
+        };
+        ReflectionTestUtils.setField(stage, "mediaHashService", slowHashService);
+        ReflectionTestUtils.setField(stage, "hddReaders", 2);
+        ReflectionTestUtils.setField(stage, "ssdReaders", 2);
+        ReflectionTestUtils.setField(stage, "defaultReaders", 2);
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(stage.submit(Files.createFile(tempDir.resolve("episode-" + i + ".mkv"))));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 8; i++) {
+            assertThat(results.get(i).get()).isEqualTo("episode-" + i + ".mkv");
+        }
+        assertThat(maxRunning.get()).isEqualTo(2);
+        assertThat(stage.getLaneCount()).isEqualTo(1);
+        assertThat(stage.getPendingCount()).isZero();
+    }
+
+    @Test
+    void unknownDevicesAreNotClassified() {
+        assertThat(MediaHashStage.isRotational("/mnt/nas (nas:/export/media)")).isNull();
+        assertThat(MediaHashStage.isRotational("/proc (proc)")).isNull();
+        assertThat(MediaHashStage.isRotational("unknown")).isNull();
+    }
+}
@@ -0,0 +1,57 @@
+package xyz.ezsky.anilink.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 验证并行遍历与顺序遍历得到相同的文件与目录，且不跟随符号链接、过滤掉的文件不出现在结果中。
+ */
+class MediaLibraryWalkerTest {
+
+    @TempDir
+    Path root;
+
+    private final MediaLibraryWalker walker = new MediaLibraryWalker();
+    private final Predicate<Path> videosOnly = path -> path.getFileName().toString().endsWith(".mkv");
+
+    @Test
+    void parallelWalkMatchesSequentialWalk() throws IOException {
+        Files.createFile(root.resolve("a.mkv"));
+        Files.createFile(root.resolve("notes.txt"));
+        for (int season = 1; season <= 3; season++) {
+            Path dir = Files.createDirectories(root.resolve("show").resolve("S0" + season).resolve("extras"));
+            for (int episode = 1; episode <= 5; episode++) {
+                Files.createFile(dir.getParent().resolve("E0" + episode + ".mkv"));
+            }
+            Files.createFile(dir.resolve("sp.mkv"));
+        }
+        Files.createSymbolicLink(root.resolve("linked-show"), root.resolve("show"));
+
+        MediaLibraryWalker.WalkResult sequential = walker.walk(root, 1, videosOnly, Map.of());
+        MediaLibraryWalker.WalkResult parallel = walker.walk(root, 4, videosOnly, Map.of());
+
+        assertThat(parallel.files()).extracting(MediaLibraryWalker.ScannedFile::path)
+                .containsExactlyElementsOf(paths(sequential));
+        assertThat(parallel.directories()).isEqualTo(sequential.directories());
+
+        assertThat(paths(sequential)).hasSize(1 + 3 * 6)
+                .contains(root.resolve("a.mkv"))
+                .doesNotContain(root.resolve("notes.txt"))
+                .noneMatch(path -> path.startsWith(root.resolve("linked-show")));
+        // 根目录、show、三个季目录及各自的 extras
+        assertThat(sequential.directories()).hasSize(2 + 3 * 2);
+    }
+
+    private static List<Path> paths(MediaLibraryWalker.WalkResult result) {
+        return result.files().stream().map(MediaLibraryWalker.ScannedFile::path).toList();
+    }
+}
@@ -0,0 +1,376 @@
+package xyz.ezsky.anilink.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import xyz.ezsky.anilink.model.dto.MatchResult;
+import xyz.ezsky.anilink.model.entity.MatchStatus;
+import xyz.ezsky.anilink.model.entity.MediaFile;
+import xyz.ezsky.anilink.repository.MediaFileRepository;
+import xyz.ezsky.anilink.service.notification.EpisodeUpdateNotificationService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 验证匹配队列从内存取数、按 ID 游标从数据库补充，且排空过程中不执行 COUNT。
+ */
+class MediaMatchQueueManagerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final MediaFileRepository repository = mock(MediaFileRepository.class);
+    private final DandanMatchService dandanMatchService = mock(DandanMatchService.class);
+    private final MediaMatchResultWriter resultWriter = mock(MediaMatchResultWriter.class);
+    private final MediaMatchCacheService matchCache = mock(MediaMatchCacheService.class);
+    private final MediaEpisodeInferenceService inference = mock(MediaEpisodeInferenceService.class);
+    private final MediaMatchQueueManager manager = new MediaMatchQueueManager();
+    private final Map<Long, MediaFile> files = new HashMap<>();
+    private final List<Integer> batchSizes = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        for (long id = 1; id <= 4; id++) {
+            MediaFile file = new MediaFile();
+            file.setId(id);
+            file.setFileName("episode-" + id + ".mkv");
+            file.setFilePath(Files.createFile(tempDir.resolve(file.getFileName())).toString());
+            file.setHash("hash-" + id);
+            file.setSize(1024L);
+            file.setMatchStatus(MatchStatus.UNMATCHED);
+            files.put(id, file);
+        }
+        when(repository.findAllById(anyList())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(files::get).filter(Objects::nonNull).toList();
+        });
+        when(dandanMatchService.batchMatchWithStatus(anyList())).thenAnswer(invocation -> {
+            List<?> items = invocation.getArgument(0);
+            batchSizes.add(items.size());
+            return new DandanMatchService.BatchMatchOutcome(items.stream().map(item -> new MatchResult()).toList(), 200);
+        });
+
+        when(resultWriter.write(anyList(), anyList())).thenAnswer(invocation -> {
+            List<MediaMatchResultWriter.Matched> matched = invocation.getArgument(0);
+            List<MediaFile> noMatch = invocation.getArgument(1);
+            return new MediaMatchResultWriter.Written(
+                    matched.stream().map(MediaMatchResultWriter.Matched::mediaFile).toList(), noMatch.size());
+        });
+
+        ReflectionTestUtils.setField(manager, "mediaFileRepository", repository);
+        ReflectionTestUtils.setField(manager, "dandanMatchService", dandanMatchService);
+        ReflectionTestUtils.setField(manager, "mediaHashStage", mock(MediaHashStage.class));
+        ReflectionTestUtils.setField(manager, "mediaDuplicateIndex", mock(MediaDuplicateIndex.class));
+        ReflectionTestUtils.setField(manager, "mediaMatchResultWriter", resultWriter);
+        ReflectionTestUtils.setField(manager, "mediaMatchCacheService", matchCache);
+        ReflectionTestUtils.setField(manager, "mediaEpisodeInferenceService", inference);
+        ReflectionTestUtils.setField(manager, "episodeUpdateNotificationService", mock(EpisodeUpdateNotificationService.class));
+        ReflectionTestUtils.setField(manager, "batchSize", 2);
+        ReflectionTestUtils.setField(manager, "hashLookahead", 1);
+        ReflectionTestUtils.setField(manager, "refillChunk", 2);
+        ReflectionTestUtils.setField(manager, "maxConcurrency", 1);
+        ReflectionTestUtils.setField(manager, "concurrencyLimiter", new MatchConcurrencyLimiter(1, 1, 1, 0));
+        // 请求在调用线程中同步执行，排空由测试线程驱动，不启动后台排空任务
+        ReflectionTestUtils.setField(manager, "matchRequestExecutor", new DirectExecutorService());
+        ((AtomicBoolean) ReflectionTestUtils.getField(manager, "immediateDrainScheduled")).set(true);
+    }
+
+    @Test
+    void backlogIsRefilledByKeysetWithoutCounting() {
+        when(repository.findIdsByMatchStatusInAfter(any(), eq(0L), any(), any())).thenReturn(List.of(1L, 2L));
+        when(repository.findIdsByMatchStatusInAfter(any(), eq(2L), any(), any())).thenReturn(List.of(3L));
+
+        assertThat(dispatch()).isTrue();
+        assertThat(dispatch()).isTrue();
+        assertThat(dispatch()).isFalse();
+
+        assertThat(batchSizes).containsExactly(2, 1);
+        // 积压已扫完，队列长度直接取内存
+        assertThat(manager.getQueueSize()).isZero();
+        verify(repository, never()).countByMatchStatusIn(any());
+    }
+
+    @Test
+    void enqueuedFilesAreServedFromMemory() {
+        when(repository.findIdsByMatchStatusInAfter(any(), any(), any(), any())).thenReturn(List.of());
+        dispatch();
+
+        manager.addToQueue(4L);
+        assertThat(manager.getQueueSize()).isEqualTo(1);
+
+        assertThat(dispatch()).isTrue();
+        assertThat(batchSizes).containsExactly(1);
+        assertThat(manager.getQueueSize()).isZero();
+        verify(repository, never()).countByMatchStatusIn(any());
+    }
+
+    @Test
+    void refillDuringInFlightBatchDoesNotRequeueItsFiles() {
+        when(repository.findIdsByMatchStatusInAfter(any(), any(), any(), any())).thenReturn(List.of(1L, 2L));
+        when(dandanMatchService.batchMatchWithStatus(anyList())).thenAnswer(invocation -> {
+            List<?> items = invocation.getArgument(0);
+            batchSizes.add(items.size());
+            // 结果写回前，周期性重同步与触发入队再次载入仍为待匹配的同一批文件
+            ReflectionTestUtils.setField(manager, "backlogPending", true);
+            ReflectionTestUtils.invokeMethod(manager, "refillIfLow", 4);
+            manager.addToQueue(1L);
+            assertThat(manager.getQueueSize()).isZero();
+            return new DandanMatchService.BatchMatchOutcome(items.stream().map(item -> new MatchResult()).toList(), 200);
+        });
+
+        assertThat(dispatch()).isTrue();
+
+        assertThat(batchSizes).containsExactly(2);
+        assertThat(manager.getQueueSize()).isZero();
+    }
+
+    @Test
+    void partialBatchIsNotHeldByHashingOutsideItsWindow() {
+        // 与本窗口无关的批量文件仍在慢盘上计算哈希
+        @SuppressWarnings("unchecked")
+        Set<Long> hashing = (Set<Long>) ReflectionTestUtils.getField(manager, "hashing");
+        hashing.add(99L);
+
+        manager.addToQueue(1L);
+
+        assertThat(dispatch()).isTrue();
+        assertThat(batchSizes).containsExactly(1);
+    }
+
+    @Test
+    void urgentFileIsDispatchedWhileBulkFileInWindowIsHashing() {
+        MediaHashStage hashStage = (MediaHashStage) ReflectionTestUtils.getField(manager, "mediaHashStage");
+        when(hashStage.submit(any(), anyBoolean())).thenReturn(new CompletableFuture<>());
+        files.get(2L).setHash(null);
+
+        manager.addToQueue(1L, MatchPriority.WATCHER);
+        manager.addToQueue(2L);
+
+        assertThat(dispatch()).isTrue();
+        assertThat(batchSizes).containsExactly(1);
+        assertThat(manager.getHashPending()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectedHashSubmissionFallsBackToFileNameMatch() {
+        MediaHashStage hashStage = (MediaHashStage) ReflectionTestUtils.getField(manager, "mediaHashStage");
+        when(hashStage.submit(any(), anyBoolean())).thenThrow(new RejectedExecutionException("shutting down"));
+        files.get(1L).setHash(null);
+        files.get(2L).setHash(null);
+
+        manager.addToQueue(1L);
+        manager.addToQueue(2L);
+
+        assertThat(dispatch()).isTrue();
+        assertThat(batchSizes).containsExactly(2);
+        assertThat(manager.getHashPending()).isZero();
+    }
+
+    @Test
+    void batchResultsAreWrittenBackInOneCall() {
+        MatchResult hit = new MatchResult();
+        hit.setSuccess(true);
+        hit.setEpisodeId("1001");
+        when(dandanMatchService.batchMatchWithStatus(anyList()))
+                .thenReturn(new DandanMatchService.BatchMatchOutcome(List.of(hit, new MatchResult()), 200));
+        when(repository.findIdsByMatchStatusInAfter(any(), eq(0L), any(), any())).thenReturn(List.of(1L, 2L));
+
+        assertThat(dispatch()).isTrue();
+
+        verify(resultWriter).write(
+                eq(List.of(new MediaMatchResultWriter.Matched(files.get(1L), hit))), eq(List.of(files.get(2L))));
+        verify(repository, never()).findById(any());
+        verify(repository, never()).save(any());
+        assertThat(manager.getTotalMatched()).isEqualTo(1);
+        assertThat(manager.getTotalNoMatch()).isEqualTo(1);
+    }
+
+    @Test
+    void resultsSkippedByWriteGuardAreNotCounted() {
+        MatchResult hit = new MatchResult();
+        hit.setSuccess(true);
+        hit.setEpisodeId("1001");
+        when(dandanMatchService.batchMatchWithStatus(anyList()))
+                .thenReturn(new DandanMatchService.BatchMatchOutcome(List.of(hit, new MatchResult()), 200));
+        when(repository.findIdsByMatchStatusInAfter(any(), eq(0L), any(), any())).thenReturn(List.of(1L, 2L));
+        // 两个文件都在请求期间被扫描重置
+        when(resultWriter.write(anyList(), anyList())).thenReturn(new MediaMatchResultWriter.Written(List.of(), 0));
+
+        assertThat(dispatch()).isTrue();
+
+        assertThat(manager.getTotalMatched()).isZero();
+        assertThat(manager.getTotalNoMatch()).isZero();
+        assertThat(manager.getTotalProcessed()).isEqualTo(2);
+    }
+
+    @Test
+    void transientFailureDefersBatchInsteadOfMarkingNoMatch() {
+        when(dandanMatchService.batchMatchWithStatus(anyList()))
+                .thenReturn(new DandanMatchService.BatchMatchOutcome(List.of(), 503));
+        when(repository.findIdsByMatchStatusInAfter(any(), eq(0L), any(), any())).thenReturn(List.of(1L, 2L));
+        long before = System.currentTimeMillis();
+
+        assertThat(dispatch()).isTrue();
+
+        verify(resultWriter).writeRetry(List.of(files.get(1L), files.get(2L)));
+        verify(resultWriter, never()).write(any(), any());
+        for (long id = 1; id <= 2; id++) {
+            assertThat(files.get(id).getMatchAttempts()).isEqualTo(1);
+            assertThat(files.get(id).getNextMatchAttemptAt().getTime()).isGreaterThan(before);
+        }
+        // 退避中的文件不回到内存队列
+        assertThat(manager.getQueueSize()).isZero();
+    }
+
+    @Test
+    void exhaustedRetriesAreMarkedNoMatch() {
+        ReflectionTestUtils.setField(manager, "maxMatchAttempts", 3);
+        files.get(1L).setMatchAttempts(2);
+        when(dandanMatchService.batchMatchWithStatus(anyList()))
+                .thenReturn(new DandanMatchService.BatchMatchOutcome(List.of(), 404));
+        when(repository.findIdsByMatchStatusInAfter(any(), eq(0L), any(), any())).thenReturn(List.of(1L, 2L));
+
+        assertThat(dispatch()).isTrue();
+
+        verify(resultWriter).write(List.of(), List.of(files.get(1L)));
+        verify(resultWriter).writeRetry(List.of(files.get(2L)));
+        assertThat(files.get(2L).getMatchAttempts()).isEqualTo(1);
+    }
+
+    @Test
+    void deferredFileIsNotDispatchedBeforeItsAttemptTime() {
+        when(repository.findIdsByMatchStatusInAfter(any(), any(), any(), any())).thenReturn(List.of());
+        dispatch();
+        files.get(4L).setNextMatchAttemptAt(new Timestamp(System.currentTimeMillis() + 60_000));
+
+        manager.addToQueue(4L);
+        dispatch();
+
+        assertThat(batchSizes).isEmpty();
+        assertThat(manager.getQueueSize()).isZero();
+    }
+
+    @Test
+    void retryDelayGrowsExponentiallyWithJitterAndCap() {
+        assertThat(MediaMatchQueueManager.retryDelayMillis(1, 1000, 60_000, 0.0)).isEqualTo(500);
+        assertThat(MediaMatchQueueManager.retryDelayMillis(1, 1000, 60_000, 0.999)).isBetween(500L, 1000L);
+        assertThat(MediaMatchQueueManager.retryDelayMillis(3, 1000, 60_000, 0.0)).isEqualTo(2000);
+        assertThat(MediaMatchQueueManager.retryDelayMillis(50, 1000, 60_000, 0.0)).isEqualTo(30_000);
+        assertThat(MediaMatchQueueManager.retryDelayMillis(50, 1000, 60_000, 0.999)).isLessThanOrEqualTo(60_000);
+    }
+
+    @Test
+    void cachedMatchesAreWrittenWithoutCallingApi() {
+        MatchResult cached = new MatchResult();
+        cached.setSuccess(true);
+        cached.setEpisodeId("1001");
+        when(matchCache.lookupAll(anyList())).thenReturn(Map.of(1L, cached));
+        when(repository.findIdsByMatchStatusInAfter(any(), eq(0L), any(), any())).thenReturn(List.of(1L, 2L));
+
+        assertThat(dispatch()).isTrue();
+
+        // 只有未命中的文件进入请求
+        assertThat(batchSizes).containsExactly(1);
+        verify(resultWriter).write(
+                eq(List.of(new MediaMatchResultWriter.Matched(files.get(1L), cached))), eq(List.of(files.get(2L))));
+    }
+
+    @Test
+    void batchFullyServedFromCacheSkipsApi() {
+        MatchResult cached = new MatchResult();
+        cached.setSuccess(true);
+        cached.setEpisodeId("1001");
+        when(matchCache.lookupAll(anyList())).thenReturn(Map.of(1L, cached, 2L, cached));
+        when(repository.findIdsByMatchStatusInAfter(any(), eq(0L), any(), any())).thenReturn(List.of(1L, 2L));
+
+        assertThat(dispatch()).isTrue();
+
+        verify(dandanMatchService, never()).batchMatchWithStatus(anyList());
+        assertThat(manager.getTotalMatched()).isEqualTo(2);
+    }
+
+    @Test
+    void inferredFilesSkipHashingAndApi() {
+        MatchResult inferred = new MatchResult();
+        inferred.setSuccess(true);
+        inferred.setEpisodeId("1012");
+        files.get(1L).setHash(null);
+        when(inference.infer(anyList())).thenReturn(Map.of(1L, inferred));
+        when(repository.findIdsByMatchStatusInAfter(any(), eq(0L), any(), any())).thenReturn(List.of(1L));
+
+        assertThat(dispatch()).isTrue();
+
+        verify(resultWriter).write(List.of(new MediaMatchResultWriter.Matched(files.get(1L), inferred)), List.of());
+        verify((MediaHashStage) ReflectionTestUtils.getField(manager, "mediaHashStage"), never()).submit(any(), anyBoolean());
+        assertThat(batchSizes).isEmpty();
+        assertThat(manager.getTotalInferred()).isEqualTo(1);
+    }
+
+    private boolean dispatch() {
+        Boolean dispatched = ReflectionTestUtils.invokeMethod(manager, "dispatchBatch");
+        return Boolean.TRUE.equals(dispatched);
+    }
+
+    /**
+     * 在调用线程中直接执行任务的线程池
+     */
+    private static final class DirectExecutorService extends AbstractExecutorService {
+        private boolean shutdown;
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return List.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
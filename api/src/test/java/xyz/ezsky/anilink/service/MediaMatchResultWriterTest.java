@@ -0,0 +1,63 @@
+package xyz.ezsky.anilink.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import xyz.ezsky.anilink.model.dto.MatchResult;
+import xyz.ezsky.anilink.model.entity.MatchStatus;
+import xyz.ezsky.anilink.model.entity.MediaFile;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 验证匹配结果只写入内容未变的待匹配记录，条件不成立的记录视为未写入。
+ */
+class MediaMatchResultWriterTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final MediaMatchResultWriter writer = new MediaMatchResultWriter();
+
+    @Test
+    void resultIsGuardedByRequestedHashAndSkippedWhenRowWasReset() {
+        ReflectionTestUtils.setField(writer, "jdbcTemplate", jdbcTemplate);
+        MediaFile unchanged = file(1L, "hash-1");
+        MediaFile reset = file(2L, "hash-2");
+        MatchResult hit = new MatchResult();
+        hit.setSuccess(true);
+        hit.setEpisodeId("1001");
+        // 第二条记录在请求在途期间被扫描重置，更新条件不再成立
+        when(jdbcTemplate.batchUpdate(sqlStartingWith("UPDATE media_file SET match_status = ?, episode_id"), anyList()))
+                .thenReturn(new int[]{1, 0});
+
+        MediaMatchResultWriter.Written written = writer.write(List.of(
+                new MediaMatchResultWriter.Matched(unchanged, hit),
+                new MediaMatchResultWriter.Matched(reset, hit)), List.of());
+
+        assertThat(written.matched()).containsExactly(unchanged);
+        assertThat(unchanged.getMatchStatus()).isEqualTo(MatchStatus.MATCHED);
+        assertThat(reset.getMatchStatus()).isEqualTo(MatchStatus.UNMATCHED);
+        verify(jdbcTemplate).batchUpdate(argThat((String sql) -> sql.contains("hash IS NOT DISTINCT FROM ?")),
+                argThat((List<Object[]> args) -> "hash-1".equals(args.get(0)[7])
+                        && Long.valueOf(1000L).equals(args.get(0)[8])));
+    }
+
+    private static String sqlStartingWith(String prefix) {
+        return argThat((String sql) -> sql.startsWith(prefix));
+    }
+
+    private static MediaFile file(Long id, String hash) {
+        MediaFile file = new MediaFile();
+        file.setId(id);
+        file.setHash(hash);
+        file.setLastModified(1000L);
+        file.setMatchStatus(MatchStatus.UNMATCHED);
+        return file;
+    }
+}
@@ -0,0 +1,139 @@
+package xyz.ezsky.anilink.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import xyz.ezsky.anilink.model.entity.MediaLibrary;
+import xyz.ezsky.anilink.repository.MediaFileRepository;
+import xyz.ezsky.anilink.repository.MediaLibraryRepository;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 验证多个媒体库同时处于监听状态时，扫描线程池不会被监听占满。
+ */
+class MediaScannerServiceWatchTest {
+
+    private static final int LIBRARY_COUNT = 8;
+
+    @TempDir
+    Path tempDir;
+
+    private MediaScannerService scannerService;
+    private MediaLibraryWatcher watcher;
+    private MediaFileEventDebouncer debouncer;
+    private MediaPathIndex mediaPathIndex;
+    private final List<MediaLibrary> libraries = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        for (int i = 0; i < LIBRARY_COUNT; i++) {
+            Path root = Files.createDirectories(tempDir.resolve("library-" + i));
+            Path season = Files.createDirectories(root.resolve("Season 1"));
+            Files.createFile(season.resolve("episode-01.mkv"));
+            Files.createFile(season.resolve("episode-02.mkv"));
+
+            MediaLibrary library = new MediaLibrary();
+            library.setId((long) i + 1);
+            library.setName("library-" + i);
+            library.setPath(root.toString());
+            library.setStatus(MediaLibrary.Status.OK);
+            libraries.add(library);
+        }
+
+        MediaLibraryRepository libraryRepository = mock(MediaLibraryRepository.class);
+        when(libraryRepository.findAll()).thenReturn(libraries);
+        MediaFileRepository mediaFileRepository = mock(MediaFileRepository.class);
+        mediaPathIndex = mock(MediaPathIndex.class);
+        MediaFileStabilityGate stabilityGate = mock(MediaFileStabilityGate.class);
+
+        MediaFileBatchWriter batchWriter = new MediaFileBatchWriter();
+        ReflectionTestUtils.setField(batchWriter, "mediaFileRepository", mediaFileRepository);
+        ReflectionTestUtils.setField(batchWriter, "mediaSubtitleService", mock(MediaSubtitleService.class));
+        ReflectionTestUtils.setField(batchWriter, "mediaMatchQueueManager", mock(MediaMatchQueueManager.class));
+        ReflectionTestUtils.setField(batchWriter, "metadataQueueManager", mock(MediaMetadataQueueManager.class));
+        ReflectionTestUtils.setField(batchWriter, "mediaPathIndex", mediaPathIndex);
+        ReflectionTestUtils.setField(batchWriter, "mediaFileStabilityGate", stabilityGate);
+        ReflectionTestUtils.setField(batchWriter, "jdbcTemplate", mock(JdbcTemplate.class));
+        ReflectionTestUtils.setField(batchWriter, "batchSize", 200);
+
+        watcher = new MediaLibraryWatcher();
+        watcher.start();
+        debouncer = new MediaFileEventDebouncer();
+        debouncer.start();
+
+        scannerService = new MediaScannerService();
+        ReflectionTestUtils.setField(scannerService, "mediaLibraryRepository", libraryRepository);
+        ReflectionTestUtils.setField(scannerService, "mediaFileRepository", mediaFileRepository);
+        ReflectionTestUtils.setField(scannerService, "mediaLibraryWalker", new MediaLibraryWalker());
+        ReflectionTestUtils.setField(scannerService, "mediaFileBatchWriter", batchWriter);
+        ReflectionTestUtils.setField(scannerService, "mediaDirectorySnapshotService", mock(MediaDirectorySnapshotService.class));
+        ReflectionTestUtils.setField(scannerService, "mediaPathIndex", mediaPathIndex);
+        ReflectionTestUtils.setField(scannerService, "mediaLibraryWatcher", watcher);
+        ReflectionTestUtils.setField(scannerService, "mediaLibraryPoller", mock(MediaLibraryPoller.class));
+        ReflectionTestUtils.setField(scannerService, "mediaFileEventDebouncer", debouncer);
+        ReflectionTestUtils.setField(scannerService, "mediaFileStabilityGate", stabilityGate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        watcher.shutdown();
+        debouncer.shutdown();
+    }
+
+    @Test
+    void scansKeepRunningWhileEightLibrariesAreWatched() throws Exception {
+        scannerService.scanAllLibraries(false);
+        verify(mediaPathIndex, timeout(10_000).times(LIBRARY_COUNT)).snapshot(anyLong());
+        awaitWatchedLibraries();
+
+        // 所有媒体库都已处于监听状态，再次扫描仍然必须全部完成
+        scannerService.scanAllLibraries(false);
+        verify(mediaPathIndex, timeout(10_000).times(LIBRARY_COUNT * 2)).snapshot(anyLong());
+
+        Map<Long, Integer> counts = watcher.getWatchedDirectoryCounts();
+        assertThat(counts).hasSize(LIBRARY_COUNT);
+        // 每个媒体库监听根目录和 Season 1 两个目录
+        assertThat(counts.values()).allMatch(count -> count == 2);
+
+        long watcherThreads = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("media-library-watcher"))
+                .count();
+        assertThat(watcherThreads).isEqualTo(1);
+    }
+
+    @Test
+    void deleteEventsAreDeliveredForEveryLibrary() throws Exception {
+        scannerService.scanAllLibraries(false);
+        awaitWatchedLibraries();
+
+        for (MediaLibrary library : libraries) {
+            Path episode = Path.of(library.getPath(), "Season 1", "episode-01.mkv");
+            Files.delete(episode);
+            verify(mediaPathIndex, timeout(10_000)).get(eq(library.getId()), eq(episode.toAbsolutePath().toString()));
+        }
+    }
+
+    private void awaitWatchedLibraries() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (watcher.getWatchedDirectoryCounts().size() < LIBRARY_COUNT && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(watcher.getWatchedDirectoryCounts()).hasSize(LIBRARY_COUNT);
+    }
+}
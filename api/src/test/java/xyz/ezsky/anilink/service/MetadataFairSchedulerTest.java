@@ -0,0 +1,67 @@
+package xyz.ezsky.anilink.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 验证元数据调度按媒体库权重分配名额、积压不足的库让出份额、退回的名额下轮补回，以及小名额下的长期公平。
+ */
+class MetadataFairSchedulerTest {
+
+    @Test
+    void slotsAreSplitByLibraryWeight() {
+        MetadataFairScheduler scheduler = new MetadataFairScheduler();
+        Map<Long, Integer> weights = Map.of(1L, 3, 2L, 1);
+
+        Map<Long, Integer> granted = scheduler.allocate(
+                Map.of(1L, 100_000L, 2L, 500L), 20, id -> weights.getOrDefault(id, 1));
+
+        assertThat(granted).containsEntry(1L, 15).containsEntry(2L, 5);
+    }
+
+    @Test
+    void smallBacklogGivesUnusedShareToOthers() {
+        MetadataFairScheduler scheduler = new MetadataFairScheduler();
+
+        Map<Long, Integer> granted = scheduler.allocate(Map.of(1L, 100_000L, 2L, 3L), 20, id -> 1);
+
+        assertThat(granted).containsEntry(1L, 17).containsEntry(2L, 3);
+    }
+
+    @Test
+    void hugeLibraryDoesNotStarveOthersAcrossRounds() {
+        MetadataFairScheduler scheduler = new MetadataFairScheduler();
+        Map<Long, Long> available = Map.of(1L, 1_000_000L, 2L, 1_000L, 3L, 1_000L);
+        Map<Long, Integer> totals = new HashMap<>();
+
+        for (int round = 0; round < 30; round++) {
+            scheduler.allocate(available, 2, id -> 1).forEach((id, grant) -> totals.merge(id, grant, Integer::sum));
+        }
+
+        assertThat(totals).containsEntry(1L, 20).containsEntry(2L, 20).containsEntry(3L, 20);
+    }
+
+    @Test
+    void refundedQuotaIsGrantedInTheNextRound() {
+        MetadataFairScheduler scheduler = new MetadataFairScheduler();
+        Map<Long, Long> available = Map.of(1L, 1_000L, 2L, 1_000L);
+
+        assertThat(scheduler.allocate(available, 2, id -> 1)).containsEntry(1L, 1).containsEntry(2L, 1);
+        // 执行队列已满，库 1 的名额未能提交
+        scheduler.refund(1L, 1);
+
+        assertThat(scheduler.allocate(available, 2, id -> 1)).containsEntry(1L, 2).doesNotContainKey(2L);
+    }
+
+    @Test
+    void nothingIsGrantedWithoutBacklog() {
+        MetadataFairScheduler scheduler = new MetadataFairScheduler();
+
+        assertThat(scheduler.allocate(Map.of(1L, 0L), 20, id -> 1)).isEmpty();
+        assertThat(scheduler.allocate(Map.of(1L, 10L), 0, id -> 1)).isEmpty();
+    }
+}